@@ -0,0 +1,133 @@
+package quadrasoft.mufortran.app;
+
+import quadrasoft.mufortran.fortran.DaemonClient;
+import quadrasoft.mufortran.general.*;
+import quadrasoft.mufortran.resources.Strings;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BuildDaemon {
+    /*
+     * Local build server. It keeps what makes a build start slowly warm between
+     * builds: the loaded projects, dependency graphs and file hashes, compiler
+     * identities, toolchain probes and the BuildService lanes. IDE windows and
+     * HeadlessMain --daemon send their requests over a Unix domain socket:
+     *
+     *   java -Djava.awt.headless=true -cp muFortran.jar quadrasoft.mufortran.app.BuildDaemon [--socket PATH]
+     *
+     *   -> ["--config","debug","/home/me/solver/solver.mfp"]
+     *   <- the JSON events of the build, then {"project":null,"event":"done","code":0}
+     *
+     * A request takes the HeadlessMain options, with absolute paths; ["--stop"] stops
+     * the daemon. Builds of the same project and configuration wait for each other.
+     */
+    private static final Map<String, Project> projects = new HashMap<String, Project>();
+    private static final Map<String, Long> loaded = new HashMap<String, Long>();
+    private static volatile boolean running = true;
+
+    public static void main(String[] args) {
+        if (System.getProperty("java.awt.headless") == null)
+            System.setProperty("java.awt.headless", "true");
+        Strings.load();
+        // Builds answer on the client connections, stray prints go to the daemon log.
+        System.setOut(System.err);
+        if (Session.isConfigured())
+            Session.load();
+        if (Session.parameter("execExtension") == null)
+            Session.setParameter("execExtension", ".exe");
+        Log.redirect(new TextOutput(System.err, "daemon"));
+
+        Path socket = DaemonClient.defaultSocket();
+        if (args.length == 2 && args[0].equals("--socket")) {
+            socket = Paths.get(args[1]);
+        } else if (args.length != 0) {
+            System.err.println("Usage: BuildDaemon [--socket PATH]");
+            System.exit(2);
+        }
+        if (DaemonClient.available(socket)) {
+            Log.send("Error: A build daemon already listens on " + socket);
+            System.exit(1);
+        }
+
+        try {
+            // Left over by a daemon that did not stop cleanly.
+            Files.deleteIfExists(socket);
+            socket.toAbsolutePath().getParent().toFile().mkdirs();
+            ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(socket));
+            socket.toFile().deleteOnExit();
+            Log.send("Listening on " + socket);
+
+            ExecutorService clients = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "daemon-client");
+                thread.setDaemon(true);
+                return thread;
+            });
+            while (running) {
+                SocketChannel channel = server.accept();
+                clients.execute(() -> serve(channel));
+            }
+        } catch (IOException e) {
+            Log.send("Error: Build daemon stopped, " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static synchronized Project project(String path) {
+        // Kept between builds, loaded again when the project file changed.
+        long modified = new File(path).lastModified();
+        Project project = projects.get(path);
+        if (project == null || loaded.get(path) != modified) {
+            project = new Project(path);
+            projects.put(path, project);
+            loaded.put(path, modified);
+        }
+        return project;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void serve(SocketChannel channel) {
+        try (SocketChannel client = channel) {
+            BufferedReader br = new BufferedReader(Channels.newReader(client, StandardCharsets.UTF_8));
+            PrintStream out = new PrintStream(Channels.newOutputStream(client), true, "UTF-8");
+            String line = br.readLine();
+            if (line == null)
+                return;
+            JsonOutput reply = new JsonOutput(out, null);
+            int code;
+            try {
+                List<String> args = new ArrayList<String>();
+                for (Object arg : (List<Object>) JsonReader.parse(line))
+                    args.add(String.valueOf(arg));
+                if (args.equals(Collections.singletonList("--stop"))) {
+                    reply.message("Build daemon stopping");
+                    reply.done(0);
+                    running = false;
+                    System.exit(0);
+                }
+                code = BuildRequest.parse(args).execute(out, true, BuildDaemon::project);
+            } catch (IllegalArgumentException | ClassCastException e) {
+                reply.message("Error: " + e.getMessage());
+                code = 2;
+            }
+            reply.done(code);
+        } catch (IOException e) {
+            // The client went away, its build went through anyway.
+        }
+    }
+}
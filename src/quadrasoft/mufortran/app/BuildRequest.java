@@ -0,0 +1,310 @@
+package quadrasoft.mufortran.app;
+
+import quadrasoft.mufortran.fortran.ProjectBuild;
+import quadrasoft.mufortran.fortran.binaryutils.Scaling;
+import quadrasoft.mufortran.fortran.binaryutils.MagicBoxStatus;
+import quadrasoft.mufortran.general.*;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public class BuildRequest {
+    /*
+     * What a command line build asks for and the build itself, shared by HeadlessMain
+     * and the BuildDaemon. Every project and configuration goes through the lane of
+     * its folders in the BuildService, so builds of one tree asked from several
+     * places wait for each other instead of racing on obj/.
+     */
+    private boolean json = false;
+    private boolean daemon = false;
+    private boolean compile = true;
+    private boolean link = true;
+    private boolean run = false;
+    private boolean trace = false;
+    private boolean full = false;
+    private boolean ninja = false;
+    private int parallel = 0;
+    private int benchmarkRuns = 0;
+    private int warmups = 2;
+    private String input;
+    private int ranks = 0;
+    private int scalingRuns = 0;
+    private int threads = 0;
+    private final List<String> bindings = new ArrayList<String>();
+    private String sweep;
+    private int jobs = 0;
+    private String socket;
+    private final List<String> configurations = new ArrayList<String>();
+    private final List<String> projectFiles = new ArrayList<String>();
+
+    public static BuildRequest parse(List<String> args) {
+        BuildRequest request = new BuildRequest();
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            switch (arg) {
+                case "--json":
+                    request.json = true;
+                    break;
+                case "--daemon":
+                    request.daemon = true;
+                    break;
+                case "--socket":
+                    if (i + 1 >= args.size())
+                        throw new IllegalArgumentException("--socket needs a path");
+                    request.daemon = true;
+                    request.socket = args.get(++i);
+                    break;
+                case "--debug":
+                    request.configurations.add(BuildConfiguration.DEBUG);
+                    break;
+                case "--config":
+                    if (i + 1 >= args.size())
+                        throw new IllegalArgumentException("--config needs a configuration name");
+                    request.configurations.addAll(Arrays.asList(args.get(++i).split(",")));
+                    break;
+                case "--full":
+                    request.full = true;
+                    break;
+                case "--ninja":
+                    request.ninja = true;
+                    break;
+                case "--no-compile":
+                    request.compile = false;
+                    break;
+                case "--no-link":
+                    request.link = false;
+                    break;
+                case "--run":
+                    request.run = true;
+                    break;
+                case "--trace":
+                    request.trace = true;
+                    break;
+                case "--bench":
+                    request.benchmarkRuns = count(args, ++i, "--bench");
+                    break;
+                case "--warmup":
+                    request.warmups = count(args, ++i, "--warmup");
+                    break;
+                case "--stdin":
+                    if (i + 1 >= args.size())
+                        throw new IllegalArgumentException("--stdin needs a file");
+                    request.input = args.get(++i);
+                    break;
+                case "--np":
+                    request.ranks = count(args, ++i, "--np");
+                    break;
+                case "--scaling":
+                    request.scalingRuns = count(args, ++i, "--scaling");
+                    break;
+                case "--threads":
+                    request.threads = count(args, ++i, "--threads");
+                    break;
+                case "--bind":
+                    if (i + 1 >= args.size())
+                        throw new IllegalArgumentException("--bind needs a binding such as close or spread");
+                    request.bindings.addAll(Arrays.asList(args.get(++i).split(",")));
+                    break;
+                case "--sweep":
+                    if (i + 1 >= args.size())
+                        throw new IllegalArgumentException("--sweep needs a parameter table");
+                    request.sweep = args.get(++i);
+                    break;
+                case "--jobs":
+                    request.jobs = count(args, ++i, "--jobs");
+                    break;
+                case "--parallel":
+                    try {
+                        request.parallel = Integer.parseInt(args.get(++i));
+                    } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                        throw new IllegalArgumentException("--parallel needs a number");
+                    }
+                    break;
+                default:
+                    if (arg.startsWith("--"))
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    request.projectFiles.add(arg);
+            }
+        }
+        if (request.projectFiles.isEmpty())
+            throw new IllegalArgumentException("No project given");
+        return request;
+    }
+
+    private static int count(List<String> args, int i, String option) {
+        try {
+            int count = Integer.parseInt(args.get(i));
+            if (count >= 0)
+                return count;
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException(option + " needs a number");
+    }
+
+    public String getSocket() {
+        // Null for the default one.
+        return socket;
+    }
+
+    public boolean isDaemon() {
+        return daemon;
+    }
+
+    public boolean isJson() {
+        return json;
+    }
+
+    public boolean isNamed() {
+        // Output lines are prefixed when several builds share the terminal.
+        return projectFiles.size() * Math.max(configurations.size(), 1) > 1;
+    }
+
+    public List<String> toArguments() {
+        // For another process, which may not share the working directory.
+        List<String> args = new ArrayList<String>();
+        if (!configurations.isEmpty()) {
+            args.add("--config");
+            args.add(String.join(",", configurations));
+        }
+        if (full)
+            args.add("--full");
+        if (ninja)
+            args.add("--ninja");
+        if (!compile)
+            args.add("--no-compile");
+        if (!link)
+            args.add("--no-link");
+        if (run)
+            args.add("--run");
+        if (trace)
+            args.add("--trace");
+        if (ranks > 0)
+            args.addAll(Arrays.asList("--np", String.valueOf(ranks)));
+        if (benchmarkRuns > 0) {
+            args.addAll(Arrays.asList("--bench", String.valueOf(benchmarkRuns), "--warmup", String.valueOf(warmups)));
+        }
+        if (scalingRuns > 0) {
+            args.addAll(Arrays.asList("--scaling", String.valueOf(scalingRuns)));
+            if (threads > 0)
+                args.addAll(Arrays.asList("--threads", String.valueOf(threads)));
+            if (!bindings.isEmpty())
+                args.addAll(Arrays.asList("--bind", String.join(",", bindings)));
+        }
+        if ((benchmarkRuns > 0 || scalingRuns > 0) && input != null)
+            args.addAll(Arrays.asList("--stdin", new File(input).getAbsolutePath()));
+        if (sweep != null) {
+            args.addAll(Arrays.asList("--sweep", new File(sweep).getAbsolutePath()));
+            if (jobs > 0)
+                args.addAll(Arrays.asList("--jobs", String.valueOf(jobs)));
+        }
+        if (parallel > 0) {
+            args.add("--parallel");
+            args.add(String.valueOf(parallel));
+        }
+        for (String file : projectFiles)
+            args.add(new File(file).getAbsolutePath());
+        return args;
+    }
+
+    public int execute(PrintStream out, boolean asJson, Function<String, Project> loader) {
+        // 0 when everything went through, 1 on a failed build, 2 on a bad request.
+        BuildOutput errors = asJson ? new JsonOutput(out, null) : new TextOutput(System.err, null);
+        List<Project> projects = new ArrayList<Project>();
+        List<BuildConfiguration> selected = new ArrayList<BuildConfiguration>();
+        for (String file : projectFiles) {
+            if (!new File(file).isFile()) {
+                errors.message("Error: Project file not found : " + file);
+                return 2;
+            }
+            Project project = loader.apply(new File(file).getAbsolutePath());
+            List<String> names = configurations.isEmpty() ? Arrays.asList(project.getActiveConfiguration())
+                    : configurations;
+            for (String name : names) {
+                BuildConfiguration configuration = project.getConfiguration(name);
+                if (configuration == null) {
+                    errors.message("Error: Project " + project.getName() + " has no configuration " + name);
+                    return 2;
+                }
+                projects.add(project);
+                selected.add(configuration);
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallel > 0 ? parallel : projects.size());
+        List<Future<Boolean>> builds = new ArrayList<Future<Boolean>>();
+        boolean named = projects.size() > 1;
+        for (int i = 0; i < projects.size(); i++) {
+            Project project = projects.get(i);
+            BuildConfiguration configuration = selected.get(i);
+            BuildOutput output = asJson ? new JsonOutput(out, project.getName(), configuration.getName())
+                    : new TextOutput(out, named ? project.getName() + " [" + configuration.getName() + "]" : null);
+            builds.add(pool.submit(() -> build(project, configuration, output)));
+        }
+        boolean success = true;
+        for (Future<Boolean> build : builds) {
+            try {
+                success &= build.get();
+            } catch (Exception e) {
+                e.printStackTrace();
+                success = false;
+            }
+        }
+        pool.shutdown();
+        return success ? 0 : 1;
+    }
+
+    private boolean build(Project project, BuildConfiguration configuration, BuildOutput output) {
+        ProjectBuild build = new ProjectBuild(project, output);
+        build.setConfiguration(configuration);
+        if (trace)
+            build.setTracing(true);
+        if (full)
+            build.setIncremental(false);
+        if (ninja)
+            build.setNinja(true);
+        if (ranks > 0)
+            build.setRanks(ranks);
+
+        if (compile && !step(output, "compile", build::compile))
+            return false;
+        if (link && !step(output, "link", build::link))
+            return false;
+        if (run && !step(output, "run", build::run))
+            return false;
+        // A slowdown is a warning, the build still went through, and so are failed runs of a sweep.
+        if (benchmarkRuns > 0 && !step(output, "benchmark",
+                () -> build.benchmark(warmups, benchmarkRuns, input == null ? null : new File(input))))
+            return false;
+        if (scalingRuns > 0 && !step(output, "scaling", () -> build.scaling(scalingRuns, Scaling.threadCounts(
+                threads > 0 ? threads : Runtime.getRuntime().availableProcessors()), scalingBindings(),
+                input == null ? null : new File(input))))
+            return false;
+        return sweep == null || step(output, "sweep", () -> build.sweep(new File(sweep), jobs));
+    }
+
+    private List<String> scalingBindings() {
+        // The default binding always, then those asked for.
+        List<String> measured = new ArrayList<String>();
+        measured.add("");
+        measured.addAll(bindings);
+        return measured;
+    }
+
+    private static boolean step(BuildOutput output, String name, Supplier<MagicBoxStatus> action) {
+        long time1 = System.nanoTime() / 1000000;
+        MagicBoxStatus status = action.get();
+        long time2 = System.nanoTime() / 1000000;
+        if (output instanceof JsonOutput)
+            ((JsonOutput) output).result(name, status.toString(), time2 - time1);
+        return status != MagicBoxStatus.FAILED;
+    }
+}
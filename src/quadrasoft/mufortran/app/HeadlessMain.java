@@ -0,0 +1,146 @@
+package quadrasoft.mufortran.app;
+
+import quadrasoft.mufortran.fortran.DaemonClient;
+import quadrasoft.mufortran.fortran.binaryutils.Toolchain;
+import quadrasoft.mufortran.general.*;
+import quadrasoft.mufortran.resources.Strings;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class HeadlessMain {
+    /*
+     * Command line entry point, builds projects without any window:
+     *
+     *   java -Djava.awt.headless=true -cp muFortran.jar quadrasoft.mufortran.app.HeadlessMain
+     *        [--json] [--daemon] [--socket PATH] [--debug] [--config NAME[,NAME...]] [--full]
+     *        [--ninja] [--no-compile] [--no-link] [--run] [--np N] [--bench N [--warmup W] [--stdin FILE]]
+     *        [--scaling N [--threads MAX] [--bind LIST]] [--sweep FILE [--jobs N]] [--trace]
+     *        [--parallel N] project.mfp...
+     *   java ... quadrasoft.mufortran.app.HeadlessMain --toolchain
+     *   java ... quadrasoft.mufortran.app.HeadlessMain --stop-daemon [--socket PATH]
+     *
+     * Every project is compiled, linked and optionally run, stopping at its first
+     * failure. Projects are built side by side, and so are the configurations asked
+     * with --config, each in its own object folder; --debug stands for --config
+     * debug. With --trace the timings of every job are written under the logs folder
+     * of the project. Standard output only carries the build output, anything else
+     * printed goes to standard error. The exit code is 0 when every project went
+     * through. --ninja has ninja build from a generated build.ninja. --toolchain
+     * lists the compilers, linkers and tools found and the flags the compilers
+     * accept. With --daemon the build is handed to a running BuildDaemon, which
+     * keeps projects, dependency graphs and toolchain probes loaded between builds,
+     * and its output is printed here. --bench runs the executable N times after W
+     * warm-up runs, 2 by default, and compares the runtimes with the previous
+     * benchmark of the configuration, see Benchmark. --sweep runs it once per row
+     * of a parameter table, N runs at a time, one per core by default, see Sweep.
+     * --scaling runs it N times with 1, 2, 4... OpenMP threads up to MAX, the
+     * number of cores by default, and again for each OMP_PROC_BIND of the comma
+     * separated LIST, and reports speedup and efficiency, see Scaling. --np builds
+     * with mpif90 and runs on N MPI ranks through mpirun, as the MPI option of a
+     * project does; rank output is tagged with the rank, see MpiLaunch.
+     */
+    public static void main(String[] args) {
+        if (System.getProperty("java.awt.headless") == null)
+            System.setProperty("java.awt.headless", "true");
+        Strings.load();
+        if (Arrays.asList(args).contains("--toolchain")) {
+            toolchain();
+            System.exit(0);
+        }
+        if (args.length > 0 && args[0].equals("--stop-daemon")) {
+            System.exit(stopDaemon(args.length == 3 && args[1].equals("--socket") ? Paths.get(args[2])
+                    : DaemonClient.defaultSocket()));
+        }
+
+        BuildRequest request;
+        try {
+            request = BuildRequest.parse(Arrays.asList(args));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+            return;
+        }
+
+        PrintStream out = System.out;
+        System.setOut(System.err);
+        if (Session.isConfigured())
+            Session.load();
+        if (Session.parameter("execExtension") == null)
+            Session.setParameter("execExtension", ".exe");
+        Log.redirect(request.isJson() ? new JsonOutput(out, null) : new TextOutput(System.err, null));
+
+        if (request.isDaemon())
+            System.exit(throughDaemon(request, out));
+        System.exit(request.execute(out, request.isJson(), Project::new));
+    }
+
+    private static int throughDaemon(BuildRequest request, PrintStream out) {
+        Path socket = request.getSocket() != null ? Paths.get(request.getSocket()) : DaemonClient.defaultSocket();
+        if (!DaemonClient.available(socket)) {
+            Log.send("Error: No build daemon listens on " + socket);
+            return 2;
+        }
+        Map<String, BuildOutput> outputs = new HashMap<String, BuildOutput>();
+        try {
+            return DaemonClient.build(socket, request.toArguments(), (line, event) -> {
+                if (request.isJson()) {
+                    out.println(line);
+                    return;
+                }
+                // One prefix per project and configuration, as for a local build.
+                String name = event.get("project") == null ? null
+                        : event.get("project") + " [" + event.get("configuration") + "]";
+                BuildOutput output = outputs.computeIfAbsent(String.valueOf(name),
+                        key -> name == null ? new TextOutput(System.err, null)
+                                : new TextOutput(out, request.isNamed() ? name : null));
+                JsonOutput.replay(event, output);
+            });
+        } catch (IOException e) {
+            Log.send("Error: " + e.getMessage());
+            return 2;
+        }
+    }
+
+    private static int stopDaemon(Path socket) {
+        if (!DaemonClient.available(socket)) {
+            System.err.println("No build daemon listens on " + socket);
+            return 1;
+        }
+        try {
+            return DaemonClient.build(socket, Arrays.asList("--stop"), (line, event) -> {
+            });
+        } catch (IOException e) {
+            // It may exit before answering.
+            return 0;
+        }
+    }
+
+    private static void toolchain() {
+        if (Session.isConfigured())
+            Session.load();
+        for (Toolchain.Tool tool : Toolchain.shared().probeAll()) {
+            System.out.println(tool.getKind().toString().toLowerCase() + "\t" + tool.getPath() + "\t"
+                    + tool.getVersion());
+            for (Map.Entry<String, Boolean> flag : tool.getFlags().entrySet())
+                System.out.println("\t" + flag.getKey() + "\t" + (flag.getValue() ? "yes" : "no"));
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: HeadlessMain --toolchain");
+        System.err.println("       HeadlessMain --stop-daemon [--socket PATH]");
+        System.err.println("       HeadlessMain [--json] [--daemon] [--socket PATH] [--debug] [--config NAME[,NAME...]] "
+                + "[--full] [--ninja] [--no-compile] [--no-link] [--run] [--np N] "
+                + "[--bench N [--warmup W] [--stdin FILE]] "
+                + "[--scaling N [--threads MAX] [--bind LIST]] [--sweep FILE [--jobs N]] [--trace] [--parallel N] "
+                + "project"
+                + Strings.s("application.project_extension") + "...");
+    }
+}
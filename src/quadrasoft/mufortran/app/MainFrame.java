@@ -4,6 +4,8 @@ import quadrasoft.mufortran.app.editor.EditorFile;
 import quadrasoft.mufortran.app.editor.EditorTab;
 import quadrasoft.mufortran.app.forms.*;
 import quadrasoft.mufortran.fortran.BinaryManager;
+import quadrasoft.mufortran.fortran.Diagnostic;
+import quadrasoft.mufortran.fortran.RunHistoryViewer;
 import quadrasoft.mufortran.general.CompilerLog;
 import quadrasoft.mufortran.general.Log;
 import quadrasoft.mufortran.general.Project;
@@ -39,7 +41,8 @@ public class MainFrame extends JFrame implements MouseListener, ActionListener,
     private JMenu menuHelp = new JMenu("Help");
     private JMenuItem newItem, newSourceItem, newEmptyItem, closeProjectItemP, buildOptionsItem, webItem, wikiItem, versionItem,
             remFileItemP, addFileItem, addFilesRecItem, closeProjectItem, apparenceItem, paramItem, openItem,
-            importItem, addFilesRecItemP, addFileItemP;
+            importItem, addFilesRecItemP, addFileItemP, runHistoryItem, benchmarkItem,
+            sweepItem, scalingItem;
     private ProjectPopup popupMenu = new ProjectPopup();
     private JDesktopPane mainBoard = new JDesktopPane();
     private JPanel botPane = new JPanel();
@@ -228,6 +231,16 @@ public class MainFrame extends JFrame implements MouseListener, ActionListener,
             if (Session.getActiveProject() != null)
                 optn = new ProjectOptionMenu(Session.getActiveProject());
             optn.setLocationRelativeTo(null);
+        } else if (arg0.getSource().equals(runHistoryItem) && Session.getActiveProject() != null) {
+            RunHistoryViewer history = new RunHistoryViewer(Session.getActiveProject());
+            history.setLocationRelativeTo(null);
+            history.setVisible(true);
+        } else if (arg0.getSource().equals(benchmarkItem) && Session.getActiveProject() != null) {
+            BenchmarkDialog.open(this, Session.getActiveProject());
+        } else if (arg0.getSource().equals(sweepItem) && Session.getActiveProject() != null) {
+            SweepDialog.open(this, Session.getActiveProject());
+        } else if (arg0.getSource().equals(scalingItem) && Session.getActiveProject() != null) {
+            ScalingDialog.open(this, Session.getActiveProject());
         } else if (arg0.getSource().equals(importItem)) {
 
             final ProjectImporterFrame importFrame = new ProjectImporterFrame();
@@ -324,6 +337,10 @@ public class MainFrame extends JFrame implements MouseListener, ActionListener,
         addFilesRecItem = new JMenuItem("Add multiple files ...", Resources.getImageResource("icon.addmore"));
         closeProjectItem = new JMenuItem("close project", Resources.getImageResource("icon.close"));
         buildOptionsItem = new JMenuItem("Properties", Resources.getImageResource("icon.param"));
+        runHistoryItem = new JMenuItem("Run history");
+        benchmarkItem = new JMenuItem("Benchmark ...");
+        sweepItem = new JMenuItem("Parameter sweep ...");
+        scalingItem = new JMenuItem("Thread scaling ...");
 
         newMenu.setIcon(Resources.getImageResource("icon.emptyfile"));
         newItem = new JMenuItem("Project", Resources.getImageResource("icon.projfile"));
@@ -397,6 +414,10 @@ public class MainFrame extends JFrame implements MouseListener, ActionListener,
         fileTree.getTreeReference().addMouseListener(this);
         importItem.addActionListener(this);
         buildOptionsItem.addActionListener(this);
+        runHistoryItem.addActionListener(this);
+        benchmarkItem.addActionListener(this);
+        sweepItem.addActionListener(this);
+        scalingItem.addActionListener(this);
 
         wikiItem.addActionListener(this);
         versionItem.addActionListener(this);
@@ -413,6 +434,10 @@ public class MainFrame extends JFrame implements MouseListener, ActionListener,
         menuProject.add(closeProjectItem);
         menuProject.addSeparator();
         menuProject.add(buildOptionsItem);
+        menuProject.add(runHistoryItem);
+        menuProject.add(benchmarkItem);
+        menuProject.add(sweepItem);
+        menuProject.add(scalingItem);
 
         menuOptions.add(apparenceItem);
         menuOptions.add(paramItem);
@@ -580,25 +605,10 @@ public class MainFrame extends JFrame implements MouseListener, ActionListener,
         if (e.getSource().equals(CompilerLog.getList())) {
             int index = CompilerLog.getList().getSelectedIndex();
             if (e.getClickCount() == 2) {
-                String temp = CompilerLog.getList().getSelectedValue();
-                if (temp.contains(".f") || temp.contains(".F")) {
-                    String filePath = /* Session.getActiveProject().getPath() + */temp.substring(0,
-                            temp.substring(0, temp.lastIndexOf(":")).lastIndexOf(":"));
-                    System.out.println(filePath);
-                    filePath = filePath.substring(0, filePath.lastIndexOf(":"));
-                    /*
-					 * if(new File(filePath+".f90").exists()) workspace.open(filePath+".f90"); else
-					 * if(new File(filePath+".f").exists()) workspace.open(filePath+".f"); else
-					 * if(new File(filePath+".F").exists()) workspace.open(filePath+".F"); else
-					 * if(new File(filePath+".f95").exists()) workspace.open(filePath+".f95"); else
-					 * if(new File(filePath+".F90").exists()) workspace.open(filePath+".F90");
-					 */
-                    workspace.open(filePath);
-                    String[] coords = temp.split(":");
-                    int length = coords.length;
-                    int line_no = Integer.parseInt(coords[length-2]);
-                    int coln_no = Integer.parseInt(coords[length-1]);
-                    workspace.searchLineInActiveFile(line_no, coln_no);
+                Diagnostic diagnostic = CompilerLog.getDiagnostic(index);
+                if (diagnostic != null && diagnostic.getFile() != null) {
+                    workspace.open(diagnostic.getFile());
+                    workspace.searchLineInActiveFile(diagnostic.getLine(), Math.max(diagnostic.getColumn() - 1, 0));
                 }
 
             }
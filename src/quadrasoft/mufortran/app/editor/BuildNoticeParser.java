@@ -0,0 +1,85 @@
+package quadrasoft.mufortran.app.editor;
+
+import org.fife.ui.rsyntaxtextarea.RSyntaxDocument;
+import org.fife.ui.rsyntaxtextarea.parser.AbstractParser;
+import org.fife.ui.rsyntaxtextarea.parser.DefaultParseResult;
+import org.fife.ui.rsyntaxtextarea.parser.DefaultParserNotice;
+import org.fife.ui.rsyntaxtextarea.parser.ParseResult;
+import org.fife.ui.rsyntaxtextarea.parser.ParserNotice;
+import quadrasoft.mufortran.fortran.Diagnostic;
+import quadrasoft.mufortran.fortran.Diagnostics;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import java.util.List;
+
+public class BuildNoticeParser extends AbstractParser {
+    /*
+     * Shows the diagnostics of the last build of a file as squiggles in its editor.
+     * Nothing is parsed here, the notices come from the compiler output kept in
+     * Diagnostics and are placed on the line and column gfortran reported.
+     */
+    private final DefaultParseResult result = new DefaultParseResult(this);
+    private String path = "";
+
+    private static ParserNotice.Level level(Diagnostic.Severity severity) {
+        switch (severity) {
+            case ERROR:
+                return ParserNotice.Level.ERROR;
+            case WARNING:
+                return ParserNotice.Level.WARNING;
+            default:
+                return ParserNotice.Level.INFO;
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public ParseResult parse(RSyntaxDocument doc, String style) {
+        result.clearNotices();
+        Element root = doc.getDefaultRootElement();
+        result.setParsedLines(0, root.getElementCount() - 1);
+        if (!path.equals(""))
+            addNotices(result, doc, Diagnostics.forFile(path));
+        return result;
+    }
+
+    static void addNotices(DefaultParseResult result, RSyntaxDocument doc, List<Diagnostic> diagnostics) {
+        // Places the diagnostics on the line and column given, the document may have changed since.
+        Element root = doc.getDefaultRootElement();
+        for (Diagnostic diagnostic : diagnostics) {
+            if (diagnostic.getLine() < 1 || diagnostic.getLine() > root.getElementCount())
+                continue;
+            Element line = root.getElement(diagnostic.getLine() - 1);
+            int start = line.getStartOffset();
+            int end = line.getEndOffset() - 1;
+            int offset = Math.min(start + Math.max(diagnostic.getColumn() - 1, 0), end);
+            int length = Math.max(tokenLength(doc, offset, end), 1);
+            DefaultParserNotice notice = new DefaultParserNotice(result.getParser(), diagnostic.getMessage(),
+                    diagnostic.getLine() - 1, offset, length);
+            notice.setLevel(level(diagnostic.getSeverity()));
+            result.addNotice(notice);
+        }
+    }
+
+    private static int tokenLength(RSyntaxDocument doc, int offset, int end) {
+        // Underlines the word the caret of gfortran points at.
+        try {
+            String text = doc.getText(offset, end - offset);
+            int length = 0;
+            while (length < text.length()
+                    && (Character.isLetterOrDigit(text.charAt(length)) || text.charAt(length) == '_'))
+                length++;
+            return length;
+        } catch (BadLocationException e) {
+            return 1;
+        }
+    }
+}
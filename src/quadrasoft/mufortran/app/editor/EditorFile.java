@@ -6,6 +6,7 @@ import org.fife.ui.rtextarea.RTextScrollPane;
 import org.fife.ui.rtextarea.SearchContext;
 import org.fife.ui.rtextarea.SearchEngine;
 import quadrasoft.mufortran.app.forms.QSearcherReplacer;
+import quadrasoft.mufortran.fortran.Diagnostics;
 import quadrasoft.mufortran.general.Log;
 import quadrasoft.mufortran.general.Session;
 import quadrasoft.mufortran.resources.Resources;
@@ -27,12 +28,15 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Set;
 
-public class EditorFile extends JPanel implements KeyListener, DocumentListener {
+public class EditorFile extends JPanel implements KeyListener, DocumentListener, Diagnostics.Listener {
 
     private static int newFilesCount;
     private final int mask = Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();
     private final RSyntaxTextArea editor = new RSyntaxTextArea();
+    private final BuildNoticeParser buildNotices = new BuildNoticeParser();
+    private final FortranSyntaxParser syntaxCheck = new FortranSyntaxParser(editor);
     boolean edited = false;
 
     public RSyntaxTextArea getEditor() {
@@ -103,6 +107,10 @@ public class EditorFile extends JPanel implements KeyListener, DocumentListener
         System.out.println("File loaded");
 
 
+        editor.addParser(buildNotices);
+        // Checked with the compiler once typing pauses.
+        editor.setParserDelay(500);
+        editor.addParser(syntaxCheck);
         editor.addKeyListener(this);
         editor.getDocument().addDocumentListener(this);
         //editor.setBorder(BorderFactory.createEtchedBorder());
@@ -110,6 +118,7 @@ public class EditorFile extends JPanel implements KeyListener, DocumentListener
         scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
         this.setLayout(new BorderLayout());
         this.add(scrollPane, BorderLayout.CENTER);
+        this.add(new ErrorStrip(editor), BorderLayout.LINE_END);
         scrollPane.getVerticalScrollBar().setUnitIncrement(20);
         setEdited(false);
     }
@@ -187,6 +196,27 @@ public class EditorFile extends JPanel implements KeyListener, DocumentListener
 
     public void setPath(String var_1) {
         path = var_1;
+        buildNotices.setPath(var_1);
+        syntaxCheck.setPath(var_1);
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        Diagnostics.addListener(this);
+    }
+
+    @Override
+    public void removeNotify() {
+        Diagnostics.removeListener(this);
+        super.removeNotify();
+    }
+
+    @Override
+    public void diagnosticsChanged(Set<String> files) {
+        // Called from the build threads, the notices are refreshed on the EDT.
+        if (!path.equals("") && files.contains(Diagnostics.key(path)))
+            SwingUtilities.invokeLater(() -> editor.forceReparsing(buildNotices));
     }
 
 
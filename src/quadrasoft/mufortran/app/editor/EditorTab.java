@@ -4,6 +4,7 @@ import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
 import quadrasoft.mufortran.app.forms.QSearcher;
 import quadrasoft.mufortran.app.forms.QSearcherReplacer;
 import quadrasoft.mufortran.fortran.BinaryManager;
+import quadrasoft.mufortran.general.BuildConfiguration;
 import quadrasoft.mufortran.general.Log;
 import quadrasoft.mufortran.general.Session;
 import quadrasoft.mufortran.resources.Resources;
@@ -153,21 +154,26 @@ public class EditorTab extends JPanel implements ActionListener, KeyListener, Mo
                     }
                 }
                 BinaryManager.bindProject(Session.getActiveProject());
+                BinaryManager.debug(debugButton.isSelected());
                 BinaryManager.linkProject();
             } else {
                 Log.send("Open a project first.");
             }
         } else if (e.getSource().equals(clearProjectButton)) {
             if (Session.getActiveProject() != null) {
-                File folder = new File(
-                        Session.getActiveProject().getPath() + Session.getActiveProject().getObjectPath());
-                File fList[] = folder.listFiles();
-                // Searches .mod
-                for (int i = 0; i < fList.length; i++) {
-                    String pes = fList[i].getName();
-                    if (pes.endsWith(".mod")) {
-                        // and deletes
-                        fList[i].delete();
+                for (BuildConfiguration configuration : Session.getActiveProject().getConfigurations()) {
+                    File folder = new File(Session.getActiveProject().getPath()
+                            + Session.getActiveProject().getObjectPath(configuration.getName()));
+                    File fList[] = folder.listFiles();
+                    if (fList == null)
+                        continue;
+                    // Searches .mod
+                    for (int i = 0; i < fList.length; i++) {
+                        String pes = fList[i].getName();
+                        if (pes.endsWith(".mod")) {
+                            // and deletes
+                            fList[i].delete();
+                        }
                     }
                 }
             }
@@ -210,6 +216,7 @@ public class EditorTab extends JPanel implements ActionListener, KeyListener, Mo
         } else if (e.getSource().equals(runButton)) {
             if (Session.getActiveProject() != null) {
                 BinaryManager.bindProject(Session.getActiveProject());
+                BinaryManager.debug(debugButton.isSelected());
                 BinaryManager.launchProject();
                 ;
             } else {
@@ -444,7 +451,10 @@ public class EditorTab extends JPanel implements ActionListener, KeyListener, Mo
 
     public boolean isOpenend(String path) {
         for (Component temp : editorPane.getComponents()) {
-            if (((EditorFile) temp).getPath().equalsIgnoreCase(path)) {
+            String opened = ((EditorFile) temp).getPath();
+            // Paths from the compiler are absolute and normalized, the tree may give others.
+            if (opened.equalsIgnoreCase(path) || (!opened.isEmpty() && path != null
+                    && Paths.get(opened).toAbsolutePath().normalize().equals(Paths.get(path).toAbsolutePath().normalize()))) {
                 editorPane.setSelectedComponent(temp);
                 return true;
             }
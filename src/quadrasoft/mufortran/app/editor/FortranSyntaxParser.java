@@ -0,0 +1,211 @@
+package quadrasoft.mufortran.app.editor;
+
+import org.fife.ui.rsyntaxtextarea.RSyntaxDocument;
+import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
+import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
+import org.fife.ui.rsyntaxtextarea.parser.AbstractParser;
+import org.fife.ui.rsyntaxtextarea.parser.DefaultParseResult;
+import org.fife.ui.rsyntaxtextarea.parser.ParseResult;
+import quadrasoft.mufortran.fortran.BinaryManager;
+import quadrasoft.mufortran.fortran.Diagnostic;
+import quadrasoft.mufortran.fortran.DiagnosticParser;
+import quadrasoft.mufortran.fortran.ProjectBuild;
+import quadrasoft.mufortran.fortran.binaryutils.CompilerIdentity;
+import quadrasoft.mufortran.fortran.binaryutils.ProcessPump;
+import quadrasoft.mufortran.fortran.binaryutils.Toolchain;
+import quadrasoft.mufortran.general.BuildOutput;
+import quadrasoft.mufortran.general.Log;
+import quadrasoft.mufortran.general.Project;
+import quadrasoft.mufortran.general.Session;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class FortranSyntaxParser extends AbstractParser {
+    /*
+     * Checks the edited buffer with gfortran -fsyntax-only while typing. The
+     * ParserManager calls parse() on the EDT once the user paused; the text is
+     * copied there and checked on a background thread in a temporary folder, with
+     * the compiler, flags, include and module folders of the active project. A
+     * check still running when the text changes again is killed. Once a check is
+     * done the editor is asked to parse again and gets its notices.
+     */
+    private static final ExecutorService checker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "syntax-check");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final long timeout = 10;
+    // The builds a check resolves its compiler with report nothing, a missing mpif90 is told when building.
+    private static final BuildOutput quiet = new BuildOutput() {
+        @Override
+        public void message(String m) {
+        }
+
+        @Override
+        public void compilerReset() {
+        }
+
+        @Override
+        public void compilerOutput(String header, List<String> block, List<Diagnostic> diagnostics) {
+        }
+
+        @Override
+        public void programStarted(Process process) {
+        }
+
+        @Override
+        public void programOutput(String line, boolean error) {
+        }
+
+        @Override
+        public void programEnded(int exitCode, long elapsed) {
+        }
+    };
+
+    private final RSyntaxTextArea editor;
+    private final DefaultParseResult result = new DefaultParseResult(this);
+    private String path = "";
+    // Text the notices were computed for, and the check running for newer text.
+    private String checkedText = null;
+    private List<Diagnostic> checked = new ArrayList<Diagnostic>();
+    private Future<?> running;
+    private volatile Process process;
+
+    public FortranSyntaxParser(RSyntaxTextArea editor) {
+        this.editor = editor;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public ParseResult parse(RSyntaxDocument doc, String style) {
+        result.clearNotices();
+        result.setParsedLines(0, doc.getDefaultRootElement().getElementCount() - 1);
+        if (!SyntaxConstants.SYNTAX_STYLE_FORTRAN.equals(style))
+            return result;
+        String text;
+        try {
+            text = doc.getText(0, doc.getLength());
+        } catch (BadLocationException e) {
+            return result;
+        }
+        if (!text.equals(checkedText))
+            check(text);
+        // Until the check is done the previous notices stay, placed on the current text.
+        BuildNoticeParser.addNotices(result, doc, checked);
+        return result;
+    }
+
+    private void check(String text) {
+        if (running != null && !running.isDone()) {
+            running.cancel(true);
+            Process stale = process;
+            if (stale != null)
+                ProcessPump.destroyTree(stale);
+        }
+        String name = path.equals("") ? "untitled.f90" : new File(path).getName();
+        Project project = Session.getActiveProject();
+        // The configuration the buttons build, the debug one while the debug button is down.
+        ProjectBuild build = project == null ? null : BinaryManager.projectBuild(project, quiet);
+        List<String> options = options(build);
+        running = checker.submit(() -> {
+            // The compiler the project builds with, mpif90 for MPI projects; resolving it may probe the toolchain.
+            String compiler = build == null ? null : build.compilerPath();
+            if (compiler == null || compiler.equals(""))
+                compiler = "gfortran";
+            List<String> commands = new ArrayList<String>();
+            commands.add(compiler);
+            // A flag the compiler rejects would fail every check.
+            commands.addAll(CompilerIdentity.resolve(compiler).isFile()
+                    ? Toolchain.shared().filter(compiler, options, quiet) : options);
+            List<Diagnostic> found = run(text, name, commands);
+            if (found != null && !Thread.currentThread().isInterrupted()) {
+                SwingUtilities.invokeLater(() -> {
+                    checkedText = text;
+                    checked = found;
+                    editor.forceReparsing(this);
+                });
+            }
+        });
+    }
+
+    private List<String> options(ProjectBuild build) {
+        // Read on the EDT, the project may change under the checker.
+        List<String> options = new ArrayList<String>();
+        options.add("-fsyntax-only");
+        if (!path.equals(""))
+            options.add("-I" + new File(path).getAbsoluteFile().getParent());
+        if (build != null) {
+            options.add("-I" + build.objectFolder());
+            options.addAll(build.syntaxOptions());
+        }
+        return options;
+    }
+
+    private List<Diagnostic> run(String text, String name, List<String> options) {
+        // Null when the check was cancelled or could not run.
+        File folder = null;
+        try {
+            folder = Files.createTempDirectory("mufortran-syntax").toFile();
+            File snapshot = new File(folder, name);
+            Files.write(snapshot.toPath(), text.getBytes(StandardCharsets.UTF_8));
+
+            List<String> commands = new ArrayList<String>(options);
+            // Module files written while checking stay in the temporary folder.
+            commands.add("-J" + folder.getPath());
+            commands.add(snapshot.getName());
+            ProcessBuilder builder = new ProcessBuilder(commands);
+            builder.directory(folder);
+
+            List<Diagnostic> found = new ArrayList<Diagnostic>();
+            String key = snapshot.toPath().normalize().toString();
+            DiagnosticParser parser = new DiagnosticParser(folder, diagnostic -> {
+                // Messages about included files belong to other editors.
+                if (key.equals(diagnostic.getFile()))
+                    found.add(diagnostic);
+            });
+            process = builder.start();
+            CompletableFuture<Integer> done = new ProcessPump(process, line -> parser.feed(line.getText())).start();
+            done.get(timeout, TimeUnit.SECONDS);
+            parser.flush();
+            return found;
+        } catch (IOException e) {
+            // No compiler to check with, the build will tell. Anything else may pass, the next check tries again.
+            if (!CompilerIdentity.resolve(options.get(0)).isFile()) {
+                SwingUtilities.invokeLater(() -> setEnabled(false));
+                Log.send("Warning: Syntax checking disabled, could not find " + options.get(0));
+            }
+            return null;
+        } catch (InterruptedException | CancellationException e) {
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        } finally {
+            Process finished = process;
+            if (finished != null)
+                ProcessPump.destroyTree(finished);
+            process = null;
+            if (folder != null)
+                delete(folder);
+        }
+    }
+
+    private static void delete(File folder) {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        folder.delete();
+    }
+}
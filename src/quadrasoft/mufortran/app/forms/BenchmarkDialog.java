@@ -0,0 +1,66 @@
+package quadrasoft.mufortran.app.forms;
+
+import quadrasoft.mufortran.fortran.BinaryManager;
+import quadrasoft.mufortran.fortran.binaryutils.Benchmark;
+import quadrasoft.mufortran.general.Project;
+import quadrasoft.mufortran.general.Session;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.File;
+
+public final class BenchmarkDialog {
+    /*
+     * Asks how to benchmark the executable of a project: measured runs, warm-up
+     * runs and the input to replay, the one typed in the console during the last
+     * run by default. The counts are kept in the session parameters.
+     */
+    private BenchmarkDialog() {
+    }
+
+    private static int parameter(String name, int fallback) {
+        try {
+            return Integer.parseInt(Session.parameter(name).trim());
+        } catch (NullPointerException | NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    public static void open(Component parent, Project project) {
+        BinaryManager.bindProject(project);
+        JSpinner runs = new JSpinner(new SpinnerNumberModel(parameter("BenchmarkRuns", 10), 2, 10000, 1));
+        JSpinner warmups = new JSpinner(new SpinnerNumberModel(parameter("BenchmarkWarmups", 2), 0, 1000, 1));
+        File recorded = new File(BinaryManager.logFolder(), Benchmark.recordedInput);
+        JTextField input = new JTextField(recorded.isFile() ? recorded.getPath() : "", 28);
+        JButton browse = new JButton("...");
+        browse.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser(project.getPath());
+            if (chooser.showOpenDialog(parent) == JFileChooser.APPROVE_OPTION)
+                input.setText(chooser.getSelectedFile().getPath());
+        });
+
+        JPanel panel = new JPanel(new GridBagLayout());
+        GridBagConstraints c = new GridBagConstraints();
+        c.anchor = GridBagConstraints.WEST;
+        c.insets = new Insets(2, 2, 2, 2);
+        c.gridy = 0;
+        panel.add(new JLabel("Measured runs"), c);
+        panel.add(runs, c);
+        c.gridy = 1;
+        panel.add(new JLabel("Warm-up runs"), c);
+        panel.add(warmups, c);
+        c.gridy = 2;
+        panel.add(new JLabel("Input (empty for none)"), c);
+        panel.add(input, c);
+        panel.add(browse, c);
+        if (JOptionPane.showConfirmDialog(parent, panel, "Benchmark " + project.getName(),
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION)
+            return;
+
+        Session.setParameter("BenchmarkRuns", String.valueOf(runs.getValue()));
+        Session.setParameter("BenchmarkWarmups", String.valueOf(warmups.getValue()));
+        String path = input.getText().trim();
+        BinaryManager.benchmarkProject((Integer) warmups.getValue(), (Integer) runs.getValue(),
+                path.isEmpty() ? null : new File(path));
+    }
+}
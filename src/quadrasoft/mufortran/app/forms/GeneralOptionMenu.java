@@ -39,6 +39,10 @@ public class GeneralOptionMenu extends JFrame implements ActionListener, KeyList
     private JLabel lblTheme;
     private JTextField textField_1;
     private JTextField textField_2;
+    private JCheckBox cacheChk;
+    private JCheckBox daemonChk;
+    private JCheckBox ninjaChk;
+    private JTextField cacheSizeTf;
 
     public GeneralOptionMenu() {
         super();
@@ -169,6 +173,46 @@ public class GeneralOptionMenu extends JFrame implements ActionListener, KeyList
         lblWarning.setBounds(15, 152, 271, 33);
         lblWarning.setVisible(false);
         buildPane.add(lblWarning);
+
+        JPanel compilationPane = new JPanel();
+        tabbedPane.addTab("Build", null, compilationPane, null);
+        compilationPane.setLayout(null);
+
+        cacheChk = new JCheckBox("Shared compilation cache");
+        cacheChk.setToolTipText("<html> Reuses objects and modules compiled by any project");
+        cacheChk.setBounds(15, 19, 280, 29);
+        cacheChk.setSelected(!"false".equalsIgnoreCase(Session.parameter("CompilationCache")));
+        compilationPane.add(cacheChk);
+
+        JLabel lblCacheSize = new JLabel("Cache size (MB):");
+        lblCacheSize.setBounds(15, 60, 165, 20);
+        compilationPane.add(lblCacheSize);
+
+        cacheSizeTf = new JTextField();
+        cacheSizeTf.setBounds(288, 57, 161, 26);
+        cacheSizeTf.setText(Session.parameter("CompilationCacheSize") == null ? "1024"
+                : Session.parameter("CompilationCacheSize"));
+        compilationPane.add(cacheSizeTf);
+
+        JLabel lblCacheFolder = new JLabel(Session.getAppdatasoragefolder() + "cache/");
+        lblCacheFolder.setForeground(Color.GRAY);
+        lblCacheFolder.setBounds(15, 95, 434, 20);
+        compilationPane.add(lblCacheFolder);
+
+        daemonChk = new JCheckBox("Build through the build daemon when it runs");
+        daemonChk.setToolTipText("<html> Project builds go to the BuildDaemon shared by all windows<br>"
+                + "and the command line, which keeps projects and toolchain loaded");
+        daemonChk.setBounds(15, 125, 434, 29);
+        daemonChk.setSelected("true".equalsIgnoreCase(Session.parameter("BuildDaemon")));
+        compilationPane.add(daemonChk);
+
+        ninjaChk = new JCheckBox("Build projects with ninja when installed");
+        ninjaChk.setToolTipText("<html> Writes build.ninja in the object folder and lets ninja<br>"
+                + "compile and link, its output still goes to the build log");
+        ninjaChk.setBounds(15, 155, 434, 29);
+        ninjaChk.setSelected("true".equalsIgnoreCase(Session.parameter("NinjaBackend")));
+        compilationPane.add(ninjaChk);
+
         tabbedPane.setSelectedIndex(0);
         getContentPane().add(tabbedPane);
         endBtn.setBounds(386, 236, 98, 23);
@@ -236,6 +280,10 @@ public class GeneralOptionMenu extends JFrame implements ActionListener, KeyList
         }
         Session.setAutoSaveTreshold(slider.getValue());
         Session.setAutoSave(chckbxEnableAutosave.isSelected());
+        Session.setParameter("CompilationCache", String.valueOf(cacheChk.isSelected()));
+        Session.setParameter("CompilationCacheSize", cacheSizeTf.getText().trim());
+        Session.setParameter("BuildDaemon", String.valueOf(daemonChk.isSelected()));
+        Session.setParameter("NinjaBackend", String.valueOf(ninjaChk.isSelected()));
         Session.save();
         Log.send("Saving changes");
     }
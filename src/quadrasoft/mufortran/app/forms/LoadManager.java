@@ -215,6 +215,8 @@ public class LoadManager extends JFrame {
         Session.setParameter("Theme", "Classic");
         Session.setParameter("FontName", "Courrier New");
         Session.setParameter("FontSize", "18");
+        Session.setParameter("CompilationCache", "true");
+        Session.setParameter("CompilationCacheSize", "1024");
         // Ensuring that the working folder exists
         new File(Session.getWorkDir()).mkdirs();
         Session.save();
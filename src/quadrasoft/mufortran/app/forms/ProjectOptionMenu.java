@@ -32,6 +32,9 @@ public class ProjectOptionMenu extends JFrame implements ActionListener, KeyList
     JLabel projNameLabel = new JLabel("Project name:");
     JLabel lblNewLabel_4 = new JLabel("Files list:");
     JCheckBox printLog = new JCheckBox("Print log to file");
+    JCheckBox incremental = new JCheckBox("Incremental build");
+    JCheckBox mpi = new JCheckBox("MPI program, run with mpirun");
+    JSpinner ranks = new JSpinner(new SpinnerNumberModel(2, 1, 4096, 1));
     JList<String> list;
     JPanel buildPane = new JPanel();
     JPanel executePane = new JPanel();
@@ -242,10 +245,26 @@ public class ProjectOptionMenu extends JFrame implements ActionListener, KeyList
         executePane.add(execArg);
         execArg.setColumns(10);
 
+        mpi.setBounds(6, 110, 240, 23);
+        mpi.setSelected(project.isMpi());
+        executePane.add(mpi);
+
+        JLabel lblRanks = new JLabel("Ranks:");
+        lblRanks.setBounds(252, 114, 50, 14);
+        executePane.add(lblRanks);
+
+        ranks.setValue(project.getRanks());
+        ranks.setBounds(302, 111, 60, 20);
+        executePane.add(ranks);
+
         printLog.setBounds(11, 12, 186, 23);
         printLog.setSelected(project.isPrintLog());
         buildPane.add(printLog);
 
+        incremental.setBounds(252, 12, 186, 23);
+        incremental.setSelected(project.isIncremental());
+        buildPane.add(incremental);
+
         JLabel label = new JLabel("Executable name");
         label.setBounds(10, 172, 232, 14);
         buildPane.add(label);
@@ -312,8 +331,11 @@ public class ProjectOptionMenu extends JFrame implements ActionListener, KeyList
         Session.getActiveProject().setCompilerPath(compPath.getText());
         Session.getActiveProject().setExecutableName(exeNameTf.getText());
         Session.getActiveProject().setPrintLog(printLog.isSelected());
+        Session.getActiveProject().setIncremental(incremental.isSelected());
         Session.getActiveProject().setExternals(externals);
         Session.getActiveProject().setExecutionPath(exePlace.getText());
+        Session.getActiveProject().setMpi(mpi.isSelected());
+        Session.getActiveProject().setRanks((Integer) ranks.getValue());
 
         try {
             Session.getActiveProject().save();
@@ -0,0 +1,85 @@
+package quadrasoft.mufortran.app.forms;
+
+import quadrasoft.mufortran.fortran.BinaryManager;
+import quadrasoft.mufortran.fortran.binaryutils.Benchmark;
+import quadrasoft.mufortran.fortran.binaryutils.Scaling;
+import quadrasoft.mufortran.general.Project;
+import quadrasoft.mufortran.general.Session;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class ScalingDialog {
+    /*
+     * Asks how to measure the thread scaling of a project: runs per thread count,
+     * the most threads to try, the OMP_PROC_BIND variants to measure besides the
+     * default and the input to replay, as for a benchmark. The runs and bindings
+     * are kept in the session parameters.
+     */
+    private static final String[] bindings = {"close", "spread"};
+
+    private ScalingDialog() {
+    }
+
+    public static void open(Component parent, Project project) {
+        BinaryManager.bindProject(project);
+        int cores = Runtime.getRuntime().availableProcessors();
+        int saved;
+        try {
+            saved = Integer.parseInt(Session.parameter("ScalingRuns").trim());
+        } catch (NullPointerException | NumberFormatException e) {
+            saved = 3;
+        }
+        JSpinner runs = new JSpinner(new SpinnerNumberModel(Math.max(1, saved), 1, 1000, 1));
+        JSpinner threads = new JSpinner(new SpinnerNumberModel(cores, 1, 4096, 1));
+        String chosen = Session.parameter("ScalingBindings");
+        List<String> previous = chosen == null ? new ArrayList<String>() : Arrays.asList(chosen.split(","));
+        JPanel variants = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        List<JCheckBox> boxes = new ArrayList<JCheckBox>();
+        for (String binding : bindings) {
+            JCheckBox box = new JCheckBox(binding, previous.contains(binding));
+            boxes.add(box);
+            variants.add(box);
+        }
+        File recorded = new File(BinaryManager.logFolder(), Benchmark.recordedInput);
+        JTextField input = new JTextField(recorded.isFile() ? recorded.getPath() : "", 28);
+
+        JPanel panel = new JPanel(new GridBagLayout());
+        GridBagConstraints c = new GridBagConstraints();
+        c.anchor = GridBagConstraints.WEST;
+        c.insets = new Insets(2, 2, 2, 2);
+        c.gridy = 0;
+        panel.add(new JLabel("Runs per thread count"), c);
+        panel.add(runs, c);
+        c.gridy = 1;
+        panel.add(new JLabel("Threads up to"), c);
+        panel.add(threads, c);
+        c.gridy = 2;
+        panel.add(new JLabel("Also with OMP_PROC_BIND"), c);
+        panel.add(variants, c);
+        c.gridy = 3;
+        panel.add(new JLabel("Input (empty for none)"), c);
+        panel.add(input, c);
+        if (JOptionPane.showConfirmDialog(parent, panel, "Thread scaling of " + project.getName(),
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION)
+            return;
+
+        List<String> selected = new ArrayList<String>();
+        selected.add("");
+        List<String> named = new ArrayList<String>();
+        for (JCheckBox box : boxes) {
+            if (box.isSelected())
+                named.add(box.getText());
+        }
+        selected.addAll(named);
+        Session.setParameter("ScalingRuns", String.valueOf(runs.getValue()));
+        Session.setParameter("ScalingBindings", String.join(",", named));
+        String path = input.getText().trim();
+        BinaryManager.scalingProject((Integer) runs.getValue(), Scaling.threadCounts((Integer) threads.getValue()),
+                selected, path.isEmpty() ? null : new File(path));
+    }
+}
@@ -0,0 +1,56 @@
+package quadrasoft.mufortran.app.forms;
+
+import quadrasoft.mufortran.fortran.BinaryManager;
+import quadrasoft.mufortran.general.Project;
+import quadrasoft.mufortran.general.Session;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.*;
+import java.io.File;
+
+public final class SweepDialog {
+    /*
+     * Asks for the parameter table of a sweep and how many runs may go at once,
+     * one per core by default. The count is kept in the session parameters. The
+     * runs are listed in a SweepViewer when the sweep is over.
+     */
+    private SweepDialog() {
+    }
+
+    private static int jobs() {
+        try {
+            return Integer.parseInt(Session.parameter("SweepJobs").trim());
+        } catch (NullPointerException | NumberFormatException e) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    public static void open(Component parent, Project project) {
+        JFileChooser chooser = new JFileChooser(project.getPath());
+        chooser.setDialogTitle("Parameter table");
+        chooser.setFileFilter(new FileNameExtensionFilter("Parameter tables (*.csv)", "csv"));
+        if (chooser.showOpenDialog(parent) != JFileChooser.APPROVE_OPTION)
+            return;
+        File table = chooser.getSelectedFile();
+
+        JSpinner jobs = new JSpinner(new SpinnerNumberModel(Math.max(1, jobs()), 1, 1024, 1));
+        JPanel panel = new JPanel(new GridBagLayout());
+        GridBagConstraints c = new GridBagConstraints();
+        c.anchor = GridBagConstraints.WEST;
+        c.insets = new Insets(2, 2, 2, 2);
+        c.gridy = 0;
+        panel.add(new JLabel("Table"), c);
+        panel.add(new JLabel(table.getName()), c);
+        c.gridy = 1;
+        panel.add(new JLabel("Concurrent runs"), c);
+        panel.add(jobs, c);
+        if (JOptionPane.showConfirmDialog(parent, panel, "Sweep " + project.getName(),
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION)
+            return;
+
+        Session.setParameter("SweepJobs", String.valueOf(jobs.getValue()));
+        BinaryManager.bindProject(project);
+        BinaryManager.sweepProject(table, (Integer) jobs.getValue());
+    }
+}
@@ -1,5 +1,7 @@
 package quadrasoft.mufortran.display;
 
+import quadrasoft.mufortran.fortran.Diagnostic;
+import quadrasoft.mufortran.general.CompilerLog;
 import quadrasoft.mufortran.resources.Resources;
 
 import javax.swing.*;
@@ -19,23 +21,28 @@ public class ErrorLineRenderer extends JLabel implements ListCellRenderer<Object
                                                   boolean cellHasFocus) {
         if (value instanceof String) {
             String entry = (String) value;
+            // Lines parsed by the build carry their diagnostic, the rest is our own messages.
+            Diagnostic diagnostic = CompilerLog.getDiagnostic(index);
+            setIcon(null);
 
-            if (entry.contains("Error:")) {
-                setText("<html><font color=\"red\"><b>>> " + entry + "</font></b>");
-            } else if (entry.contains("Warning")) {
-                setText("<html><font color=\"orange\"><b>>> " + entry + "</font></b>");
-            } else if (entry.contains(".f")) {
+            if (diagnostic != null && diagnostic.getFile() != null
+                    && CompilerLog.getDiagnostic(index - 1) != diagnostic) {
                 setIcon(Resources.getImageResource("icon.error"));
-                setText("<html><b><font color=\"black\">Location:</font><font color=\"gray\"> " + entry
+                setText("<html><b><font color=\"black\">Location:</font><font color=\"gray\"> "
+                        + diagnostic.getFile() + ":" + diagnostic.getLine() + ":" + diagnostic.getColumn()
+                        + "</font></b>");
+            } else if (diagnostic != null && entry.endsWith(diagnostic.getMessage())
+                    && !diagnostic.getExcerpt().contains(entry)) {
+                setText("<html><font color=\"" + color(diagnostic.getSeverity()) + "\"><b>>> " + entry
                         + "</font></b>");
+            } else if (diagnostic == null && entry.startsWith("Error:")) {
+                setText("<html><font color=\"red\"><b>>> " + entry + "</font></b>");
+            } else if (diagnostic == null && entry.startsWith("Warning:")) {
+                setText("<html><font color=\"orange\"><b>>> " + entry + "</font></b>");
+            } else if (entry.equals("")) {
+                setText(entry);
             } else {
-                if (entry.equals("")) {
-                    setText(entry);
-                } else {
-                    setText("         > " + entry);
-
-                }
-                setIcon(null);
+                setText("         > " + entry);
             }
         }
         if (isSelected) {
@@ -47,4 +54,15 @@ public class ErrorLineRenderer extends JLabel implements ListCellRenderer<Object
         }
         return this;
     }
+
+    private static String color(Diagnostic.Severity severity) {
+        switch (severity) {
+            case ERROR:
+                return "red";
+            case WARNING:
+                return "orange";
+            default:
+                return "gray";
+        }
+    }
 }
\ No newline at end of file
@@ -3,140 +3,92 @@ package quadrasoft.mufortran.fortran;
 import quadrasoft.mufortran.fortran.binaryutils.Compiler;
 import quadrasoft.mufortran.fortran.binaryutils.Job;
 import quadrasoft.mufortran.fortran.binaryutils.JobType;
+import quadrasoft.mufortran.fortran.binaryutils.MagicBoxStatus;
+import quadrasoft.mufortran.general.BuildOutput;
 import quadrasoft.mufortran.general.CompilerLog;
 import quadrasoft.mufortran.general.Log;
 import quadrasoft.mufortran.general.Project;
 import quadrasoft.mufortran.general.Session;
+import quadrasoft.mufortran.general.SwingOutput;
 
+import javax.swing.*;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class BinaryManager {
-
+    /*
+     * Entry point of the build buttons. Jobs go through the BuildService lane of their
+     * project and configuration and run in the order they were asked for; the build
+     * logs are saved once a job is done. The debug button picks the debug
+     * configuration, which builds next to the others without discarding their objects.
+     * With the BuildDaemon option set and a daemon running, project builds are sent
+     * to it instead, so every window and the command line share its warm state.
+     */
     static Project boundProject;
 
-    static Job job;
     static boolean debug_active = false;
 
     public static void bindProject(Project prj) {
         boundProject = prj;
     }
 
-    private static void checkBinariesFolderExistance() {
+    private static void checkLoggingFolderExistance(Project project) {
         // the build path and object folder
-        new File(boundProject.getPath() + "/bin/").mkdirs();
+        new File(project.getPath() + "/logs/").mkdirs();
     }
 
-    private static void checkLoggingFolderExistance() {
-        // the build path and object folder
-        new File(boundProject.getPath() + "/logs/").mkdirs();
-    }
-
-    private static void checkObjectFolderExistance() {
-        // the build path and object folder
-        new File(boundProject.getPath() + boundProject.getObjectPath()).mkdirs();
+    private static ProjectBuild projectBuild() {
+        ProjectBuild build = new ProjectBuild(boundProject, new SwingOutput());
+        build.setDebug(debug_active);
+        return build;
     }
 
-    public static void compileFile(String path) {
-        Compiler aCompiler = new Compiler();
-        aCompiler.clear();
-        job = new Job("Compile file" + boundProject.getName(), boundProject.getCompilerPath(), JobType.COMPILING);
-        job.setContext(boundProject.getPath() + boundProject.getObjectPath());
-        // We tell the compiler we are going to compile with a certain compiler
-        aCompiler.setJob(job);
-        // We send the source files to the compiler.
-        aCompiler.input(Arrays.asList(path));
-        // We specify the output object files to the compiler
-        // We specify additive options
-        aCompiler.option(boundProject.getExternals());
-
-        if (debug_active)
-            aCompiler.option(Arrays.asList("-Og", "-fimplicit-none", "-Wline-truncation", "-Wampersand",
-                    "-Wcharacter-truncation", "-Wsurprising", "-Waliasing", "-Wimplicit-interface", "-Wconversion",
-                    "-Wunused-parameter", "-fwhole-file", "-fcheck=all", "-std=f2008", "-pedantic", "-fbacktrace",
-                    "-Wunused", "-Wreal-q-constant", "-Wtarget-lifetime","-Wc-binding-type",
-                    "-Wintrinsics-std", "-Wintrinsic-shadow", "-Wno-tabs"
-            ));
-        // We init the process.
-        aCompiler.init();
-        checkObjectFolderExistance();
-        aCompiler.start();
-        if (boundProject.isPrintLog()) {
-            checkLoggingFolderExistance();
-            CompilerLog.save(boundProject.getPath() + "/logs/build.log");
+    private static CompletableFuture<MagicBoxStatus> submit(ProjectBuild build, Compiler aCompiler, String logName) {
+        Project project = build.getProject();
+        CompletableFuture<MagicBoxStatus> done = BuildService.lane(build.lane()).submit(aCompiler);
+        if (logName != null && project.isPrintLog()) {
+            // The compiler log is filled on the EDT, the save is queued behind the last lines.
+            done.whenComplete((status, error) -> SwingUtilities.invokeLater(() -> {
+                checkLoggingFolderExistance(project);
+                CompilerLog.save(project.getPath() + "/logs/" + logName);
+            }));
         }
+        return done;
     }
 
-    public static void compileProject() {
-        Compiler aCompiler = new Compiler();
-        aCompiler.clear();
-        job = new Job("Compile project" + boundProject.getName(), boundProject.getCompilerPath(), JobType.COMPILING);
-        job.setContext(boundProject.getPath() + boundProject.getObjectPath());
-        // We tell the compiler we are goind to compile with a certain compiler
-        aCompiler.setJob(job);
-        // We send the source files to the compiler.
-        aCompiler.input(prepareFilesForCompilation());
-        // We specify the output object files to the compiler
-        // We specify additive options
-        aCompiler.option(boundProject.getExternals());
-        if (debug_active)
-            aCompiler.option(Arrays.asList("-Og", "-fimplicit-none", "-Wline-truncation", "-Wampersand",
-                    "-Wcharacter-truncation", "-Wsurprising", "-Waliasing", "-Wimplicit-interface", "-Wconversion",
-                    "-Wunused-parameter", "-fwhole-file", "-fcheck=all", "-std=f2008", "-pedantic", "-fbacktrace",
-                    "-Wno-tabs", "-Wunused", "-Wreal-q-constant", "-Wtarget-lifetime","-Wc-binding-type",
-                    "-Wintrinsics-std", "-Wintrinsic-shadow"
-            ));
-        // We init the process.
-        aCompiler.init();
-        checkObjectFolderExistance();
-        aCompiler.start();
-        if (boundProject.isPrintLog()) {
-            checkLoggingFolderExistance();
-            CompilerLog.save(boundProject.getPath() + "/logs/build.log");
-        }
-
+    public static CompletableFuture<MagicBoxStatus> compileFile(String path) {
+        ProjectBuild build = projectBuild();
+        return submit(build, build.compileFile(path), "build.log");
     }
 
-    private static List<String> createExecutableOutput() {
-        String exeName = boundProject.getPath() + "/bin/" + boundProject.getExecutableName()
-                + Session.parameter("execExtension");
-        List<String> ret = new ArrayList<String>();
-        ret.add(exeName);
-        return ret;
-
+    private static boolean throughDaemon() {
+        return "true".equalsIgnoreCase(Session.parameter("BuildDaemon"))
+                && DaemonClient.available(DaemonClient.defaultSocket());
     }
 
-    private static List<String> createOutputFilesList() {
-        // This function takes source files list from bound project and generates the
-        // expected output files names.
-        List<String> files = new ArrayList<String>();
-
-        for (String source : boundProject.getSource()) {
-            if (FileTypesManager.isFortranSource(source)) {
-                String fileName = source.substring(0, source.lastIndexOf("."));
-                String sourceAbsPath = boundProject.getPath() + "/obj/" + fileName + ".o";
-                files.add(sourceAbsPath);
-            } else {
-                // The file specified isn't recognized as a fortran source for some reason.
-                Log.send("Error: Compiler was specified an icorrect file : " + source);
-            }
-
-        }
-
-        return files;
+    private static CompletableFuture<MagicBoxStatus> daemon(ProjectBuild build, String step, String logName) {
+        // Queued in the lane of the project, a run asked after it waits for the daemon.
+        return submit(build, build.daemonProject(step, DaemonClient.defaultSocket()), logName);
+    }
 
+    public static CompletableFuture<MagicBoxStatus> compileProject() {
+        ProjectBuild build = projectBuild();
+        if (throughDaemon())
+            return daemon(build, "--no-link", "build.log");
+        return submit(build, build.compileProject(), "build.log");
     }
 
     public static void debug(boolean b) {
         debug_active = b;
     }
 
-    public static void launchFile(final String file) {
+    public static CompletableFuture<MagicBoxStatus> launchFile(final String file) {
         Compiler aCompiler = new Compiler();
         aCompiler.clear();
-        job = new Job("Run file" + file, file, JobType.EXECUTING);
+        Job job = new Job("Run file" + file, file, JobType.EXECUTING);
         job.setContext(Session.getWorkDir());
         aCompiler.setJob(job);
         List<String> temp = new ArrayList<String>();
@@ -144,58 +96,51 @@ public class BinaryManager {
         aCompiler.input(temp);
         Log.send(file);
         aCompiler.init();
-        aCompiler.start();
+        return BuildService.shared().submit(aCompiler);
     }
 
-    public static void launchProject() {
-        Compiler aCompiler = new Compiler();
-        aCompiler.clear();
-        job = new Job("Run project" + boundProject.getName(), boundProject.getCompilerPath(), JobType.EXECUTING);
-        job.setContext(boundProject.getPath() + boundProject.getExecutionPath());
-        // We tell the compiler we are going to link with a certain compiler
-        aCompiler.setJob(job);
-        aCompiler.input(createExecutableOutput());
-        aCompiler.init();
-        aCompiler.start();
+    public static CompletableFuture<MagicBoxStatus> launchProject() {
+        ProjectBuild build = projectBuild();
+        return submit(build, build.launchProject(), null);
     }
 
-    public static void linkProject() {
-        Compiler aCompiler = new Compiler();
-        aCompiler.clear();
-        job = new Job("Link project" + boundProject.getName(), boundProject.getCompilerPath(), JobType.LINKING);
-        job.setContext(boundProject.getPath());
-        // We tell the compiler we are goind to link with a certain compiler
-        aCompiler.setJob(job);
-        // We send the .o files to the compiler.
-        aCompiler.input(createOutputFilesList());
-        // We specify the executable name to the compiler
-        aCompiler.output(createExecutableOutput());
-        // We init the process.
-        aCompiler.init();
-        checkBinariesFolderExistance();
-        aCompiler.start();
-        if (boundProject.isPrintLog()) {
-            checkLoggingFolderExistance();
-            CompilerLog.save(boundProject.getPath() + "/logs/link.log");
-        }
+    public static File logFolder() {
+        // Of the configuration the buttons build.
+        return projectBuild().logFolder();
+    }
+
+    public static ProjectBuild projectBuild(Project project, BuildOutput output) {
+        // The configuration the buttons build, the debug one while the debug button is down.
+        ProjectBuild build = new ProjectBuild(project, output);
+        build.setDebug(debug_active);
+        return build;
+    }
+
+    public static CompletableFuture<MagicBoxStatus> benchmarkProject(int warmups, int runs, File input) {
+        ProjectBuild build = projectBuild();
+        return submit(build, build.benchmarkProject(warmups, runs, input), null);
     }
 
-    private static List<String> prepareFilesForCompilation() {
-        List<String> files = new ArrayList<String>();
-        for (String source : boundProject.getSource()) {
-            if (job.getNature() == JobType.COMPILING) {
-                if (FileTypesManager.isFortranSource(source)) {
-                    String sourceAbsPath = boundProject.getPath() + source;
-                    if (new File(sourceAbsPath).exists()) {
-                        files.add(sourceAbsPath);
-                    } else {
-                        Log.send("Error: Could not load file : " + source);
-                    }
-                } else {
-                    Log.send("Error: Compiler was specified an icorrect file : " + source);
-                }
-            }
+    public static CompletableFuture<MagicBoxStatus> scalingProject(int runs, List<Integer> threads,
+                                                                   List<String> bindings, File input) {
+        ProjectBuild build = projectBuild();
+        return submit(build, build.scalingProject(runs, threads, bindings, input), null);
+    }
+
+    public static CompletableFuture<MagicBoxStatus> sweepProject(File table, int parallel) {
+        ProjectBuild build = projectBuild();
+        try {
+            return submit(build, build.sweepProject(table, parallel), null);
+        } catch (IOException e) {
+            Log.send("Error: Could not read the parameter table " + table.getPath());
+            return CompletableFuture.completedFuture(MagicBoxStatus.FAILED);
         }
-        return files;
+    }
+
+    public static CompletableFuture<MagicBoxStatus> linkProject() {
+        ProjectBuild build = projectBuild();
+        if (throughDaemon())
+            return daemon(build, "--no-compile", "link.log");
+        return submit(build, build.linkProject(), "link.log");
     }
 }
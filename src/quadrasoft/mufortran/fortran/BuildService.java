@@ -0,0 +1,139 @@
+package quadrasoft.mufortran.fortran;
+
+import quadrasoft.mufortran.fortran.binaryutils.Compiler;
+import quadrasoft.mufortran.fortran.binaryutils.MagicBoxStatus;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class BuildService {
+    /*
+     * Runs the jobs of the IDE one after the other on a single thread, so compile,
+     * link and run happen in the order they were asked for and never race on the
+     * object folder. Jobs are identified by their nature, folder and inputs:
+     * - the same job still waiting in the queue is replaced by the newer request,
+     *   both callers get the same future;
+     * - the same job already running is cancelled, its process tree killed, and the
+     *   newer request takes its place at the head of the queue.
+     *
+     * Every build configuration of a project has its own service, its own lane: they
+     * work in separate folders and build side by side.
+     */
+    private static final Map<String, BuildService> lanes = new HashMap<String, BuildService>();
+
+    private final ThreadPoolExecutor worker;
+    private final Deque<Request> queue = new ArrayDeque<Request>();
+    private final Map<String, Request> waiting = new HashMap<String, Request>();
+    private Request running;
+
+    private static class Request {
+        private final String key;
+        private final CompletableFuture<MagicBoxStatus> future = new CompletableFuture<MagicBoxStatus>();
+        private Compiler compiler;
+
+        Request(String key, Compiler compiler) {
+            this.key = key;
+            this.compiler = compiler;
+        }
+    }
+
+    private BuildService(String lane) {
+        worker = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+            Thread thread = new Thread(r, "build-service " + lane);
+            thread.setDaemon(true);
+            return thread;
+        });
+        // An idle lane does not keep its thread.
+        worker.allowCoreThreadTimeOut(true);
+    }
+
+    public static BuildService shared() {
+        return lane("");
+    }
+
+    public static synchronized BuildService lane(String name) {
+        return lanes.computeIfAbsent(name, BuildService::new);
+    }
+
+    private static String key(Compiler compiler) {
+        return compiler.getJob().getNature() + "\u0000" + compiler.getJob().getContext() + "\u0000"
+                + String.join("\u0000", compiler.getInputs());
+    }
+
+    public synchronized CompletableFuture<MagicBoxStatus> submit(Compiler compiler) {
+        String key = key(compiler);
+        Request pending = waiting.get(key);
+        if (pending != null && !pending.future.isDone()) {
+            // Not started yet, it simply runs with the latest settings.
+            pending.compiler = compiler;
+            compiler.getOutput().message(compiler.getJob().getName() + " already queued");
+            return pending.future;
+        }
+        Request request = new Request(key, compiler);
+        if (running != null && running.key.equals(key)) {
+            // Jobs queued behind the cancelled one wait for the new one.
+            compiler.getOutput().message("Warning: Restarting " + compiler.getJob().getName());
+            running.compiler.cancel();
+            queue.addFirst(request);
+        } else {
+            if (running != null)
+                compiler.getOutput().message(compiler.getJob().getName() + " waits for "
+                        + running.compiler.getJob().getName());
+            queue.addLast(request);
+        }
+        waiting.put(key, request);
+        worker.execute(this::next);
+        return request.future;
+    }
+
+    public synchronized CompletableFuture<MagicBoxStatus> queue(Compiler compiler) {
+        // Behind everything already queued, nothing is coalesced or cancelled: the
+        // command line and the daemon wait for builds asked by someone else.
+        Request request = new Request(key(compiler), compiler);
+        queue.addLast(request);
+        worker.execute(this::next);
+        return request.future;
+    }
+
+    public synchronized void cancelAll() {
+        // Drops the queue and stops the running job.
+        for (Request request : queue)
+            request.future.cancel(false);
+        queue.clear();
+        waiting.clear();
+        if (running != null)
+            running.compiler.cancel();
+    }
+
+    private void next() {
+        // One call per submitted request, each takes whatever is at the head of the queue.
+        Request request;
+        Compiler compiler;
+        synchronized (this) {
+            request = queue.pollFirst();
+            if (request == null)
+                return;
+            waiting.remove(request.key, request);
+            if (request.future.isDone())
+                return;
+            running = request;
+            compiler = request.compiler;
+        }
+        try {
+            compiler.run();
+            request.future.complete(compiler.getResult());
+        } catch (RuntimeException e) {
+            request.future.completeExceptionally(e);
+        } finally {
+            synchronized (this) {
+                running = null;
+            }
+        }
+    }
+}
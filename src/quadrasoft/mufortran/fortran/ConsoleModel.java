@@ -0,0 +1,181 @@
+package quadrasoft.mufortran.fortran;
+
+import javax.swing.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@SuppressWarnings("serial")
+public class ConsoleModel extends AbstractListModel<ConsoleModel.Line> {
+    /*
+     * Lines shown by the ExecutorConsole. Any thread may append: lines wait in a
+     * lock-free queue and are moved to the list on the EDT in one batch per frame,
+     * however fast the program writes. Only the last lines are kept, in a ring
+     * whose size is the scrollback; older lines fall off the top. A line ending
+     * with \r, as progress counters write them, is replaced by the next one.
+     */
+    public enum Kind {
+        OUTPUT, ERROR, INPUT, INFO
+    }
+
+    public static final int defaultScrollback = 100000;
+    // About one frame, appends in between are shown together.
+    private static final int frame = 16;
+    private static final Line clear = new Line("", Kind.INFO);
+
+    private final ConcurrentLinkedQueue<Line> pending = new ConcurrentLinkedQueue<Line>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Timer timer;
+    private final Line[] ring;
+    private int head = 0;
+    private int size = 0;
+    // The last line ended with \r.
+    private boolean open = false;
+    private Runnable flushed;
+
+    public ConsoleModel(int scrollback) {
+        ring = new Line[Math.max(1, scrollback)];
+        timer = new Timer(frame, e -> flush());
+        timer.setRepeats(false);
+    }
+
+    public static class Line {
+        private final String text;
+        private final Kind kind;
+        private final boolean carriageReturn;
+
+        Line(String text, Kind kind) {
+            this.carriageReturn = text.endsWith("\r");
+            // A lone \r inside the text rewrote the start of the line, what follows it shows.
+            String shown = carriageReturn ? text.substring(0, text.length() - 1) : text;
+            this.text = expandTabs(shown.substring(shown.lastIndexOf('\r') + 1));
+            this.kind = kind;
+        }
+
+        private static String expandTabs(String text) {
+            if (text.indexOf('\t') < 0)
+                return text;
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\t') {
+                    do {
+                        sb.append(' ');
+                    } while (sb.length() % 8 != 0);
+                } else {
+                    sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            // What a copy of the selected lines gets.
+            return text;
+        }
+    }
+
+    public void setFlushed(Runnable flushed) {
+        // Called on the EDT after every batch, to follow the last line for instance.
+        this.flushed = flushed;
+    }
+
+    public void append(String text, Kind kind) {
+        pending.add(new Line(text, kind));
+        schedule();
+    }
+
+    public void clear() {
+        pending.add(clear);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            if (SwingUtilities.isEventDispatchThread())
+                timer.restart();
+            else
+                SwingUtilities.invokeLater(timer::restart);
+        }
+    }
+
+    @Override
+    public Line getElementAt(int index) {
+        return ring[(head + index) % ring.length];
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    private void flush() {
+        // Cleared before draining, a line appended meanwhile schedules the next batch.
+        scheduled.set(false);
+        int before = size;
+        int dropped = 0;
+        boolean replaced = false;
+        Line line;
+        while ((line = pending.poll()) != null) {
+            if (line == clear) {
+                publish(before, dropped, replaced);
+                if (size > 0) {
+                    int removed = size;
+                    head = 0;
+                    size = 0;
+                    fireIntervalRemoved(this, 0, removed - 1);
+                }
+                before = 0;
+                dropped = 0;
+                replaced = false;
+                open = false;
+                continue;
+            }
+            if (open && size > 0) {
+                ring[(head + size - 1) % ring.length] = line;
+                // Only worth telling when the line was there before this batch.
+                if (size - 1 < before - dropped)
+                    replaced = true;
+            } else {
+                if (size == ring.length) {
+                    ring[head] = null;
+                    head = (head + 1) % ring.length;
+                    size--;
+                    dropped++;
+                }
+                ring[(head + size) % ring.length] = line;
+                size++;
+            }
+            open = line.carriageReturn;
+        }
+        publish(before, dropped, replaced);
+        if (flushed != null)
+            flushed.run();
+    }
+
+    private void publish(int before, int dropped, boolean replaced) {
+        // Lines dropped from the top, the last old line rewritten, then the new lines.
+        if (dropped >= before) {
+            if (before > 0)
+                fireIntervalRemoved(this, 0, before - 1);
+            if (size > 0)
+                fireIntervalAdded(this, 0, size - 1);
+            return;
+        }
+        if (dropped > 0)
+            fireIntervalRemoved(this, 0, dropped - 1);
+        int kept = before - dropped;
+        if (replaced)
+            fireContentsChanged(this, kept - 1, kept - 1);
+        if (size > kept)
+            fireIntervalAdded(this, kept, size - 1);
+    }
+}
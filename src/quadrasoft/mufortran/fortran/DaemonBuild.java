@@ -0,0 +1,40 @@
+package quadrasoft.mufortran.fortran;
+
+import quadrasoft.mufortran.fortran.binaryutils.MagicBoxStatus;
+import quadrasoft.mufortran.general.BuildOutput;
+import quadrasoft.mufortran.general.JsonOutput;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DaemonBuild {
+    /*
+     * A build step handed to the BuildDaemon, run as a REMOTE job of the project
+     * lane like any other: the steps asked for one after the other reach the daemon
+     * in that order, and a run queued behind them starts once they are done. The
+     * events of the daemon are replayed to the output of the job.
+     */
+    private final Path socket;
+    private final List<String> args;
+
+    public DaemonBuild(Path socket, List<String> args) {
+        this.socket = socket;
+        this.args = new ArrayList<String>(args);
+    }
+
+    public List<String> getArgs() {
+        return args;
+    }
+
+    public MagicBoxStatus run(BuildOutput output) {
+        try {
+            int code = DaemonClient.build(socket, args, (line, event) -> JsonOutput.replay(event, output));
+            return code == 0 ? MagicBoxStatus.FINE : MagicBoxStatus.FAILED;
+        } catch (IOException e) {
+            output.message("Error: Build daemon, " + e.getMessage());
+            return MagicBoxStatus.FAILED;
+        }
+    }
+}
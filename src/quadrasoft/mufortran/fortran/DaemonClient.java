@@ -0,0 +1,80 @@
+package quadrasoft.mufortran.fortran;
+
+import quadrasoft.mufortran.general.JsonOutput;
+import quadrasoft.mufortran.general.JsonReader;
+import quadrasoft.mufortran.general.Session;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+public class DaemonClient {
+    /*
+     * Talks to a BuildDaemon over its Unix domain socket, one connection per build.
+     * The request is one line, a JSON array of command line arguments; the answer is
+     * the JSON events of the build, the last one being "done" with the exit code.
+     */
+
+    private DaemonClient() {
+    }
+
+    public static Path defaultSocket() {
+        try {
+            return Paths.get(Session.getAppdatasoragefolder(), "daemon.sock");
+        } catch (InvalidPathException e) {
+            // The application folder name cannot be encoded with the system locale.
+            return Paths.get(System.getProperty("java.io.tmpdir"),
+                    "mufortran-" + System.getProperty("user.name") + ".sock");
+        }
+    }
+
+    public static boolean available(Path socket) {
+        if (!socket.toFile().exists())
+            return false;
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            return channel.isConnected();
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static int build(Path socket, List<String> args, BiConsumer<String, Map<String, Object>> events)
+            throws IOException {
+        // Every event but "done" goes to the consumer, raw and parsed.
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            List<String> quoted = new ArrayList<String>();
+            for (String arg : args)
+                quoted.add(JsonOutput.quote(arg));
+            Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+            writer.write("[" + String.join(",", quoted) + "]\n");
+            writer.flush();
+
+            BufferedReader br = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+            String line;
+            while ((line = br.readLine()) != null) {
+                Map<String, Object> event;
+                try {
+                    event = (Map<String, Object>) JsonReader.parse(line);
+                } catch (IllegalArgumentException | ClassCastException e) {
+                    throw new IOException("Unexpected answer from the build daemon: " + line);
+                }
+                if ("done".equals(event.get("event")))
+                    return ((Number) event.get("code")).intValue();
+                events.accept(line, event);
+            }
+        }
+        throw new IOException("The build daemon closed the connection");
+    }
+}
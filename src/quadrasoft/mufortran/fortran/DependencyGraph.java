@@ -0,0 +1,177 @@
+package quadrasoft.mufortran.fortran;
+
+import java.util.*;
+
+public class DependencyGraph {
+    /*
+     * Files of a project linked by the modules they define and use. An edge goes
+     * from a file to every file providing one of the modules it needs. Modules no
+     * file provides are assumed to be intrinsic or to come from an external library.
+     */
+    private final Map<String, SourceUnit> units = new LinkedHashMap<String, SourceUnit>();
+    private final Map<String, String> providers = new HashMap<String, String>();
+    private final Map<String, List<String>> prerequisites = new HashMap<String, List<String>>();
+    private final Map<String, List<String>> dependents = new HashMap<String, List<String>>();
+    private final List<String> duplicates = new ArrayList<String>();
+
+    public DependencyGraph(Collection<SourceUnit> sources) {
+        for (SourceUnit unit : sources) {
+            units.put(unit.getPath(), unit);
+            for (String module : unit.getModules())
+                provide(module, unit);
+            for (String submodule : unit.getSubmodules())
+                provide(submodule, unit);
+        }
+        for (SourceUnit unit : units.values()) {
+            prerequisites.put(unit.getPath(), new ArrayList<String>());
+            dependents.put(unit.getPath(), new ArrayList<String>());
+        }
+        for (SourceUnit unit : units.values()) {
+            List<String> before = prerequisites.get(unit.getPath());
+            for (String module : unit.getUses()) {
+                String provider = providers.get(module);
+                if (provider != null && !provider.equals(unit.getPath()) && !before.contains(provider)) {
+                    before.add(provider);
+                    dependents.get(provider).add(unit.getPath());
+                }
+            }
+        }
+    }
+
+    private void provide(String module, SourceUnit unit) {
+        String previous = providers.put(module, unit.getPath());
+        if (previous != null && !previous.equals(unit.getPath()))
+            duplicates.add(module);
+    }
+
+    public List<List<String>> cycles() {
+        // Tarjan's strongly connected components, every component with more than one
+        // file is a circular module dependency.
+        List<List<String>> cycles = new ArrayList<List<String>>();
+        Map<String, Integer> index = new HashMap<String, Integer>();
+        Map<String, Integer> low = new HashMap<String, Integer>();
+        Deque<String> stack = new ArrayDeque<String>();
+        Set<String> onStack = new HashSet<String>();
+        int[] counter = {0};
+        for (String path : units.keySet()) {
+            if (!index.containsKey(path))
+                strongConnect(path, index, low, stack, onStack, counter, cycles);
+        }
+        return cycles;
+    }
+
+    private void strongConnect(String root, Map<String, Integer> index, Map<String, Integer> low,
+                               Deque<String> stack, Set<String> onStack, int[] counter,
+                               List<List<String>> cycles) {
+        // Iterative, deep USE chains must not overflow the thread stack.
+        Deque<Object[]> work = new ArrayDeque<Object[]>();
+        work.push(new Object[]{root, prerequisites.get(root).iterator()});
+        index.put(root, counter[0]);
+        low.put(root, counter[0]++);
+        stack.push(root);
+        onStack.add(root);
+        while (!work.isEmpty()) {
+            Object[] frame = work.peek();
+            String node = (String) frame[0];
+            @SuppressWarnings("unchecked")
+            Iterator<String> next = (Iterator<String>) frame[1];
+            if (next.hasNext()) {
+                String child = next.next();
+                if (!index.containsKey(child)) {
+                    index.put(child, counter[0]);
+                    low.put(child, counter[0]++);
+                    stack.push(child);
+                    onStack.add(child);
+                    work.push(new Object[]{child, prerequisites.get(child).iterator()});
+                } else if (onStack.contains(child)) {
+                    low.put(node, Math.min(low.get(node), index.get(child)));
+                }
+                continue;
+            }
+            work.pop();
+            if (!work.isEmpty()) {
+                String parent = (String) work.peek()[0];
+                low.put(parent, Math.min(low.get(parent), low.get(node)));
+            }
+            if (low.get(node).equals(index.get(node))) {
+                List<String> component = new ArrayList<String>();
+                String member;
+                do {
+                    member = stack.pop();
+                    onStack.remove(member);
+                    component.add(member);
+                } while (!member.equals(node));
+                if (component.size() > 1)
+                    cycles.add(component);
+            }
+        }
+    }
+
+    public Set<String> closure(String path) {
+        // Every file the given one needs, directly or not, the file itself excluded.
+        Set<String> closure = new LinkedHashSet<String>();
+        Deque<String> todo = new ArrayDeque<String>();
+        todo.push(path);
+        while (!todo.isEmpty()) {
+            List<String> before = prerequisites.get(todo.pop());
+            if (before == null)
+                continue;
+            for (String prerequisite : before) {
+                if (!prerequisite.equals(path) && closure.add(prerequisite))
+                    todo.push(prerequisite);
+            }
+        }
+        return closure;
+    }
+
+    public List<String> getDependents(String path) {
+        List<String> after = dependents.get(path);
+        return after == null ? Collections.<String>emptyList() : after;
+    }
+
+    public List<String> getDuplicateModules() {
+        return duplicates;
+    }
+
+    public List<String> getPrerequisites(String path) {
+        List<String> before = prerequisites.get(path);
+        return before == null ? Collections.<String>emptyList() : before;
+    }
+
+    public String getProvider(String module) {
+        return providers.get(module);
+    }
+
+    public SourceUnit getUnit(String path) {
+        return units.get(path);
+    }
+
+    public Collection<SourceUnit> getUnits() {
+        return units.values();
+    }
+
+    public List<String> topologicalOrder() {
+        // Kahn's algorithm, ties keep the project order. Files caught in a cycle are
+        // left out, see cycles().
+        Map<String, Integer> waiting = new HashMap<String, Integer>();
+        Deque<String> ready = new ArrayDeque<String>();
+        for (String path : units.keySet()) {
+            int count = prerequisites.get(path).size();
+            waiting.put(path, count);
+            if (count == 0)
+                ready.add(path);
+        }
+        List<String> order = new ArrayList<String>();
+        while (!ready.isEmpty()) {
+            String path = ready.poll();
+            order.add(path);
+            for (String dependent : dependents.get(path)) {
+                int left = waiting.get(dependent) - 1;
+                waiting.put(dependent, left);
+                if (left == 0)
+                    ready.add(dependent);
+            }
+        }
+        return order;
+    }
+}
@@ -0,0 +1,192 @@
+package quadrasoft.mufortran.fortran;
+
+import quadrasoft.mufortran.general.Digests;
+import quadrasoft.mufortran.general.Log;
+import quadrasoft.mufortran.general.Project;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class DependencyIndex {
+    /*
+     * Scan results of a project kept on disk next to the project file. A source is
+     * scanned again only when its size or modification time changed and its content
+     * hash no longer matches.
+     *
+     * Format, one record per line, tab separated:
+     * F path mtime size hash, followed by M module, S submodule, U use, I include
+     * and D omp when the file has OpenMP directives.
+     */
+    private static final String header = "muFortran dependency index 3";
+    private static final Map<String, DependencyIndex> opened = new HashMap<String, DependencyIndex>();
+
+    private final File file;
+    private final Map<String, SourceUnit> cache = new HashMap<String, SourceUnit>();
+    private final AtomicInteger rescanned = new AtomicInteger();
+    private final AtomicInteger touched = new AtomicInteger();
+    private boolean loaded = false;
+
+    public DependencyIndex(String indexPath) {
+        file = new File(indexPath);
+    }
+
+    public static synchronized DependencyIndex forProject(Project project) {
+        // One instance per project so that the scan results stay in memory between builds.
+        String indexPath = project.getPath() + project.getName() + ".deps";
+        DependencyIndex index = opened.get(indexPath);
+        if (index == null) {
+            index = new DependencyIndex(indexPath);
+            opened.put(indexPath, index);
+        }
+        return index;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getRescanned() {
+        return rescanned.get();
+    }
+
+    private void load() {
+        loaded = true;
+        if (!file.exists())
+            return;
+        try (BufferedReader br = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            if (!header.equals(br.readLine()))
+                return;
+            SourceUnit unit = null;
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length < 2)
+                    continue;
+                switch (fields[0]) {
+                    case "F":
+                        unit = new SourceUnit(fields[1]);
+                        unit.setLastModified(Long.parseLong(fields[2]));
+                        unit.setSize(Long.parseLong(fields[3]));
+                        unit.setHash(fields[4]);
+                        cache.put(unit.getPath(), unit);
+                        break;
+                    case "M":
+                        unit.addModule(fields[1]);
+                        break;
+                    case "S":
+                        unit.addSubmodule(fields[1]);
+                        break;
+                    case "U":
+                        unit.addUse(fields[1]);
+                        break;
+                    case "I":
+                        unit.addInclude(fields[1]);
+                        break;
+                    case "D":
+                        unit.setOpenMP(unit.isOpenMP() || fields[1].equals("omp"));
+                        break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // A damaged index is only a cache, start over.
+            cache.clear();
+        }
+    }
+
+    private SourceUnit refresh(String source) {
+        SourceUnit cached = cache.get(source);
+        Path path = Paths.get(source);
+        try {
+            long lastModified = Files.getLastModifiedTime(path).toMillis();
+            long size = Files.size(path);
+            if (cached != null && cached.getLastModified() == lastModified && cached.getSize() == size)
+                return cached;
+            byte[] content = Files.readAllBytes(path);
+            String hash = Digests.of(content);
+            if (cached != null && hash.equals(cached.getHash())) {
+                // Touched but not modified.
+                cached.setLastModified(lastModified);
+                cached.setSize(size);
+                touched.incrementAndGet();
+                return cached;
+            }
+            SourceUnit unit = new SourceUnit(source);
+            unit.setLastModified(lastModified);
+            unit.setSize(size);
+            unit.setHash(hash);
+            FortranScanner.scan(content, unit);
+            rescanned.incrementAndGet();
+            return unit;
+        } catch (IOException e) {
+            Log.send("Error: Could not load file : " + source);
+            SourceUnit unit = new SourceUnit(source);
+            unit.setHash("");
+            return unit;
+        }
+    }
+
+    private void save() {
+        try (BufferedWriter bw = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            bw.write(header);
+            bw.newLine();
+            for (SourceUnit unit : cache.values()) {
+                bw.write("F\t" + unit.getPath() + "\t" + unit.getLastModified() + "\t" + unit.getSize() + "\t"
+                        + unit.getHash());
+                bw.newLine();
+                for (String module : unit.getModules()) {
+                    bw.write("M\t" + module);
+                    bw.newLine();
+                }
+                for (String submodule : unit.getSubmodules()) {
+                    bw.write("S\t" + submodule);
+                    bw.newLine();
+                }
+                for (String module : unit.getUses()) {
+                    bw.write("U\t" + module);
+                    bw.newLine();
+                }
+                for (String include : unit.getIncludes()) {
+                    bw.write("I\t" + include);
+                    bw.newLine();
+                }
+                if (unit.isOpenMP()) {
+                    bw.write("D\tomp");
+                    bw.newLine();
+                }
+            }
+        } catch (IOException e) {
+            Log.send("Warning: Could not save dependency index " + file.getName());
+        }
+    }
+
+    public synchronized DependencyGraph update(List<String> sources) {
+        if (!loaded)
+            load();
+        rescanned.set(0);
+        touched.set(0);
+        List<SourceUnit> units = sources.parallelStream().map(this::refresh).collect(Collectors.toList());
+        // Entries of files outside this list stay, a single file build must not drop them.
+        boolean changed = rescanned.get() > 0 || touched.get() > 0;
+        for (SourceUnit unit : units) {
+            cache.put(unit.getPath(), unit);
+        }
+        if (changed)
+            save();
+        return new DependencyGraph(units);
+    }
+
+    public synchronized boolean usesOpenMP(List<String> sources) {
+        // Scans what changed like update(), the build that follows finds the files up to date.
+        for (SourceUnit unit : update(sources).getUnits()) {
+            if (unit.isOpenMP())
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,75 @@
+package quadrasoft.mufortran.fortran;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Diagnostic {
+    /*
+     * One gfortran message. The file is null for messages without a location, such
+     * as driver or linker errors. Lines and columns start at 1, 0 when unknown.
+     */
+    public enum Severity {
+        ERROR, WARNING, NOTE
+    }
+
+    private final String file;
+    private final int line;
+    private final int column;
+    private final Severity severity;
+    private final String message;
+    private final List<String> excerpt = new ArrayList<String>();
+    // Position of the message in the compiler output it was parsed from.
+    private int firstOutputLine;
+    private int lastOutputLine;
+
+    public Diagnostic(String file, int line, int column, Severity severity, String message) {
+        this.file = file;
+        this.line = line;
+        this.column = column;
+        this.severity = severity;
+        this.message = message;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public List<String> getExcerpt() {
+        return excerpt;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public int getFirstOutputLine() {
+        return firstOutputLine;
+    }
+
+    public int getLastOutputLine() {
+        return lastOutputLine;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Severity getSeverity() {
+        return severity;
+    }
+
+    void setOutputLines(int first, int last) {
+        firstOutputLine = first;
+        lastOutputLine = last;
+    }
+
+    @Override
+    public String toString() {
+        String where = file == null ? "" : file + ":" + line + ":" + column + ": ";
+        return where + severity + ": " + message;
+    }
+}
@@ -0,0 +1,130 @@
+package quadrasoft.mufortran.fortran;
+
+import java.io.File;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class DiagnosticParser {
+    /*
+     * Turns gfortran output into Diagnostics, one line at a time. gfortran writes a
+     * location line, a source excerpt with a caret and then the message:
+     *
+     *   C:\work\main.f90:12:7:
+     *
+     *      12 |   x = y +
+     *         |       1
+     *   Error: Syntax error in expression at (1)
+     *
+     * Paths are matched from the end of the line so that Windows drive letters do
+     * not get in the way. The old "file:line.column:" form is understood too.
+     */
+    private static final Pattern locationWithColumn = Pattern.compile("^(.+):(\\d+)[:.](\\d+):\\s*(.*)$");
+    private static final Pattern location = Pattern.compile("^(.+):(\\d+):\\s*(.*)$");
+    private static final Pattern message = Pattern.compile(
+            "^(Fatal Error|Internal Error|Error|Warning|Note|error|warning|note|fatal error):\\s*(.*)$");
+    private static final Pattern tool = Pattern.compile("^(\\S*(?:gfortran|f951|collect2|ld)(?:\\.exe)?):\\s*(.*)$");
+
+    private final Consumer<Diagnostic> listener;
+    private final File base;
+    private String file;
+    private int line;
+    private int column;
+    private Diagnostic pending;
+    private int count = 0;
+    private int first = -1;
+
+    public DiagnosticParser(File base, Consumer<Diagnostic> listener) {
+        // Relative paths in the output are resolved against the compiler's working directory.
+        this.base = base;
+        this.listener = listener;
+    }
+
+    private static Diagnostic.Severity severity(String word) {
+        word = word.toLowerCase();
+        if (word.contains("error"))
+            return Diagnostic.Severity.ERROR;
+        if (word.equals("warning"))
+            return Diagnostic.Severity.WARNING;
+        return Diagnostic.Severity.NOTE;
+    }
+
+    private void emit(Diagnostic diagnostic, int last) {
+        diagnostic.setOutputLines(first < 0 ? last : first, last);
+        listener.accept(diagnostic);
+        file = null;
+        first = -1;
+    }
+
+    public void feed(String text) {
+        int index = count++;
+        Matcher m = message.matcher(text);
+        if (m.matches()) {
+            Diagnostic diagnostic = new Diagnostic(file, line, column, severity(m.group(1)), m.group(2));
+            if (pending != null)
+                diagnostic.getExcerpt().addAll(pending.getExcerpt());
+            pending = null;
+            emit(diagnostic, index);
+            return;
+        }
+        if (file != null && (text.isEmpty() || text.startsWith(" ") || text.startsWith("\t")
+                || text.startsWith("......"))) {
+            // Part of the excerpt between the location and the message.
+            if (!text.trim().isEmpty())
+                pending.getExcerpt().add(text);
+            return;
+        }
+        m = tool.matcher(text);
+        if (m.matches()) {
+            // "gfortran: error: ...", "collect2: error: ...", "f951: Fatal Error: ..."
+            Matcher inner = message.matcher(m.group(2));
+            if (inner.matches()) {
+                first = index;
+                emit(new Diagnostic(null, 0, 0, severity(inner.group(1)), inner.group(2)), index);
+            }
+            return;
+        }
+        m = locationWithColumn.matcher(text);
+        if (m.matches()) {
+            location(m.group(1), Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)), m.group(4), index);
+            return;
+        }
+        m = location.matcher(text);
+        if (m.matches()) {
+            location(m.group(1), Integer.parseInt(m.group(2)), 0, m.group(3), index);
+        }
+    }
+
+    public void flush() {
+        // A location without message, the output was cut short.
+        if (file != null && pending != null) {
+            Diagnostic diagnostic = new Diagnostic(file, line, column, Diagnostic.Severity.ERROR,
+                    "compiler output ended unexpectedly");
+            diagnostic.getExcerpt().addAll(pending.getExcerpt());
+            emit(diagnostic, count - 1);
+        }
+        pending = null;
+    }
+
+    private void location(String path, int atLine, int atColumn, String rest, int index) {
+        if (file != null) {
+            // A second location for the same message, gfortran marks it (2).
+            pending.getExcerpt().add(path + ":" + atLine + ":" + atColumn + ":");
+            return;
+        }
+        File resolved = new File(path);
+        if (!resolved.isAbsolute() && base != null)
+            resolved = new File(base, path);
+        file = resolved.toPath().normalize().toString();
+        line = atLine;
+        column = atColumn;
+        first = index;
+        pending = new Diagnostic(file, line, column, Diagnostic.Severity.NOTE, "");
+        // Some tools put the message on the location line.
+        Matcher m = message.matcher(rest);
+        if (m.matches()) {
+            pending = null;
+            emit(new Diagnostic(file, line, column, severity(m.group(1)), m.group(2)), index);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package quadrasoft.mufortran.fortran;
+
+import java.nio.file.Paths;
+import java.util.*;
+
+public final class Diagnostics {
+    /*
+     * Latest diagnostics of every compiled source, shared with the editors. Each
+     * compile of a source replaces what it reported before, including messages
+     * about the files it includes. Listeners are told which files changed.
+     */
+    private static final Map<String, List<Diagnostic>> bySource = new HashMap<String, List<Diagnostic>>();
+    private static final List<Listener> listeners = new ArrayList<Listener>();
+
+    private Diagnostics() {
+    }
+
+    public interface Listener {
+        void diagnosticsChanged(Set<String> files);
+    }
+
+    public static synchronized void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public static synchronized void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public static String key(String path) {
+        return Paths.get(path).toAbsolutePath().normalize().toString();
+    }
+
+    public static synchronized List<Diagnostic> forFile(String path) {
+        String file = key(path);
+        List<Diagnostic> found = new ArrayList<Diagnostic>();
+        for (List<Diagnostic> list : bySource.values()) {
+            for (Diagnostic diagnostic : list) {
+                if (file.equals(diagnostic.getFile()))
+                    found.add(diagnostic);
+            }
+        }
+        return found;
+    }
+
+    public static void publish(String source, List<Diagnostic> diagnostics) {
+        Set<String> files = new HashSet<String>();
+        List<Listener> notified;
+        synchronized (Diagnostics.class) {
+            List<Diagnostic> previous = bySource.put(key(source), new ArrayList<Diagnostic>(diagnostics));
+            if (previous != null) {
+                for (Diagnostic diagnostic : previous)
+                    files.add(diagnostic.getFile());
+            }
+            for (Diagnostic diagnostic : diagnostics)
+                files.add(diagnostic.getFile());
+            files.remove(null);
+            notified = new ArrayList<Listener>(listeners);
+        }
+        if (files.isEmpty())
+            return;
+        for (Listener listener : notified)
+            listener.diagnosticsChanged(files);
+    }
+}
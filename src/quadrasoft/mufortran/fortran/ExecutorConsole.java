@@ -1,87 +1,196 @@
 package quadrasoft.mufortran.fortran;
 
+import quadrasoft.mufortran.fortran.binaryutils.Benchmark;
+import quadrasoft.mufortran.fortran.binaryutils.ProcessPump;
+import quadrasoft.mufortran.fortran.binaryutils.RunLog;
+import quadrasoft.mufortran.general.Session;
+
 import javax.swing.*;
-import javax.swing.text.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 
 
 @SuppressWarnings("serial")
 public class ExecutorConsole extends JFrame implements KeyListener, WindowListener {
-
-    private static JTextPane textArea = new JTextPane();
-
-    static StyledDocument doc = textArea.getStyledDocument();
-
-    static Style errstyle = textArea.addStyle("error", null);
-    static Style inputstyle = textArea.addStyle("input", null);
-    static Style infostyle = textArea.addStyle("info", null);
+    /*
+     * Console of the programs run from the IDE. Output may come from any thread at
+     * any rate, the ConsoleModel batches it to the EDT once per frame and keeps the
+     * last ConsoleScrollback lines. The list only paints the rows in view, so a
+     * long scrollback costs nothing to show. Runs of a project are also written
+     * to a log file in full, the "Full output" button opens it in a RunLogViewer.
+     *
+     * Lines of an MPI run also go to the pane of their rank, a tab next to the
+     * one with every line, which is opened by the first line of the rank. Each
+     * pane has its own scrollback and follows its own output.
+     */
+    private static final ConsoleModel model = new ConsoleModel(scrollback());
+    private static JList<ConsoleModel.Line> textArea = new JList<ConsoleModel.Line>(model);
+    private static final Map<Integer, ConsoleModel> rankModels = new TreeMap<Integer, ConsoleModel>();
+    // Ranks with a tab, in tab order; only used on the EDT.
+    private static final List<Integer> rankTabs = new ArrayList<Integer>();
+    private static JTabbedPane tabs;
     private static JTextField cmdInput;
     int mask = Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();
     JScrollPane cons_scrollpane;
-    DefaultCaret caret;
     private boolean processRunning = false;
     private BufferedWriter bw;
     private Process processReference;
+    private JButton fullOutputBtn;
+    private RunLog runLog;
+    private boolean recording = false;
 
     public ExecutorConsole() {
         super("µExecutor");
         this.setSize(600, 300);
         this.setIconImage((new ImageIcon(this.getClass().getResource("icons/console.png")).getImage()));
-        StyleConstants.setForeground(errstyle, Color.red);
-        StyleConstants.setForeground(inputstyle, Color.lightGray);
-        StyleConstants.setForeground(infostyle, Color.white);
         getContentPane().setLayout(new BorderLayout());
-        textArea.setEditable(false);
-        caret = (DefaultCaret) textArea.getCaret();
-        caret.setUpdatePolicy(DefaultCaret.ALWAYS_UPDATE);
-        cons_scrollpane = new JScrollPane();
-        cons_scrollpane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
-        cons_scrollpane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
-
-        cons_scrollpane.setViewportView(textArea);
-
-        textArea.setBackground(Color.BLACK);
-        textArea.setForeground(Color.GREEN);
-        getContentPane().add(cons_scrollpane, BorderLayout.CENTER);
+        cons_scrollpane = scrollPane(textArea, model);
+        tabs = new JTabbedPane(JTabbedPane.TOP, JTabbedPane.SCROLL_TAB_LAYOUT);
+        tabs.addTab("All", cons_scrollpane);
+        rankTabs.clear();
+        getContentPane().add(tabs, BorderLayout.CENTER);
 
         cmdInput = new JTextField();
         cmdInput.addKeyListener(this);
-        getContentPane().add(cmdInput, BorderLayout.SOUTH);
         cmdInput.setColumns(10);
+        fullOutputBtn = new JButton("Full output");
+        fullOutputBtn.setVisible(false);
+        fullOutputBtn.addActionListener(e -> new RunLogViewer(runLog).setVisible(true));
+        JPanel bottomPane = new JPanel(new BorderLayout());
+        bottomPane.add(cmdInput, BorderLayout.CENTER);
+        bottomPane.add(fullOutputBtn, BorderLayout.EAST);
+        getContentPane().add(bottomPane, BorderLayout.SOUTH);
 
         this.addWindowListener(this);
         this.setVisible(false);
         cmdInput.requestFocus();
     }
 
-    public static void sendError(String line) {
+    private static JScrollPane scrollPane(JList<ConsoleModel.Line> list, ConsoleModel lines) {
+        list.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        // Same height for every row, the list then never measures the lines it does not show.
+        list.setFixedCellHeight(list.getFontMetrics(list.getFont()).getHeight());
+        list.setCellRenderer(new LineRenderer());
+        list.setBackground(Color.BLACK);
+        list.setForeground(Color.GREEN);
+        JScrollPane pane = new JScrollPane();
+        pane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+        pane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
+        pane.setViewportView(list);
+        // Follows the output while the view is at the bottom, stays put when scrolled up.
+        lines.setFlushed(() -> {
+            BoundedRangeModel bar = pane.getVerticalScrollBar().getModel();
+            if (bar.getValue() + bar.getExtent() >= bar.getMaximum() - list.getFixedCellHeight() * 2
+                    && lines.getSize() > 0)
+                list.ensureIndexIsVisible(lines.getSize() - 1);
+        });
+        return pane;
+    }
+
+    private static void addRankTab(int rank, ConsoleModel lines) {
+        // On the EDT, once the console of the run exists.
+        if (tabs == null)
+            return;
+        int index = 0;
+        while (index < rankTabs.size() && rankTabs.get(index) < rank)
+            index++;
+        rankTabs.add(index, rank);
+        tabs.insertTab("Rank " + rank, null, scrollPane(new JList<ConsoleModel.Line>(lines), lines), null,
+                index + 1);
+    }
+
+    private static ConsoleModel rankModel(int rank) {
+        synchronized (rankModels) {
+            ConsoleModel lines = rankModels.get(rank);
+            if (lines == null) {
+                lines = new ConsoleModel(scrollback());
+                rankModels.put(rank, lines);
+                ConsoleModel opened = lines;
+                SwingUtilities.invokeLater(() -> addRankTab(rank, opened));
+            }
+            return lines;
+        }
+    }
+
+    public static void clearRanks() {
+        // A new run starts, its ranks get new panes.
+        synchronized (rankModels) {
+            rankModels.clear();
+        }
+    }
+
+    private static int scrollback() {
         try {
-            doc.insertString(doc.getLength(), line + "\n", errstyle);
-        } catch (BadLocationException e) {
-            e.printStackTrace();
+            return Integer.parseInt(Session.parameter("ConsoleScrollback").trim());
+        } catch (NullPointerException | NumberFormatException e) {
+            return ConsoleModel.defaultScrollback;
         }
     }
 
-    public static void sendInfo(String line) {
-        if (line.contains("-clc"))
-            textArea.setText("");
-        else {
-            try {
-                doc.insertString(doc.getLength(), line + "\n", infostyle);
-            } catch (BadLocationException e) {
-                e.printStackTrace();
+    private static class LineRenderer extends DefaultListCellRenderer {
+        LineRenderer() {
+            // Program output is shown as it is, never as HTML.
+            putClientProperty("html.disable", Boolean.TRUE);
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean selected,
+                                                      boolean focused) {
+            super.getListCellRendererComponent(list, value, index, selected, false);
+            ConsoleModel.Line line = (ConsoleModel.Line) value;
+            // An empty label would collapse.
+            setText(line.getText().isEmpty() ? " " : line.getText());
+            if (!selected) {
+                setBackground(Color.BLACK);
+                switch (line.getKind()) {
+                    case ERROR:
+                        setForeground(Color.red);
+                        break;
+                    case INPUT:
+                        setForeground(Color.lightGray);
+                        break;
+                    default:
+                        setForeground(Color.white);
+                }
             }
-            textArea.setCaretPosition(doc.getLength());
+            return this;
         }
     }
 
+    public static void sendError(String line) {
+        // From any thread.
+        model.append(line, ConsoleModel.Kind.ERROR);
+    }
+
+    public static void sendRank(int rank, String line, boolean error) {
+        // From any thread, to the pane of the rank and to the one with every line.
+        ConsoleModel.Kind kind = error ? ConsoleModel.Kind.ERROR : ConsoleModel.Kind.OUTPUT;
+        model.append("[" + rank + "] " + line, kind);
+        rankModel(rank).append(line, kind);
+    }
+
+    public static void sendInfo(String line) {
+        if (line.contains("-clc"))
+            model.clear();
+        else
+            model.append(line, ConsoleModel.Kind.OUTPUT);
+    }
+
 
     public void activate() {
         this.setVisible(true);
@@ -95,6 +204,28 @@ public class ExecutorConsole extends JFrame implements KeyListener, WindowListen
         bw = bw2;
     }
 
+    private void record(String line) {
+        // What was typed during a run of a project, for a benchmark to replay. The first line replaces the last run's.
+        if (runLog == null)
+            return;
+        File recorded = new File(runLog.getFile().getParentFile(), Benchmark.recordedInput);
+        try {
+            Files.write(recorded.toPath(), Arrays.asList(line), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    recording ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            recording = true;
+        } catch (IOException e) {
+            // The run goes on without it.
+        }
+    }
+
+    public void setRunLog(RunLog runLog) {
+        this.runLog = runLog;
+        recording = false;
+        fullOutputBtn.setToolTipText(runLog.getFile().getPath());
+        fullOutputBtn.setVisible(true);
+    }
+
     public void setProcessRunning(boolean processRunning) {
         this.processRunning = processRunning;
     }
@@ -108,10 +239,11 @@ public class ExecutorConsole extends JFrame implements KeyListener, WindowListen
                     // Si le proc tourne et que on appuie sur enter, on souhaite entrer une commande
                     try {
                         // On la sort dans le terminal et on l'envoie au programme
-                        doc.insertString(doc.getLength(), cmdInput.getText() + "\n", inputstyle);
+                        model.append(cmdInput.getText(), ConsoleModel.Kind.INPUT);
                         bw.write(cmdInput.getText() + "\n");
                         bw.flush();
-                    } catch (BadLocationException | IOException e1) {
+                        record(cmdInput.getText());
+                    } catch (IOException e1) {
                         e1.printStackTrace();
                     }
                     // On reset l'input
@@ -133,12 +265,8 @@ public class ExecutorConsole extends JFrame implements KeyListener, WindowListen
 
                 case KeyEvent.VK_C:
                     if (processRunning) {
-                        try {
-                            doc.insertString(doc.getLength(), "killing process ..." + "\n", errstyle);
-                        } catch (BadLocationException ee) {
-                            ee.printStackTrace();
-                        }
-                        processReference.destroy();
+                        model.append("killing process ...", ConsoleModel.Kind.ERROR);
+                        ProcessPump.destroyTree(processReference);
 
                     }
                     break;
@@ -150,8 +278,9 @@ public class ExecutorConsole extends JFrame implements KeyListener, WindowListen
     @Override
     public void windowClosing(WindowEvent arg0) {
         this.setVisible(false);
-        if (processRunning) processReference.destroy();
-        textArea.setText("");
+        if (processRunning) ProcessPump.destroyTree(processReference);
+        model.clear();
+        clearRanks();
         this.dispose();
     }
 
@@ -0,0 +1,422 @@
+package quadrasoft.mufortran.fortran;
+
+public class FortranScanner {
+    /*
+     * Single pass scanner looking only for MODULE, SUBMODULE, USE and INCLUDE
+     * statements, and for the !$omp sentinel of OpenMP directives. It works on the
+     * raw bytes of the file, skips comments and character literals and understands
+     * both fixed and free source form. It is not a parser: anything it cannot
+     * recognise is simply ignored.
+     */
+    private static final String[] fixedFormExtensions = {"f", "F", "for", "FOR", "ftn", "FTN", "f77", "F77"};
+
+    // Stages of a USE statement, in the order its words come.
+    private static final int useKeyword = 1;
+    private static final int useNature = 2;
+    private static final int useColons = 3;
+    private static final int useName = 4;
+
+    private final byte[] text;
+    private final boolean fixedForm;
+    private final SourceUnit unit;
+    // Quote character of a literal continued on the next line, 0 when none.
+    private byte openQuote = 0;
+    // Stage of a USE statement continued on the next line, 0 when none.
+    private int pendingUse = 0;
+
+    private FortranScanner(byte[] text, boolean fixedForm, SourceUnit unit) {
+        this.text = text;
+        this.fixedForm = fixedForm;
+        this.unit = unit;
+    }
+
+    public static boolean isFixedForm(String path) {
+        for (String ext : fixedFormExtensions) {
+            if (path.endsWith("." + ext))
+                return true;
+        }
+        return false;
+    }
+
+    public static void scan(byte[] content, SourceUnit unit) {
+        new FortranScanner(content, isFixedForm(unit.getPath()), unit).scan();
+    }
+
+    private static boolean isLetter(byte c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isNameChar(byte c) {
+        return isLetter(c) || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static boolean isBlank(byte c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private void scan() {
+        int start = 0;
+        int length = text.length;
+        while (start < length) {
+            int end = start;
+            while (end < length && text[end] != '\n')
+                end++;
+            int stop = end;
+            if (stop > start && text[stop - 1] == '\r')
+                stop--;
+            line(start, stop);
+            start = end + 1;
+        }
+    }
+
+    private void line(int from, int to) {
+        if (from == to)
+            return;
+        if (text[from] == '#') {
+            directive(from + 1, to);
+            return;
+        }
+        if (fixedForm) {
+            byte c = text[from];
+            if (c == 'c' || c == 'C' || c == '*' || c == '!') {
+                // Fixed form sentinels start in column 1: !$omp, c$omp or *$omp.
+                if (ompSentinel(from + 1, to))
+                    unit.setOpenMP(true);
+                return;
+            }
+            // Tab format: a tab in the label field starts the statement, a digit after
+            // it marks a continuation.
+            for (int t = from; t < Math.min(to, from + 6); t++) {
+                if (text[t] == '\t') {
+                    if (t + 1 < to && text[t + 1] >= '1' && text[t + 1] <= '9')
+                        skipContinuation(t + 2, to);
+                    else
+                        newStatement(t + 1, to);
+                    return;
+                }
+            }
+            // Columns 1 to 5 hold labels, column 6 marks continuation lines.
+            if (to - from > 5 && !isBlank(text[from + 5]) && text[from + 5] != '0') {
+                skipContinuation(from + 6, Math.min(to, from + 72));
+                return;
+            }
+            newStatement(Math.min(from + 6, to), Math.min(to, from + 72));
+        } else {
+            if (pendingUse != 0) {
+                resumeUse(from, to);
+                return;
+            }
+            if (openQuote != 0) {
+                int i = skipLiteral(from, to, openQuote);
+                if (i < 0)
+                    return;
+                statements(i, to);
+                return;
+            }
+            int i = skipBlanks(from, to);
+            if (i < to && text[i] == '!' && ompSentinel(i + 1, to)) {
+                unit.setOpenMP(true);
+                return;
+            }
+            statements(from, to);
+        }
+    }
+
+    private boolean ompSentinel(int from, int to) {
+        // "$omp" right after the comment character, then a blank, an ampersand or the end of the line.
+        if (to - from < 4 || text[from] != '$')
+            return false;
+        for (int k = 0; k < 3; k++) {
+            if ((text[from + 1 + k] | 0x20) != "omp".charAt(k))
+                return false;
+        }
+        return to - from == 4 || isBlank(text[from + 4]) || text[from + 4] == '&';
+    }
+
+    private void newStatement(int from, int to) {
+        // In fixed form a line that is not a continuation closes any pending literal.
+        openQuote = 0;
+        statements(from, to);
+    }
+
+    private void skipContinuation(int from, int to) {
+        // A continued statement never starts one of the statements we look for, but it
+        // may open or close a character literal.
+        int i = from;
+        if (openQuote != 0) {
+            i = skipLiteral(from, to, openQuote);
+            if (i < 0)
+                return;
+        }
+        while (i < to) {
+            byte c = text[i];
+            if (c == '!')
+                return;
+            if (c == '\'' || c == '"') {
+                i = skipLiteral(i + 1, to, c);
+                if (i < 0)
+                    return;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private int skipLiteral(int from, int to, byte quote) {
+        // Returns the index just after the closing quote, or -1 if the literal runs on.
+        int i = from;
+        while (i < to) {
+            if (text[i] == quote) {
+                if (i + 1 < to && text[i + 1] == quote) {
+                    i += 2;
+                    continue;
+                }
+                openQuote = 0;
+                return i + 1;
+            }
+            i++;
+        }
+        openQuote = quote;
+        if (!fixedForm) {
+            // Without a trailing ampersand the literal is unterminated, do not carry it.
+            int last = to - 1;
+            while (last >= from && isBlank(text[last]))
+                last--;
+            if (last < from || text[last] != '&')
+                openQuote = 0;
+        }
+        return -1;
+    }
+
+    private void statements(int from, int to) {
+        // Splits the line on semicolons found outside literals, stops at comments.
+        int start = from;
+        int i = from;
+        while (i < to) {
+            byte c = text[i];
+            if (c == '!') {
+                break;
+            } else if (c == '\'' || c == '"') {
+                i = skipLiteral(i + 1, to, c);
+                if (i < 0) {
+                    statement(start, to);
+                    return;
+                }
+            } else if (c == ';') {
+                statement(start, i);
+                start = i + 1;
+                i++;
+            } else {
+                i++;
+            }
+        }
+        statement(start, i);
+    }
+
+    private void statement(int from, int to) {
+        int i = skipBlanks(from, to);
+        if (i < to && text[i] == '&')
+            i = skipBlanks(i + 1, to);
+        // Statement labels.
+        while (i < to && text[i] >= '0' && text[i] <= '9')
+            i++;
+        i = skipBlanks(i, to);
+        if (i >= to || !isLetter(text[i]))
+            return;
+        // Every statement we care about starts with m, s, u or i.
+        byte first = (byte) (text[i] | 0x20);
+        if (first != 'm' && first != 's' && first != 'u' && first != 'i')
+            return;
+        int wordEnd = word(i, to);
+        if (keyword(i, wordEnd, "module")) {
+            moduleStatement(wordEnd, to);
+        } else if (keyword(i, wordEnd, "submodule")) {
+            submoduleStatement(wordEnd, to);
+        } else if (keyword(i, wordEnd, "use")) {
+            useStatement(wordEnd, to, useKeyword);
+        } else if (keyword(i, wordEnd, "include")) {
+            includeStatement(wordEnd, to);
+        }
+    }
+
+    private void moduleStatement(int from, int to) {
+        int i = skipBlanks(from, to);
+        if (i == from || i >= to || !isLetter(text[i]))
+            return;
+        int end = word(i, to);
+        // "module procedure", "module subroutine" etc. have more words after the name.
+        if (skipBlanks(end, to) < to)
+            return;
+        unit.addModule(lower(i, end));
+    }
+
+    private void submoduleStatement(int from, int to) {
+        // submodule (ancestor[:parent]) name
+        int i = skipBlanks(from, to);
+        if (i >= to || text[i] != '(')
+            return;
+        i = skipBlanks(i + 1, to);
+        int end = word(i, to);
+        if (end == i)
+            return;
+        String ancestor = lower(i, end);
+        String parent = ancestor;
+        i = skipBlanks(end, to);
+        if (i < to && text[i] == ':') {
+            i = skipBlanks(i + 1, to);
+            end = word(i, to);
+            if (end == i)
+                return;
+            parent = ancestor + "@" + lower(i, end);
+            i = skipBlanks(end, to);
+        }
+        if (i >= to || text[i] != ')')
+            return;
+        i = skipBlanks(i + 1, to);
+        end = word(i, to);
+        if (end == i)
+            return;
+        unit.addUse(parent);
+        unit.addSubmodule(ancestor + "@" + lower(i, end));
+    }
+
+    private void useStatement(int from, int to, int stage) {
+        // use name / use :: name / use, intrinsic :: name / use, non_intrinsic :: name
+        // The statement may stop on a trailing ampersand anywhere before the name, its
+        // stage is then kept and resumeUse() goes on with the next line.
+        int i = skipBlanks(from, to);
+        if (stage == useKeyword && i == from && i < to && text[i] != ',' && text[i] != ':' && text[i] != '&') {
+            // "use=1" or "use(2) = 1" assign to an array or variable named use.
+            return;
+        }
+        while (true) {
+            if (!fixedForm && i < to && text[i] == '&' && skipBlanks(i + 1, to) >= to) {
+                pendingUse = stage;
+                return;
+            }
+            if (i >= to)
+                return;
+            if (stage == useKeyword && text[i] == ',') {
+                stage = useNature;
+                i = skipBlanks(i + 1, to);
+            } else if (stage == useNature) {
+                int end = word(i, to);
+                if (end == i || keyword(i, end, "intrinsic"))
+                    return;
+                stage = useColons;
+                i = skipBlanks(end, to);
+            } else if (stage != useName && i + 1 < to && text[i] == ':' && text[i + 1] == ':') {
+                stage = useName;
+                i = skipBlanks(i + 2, to);
+            } else {
+                break;
+            }
+        }
+        int end = word(i, to);
+        if (end == i)
+            return;
+        // An assignment such as "use = 1" is not a use statement.
+        int after = skipBlanks(end, to);
+        if (after < to && text[after] != ',' && text[after] != '&')
+            return;
+        unit.addUse(lower(i, end));
+    }
+
+    private void resumeUse(int from, int to) {
+        // A line after "use &": comment and blank lines keep the statement pending, a
+        // leading ampersand is skipped and the statement goes on up to a semicolon.
+        int i = skipBlanks(from, to);
+        if (i >= to || text[i] == '!')
+            return;
+        int stage = pendingUse;
+        pendingUse = 0;
+        if (text[i] == '&')
+            i++;
+        // A name right at the start of the line follows the keyword, it is not glued to it.
+        if (stage == useKeyword && i < to && isLetter(text[i]))
+            stage = useName;
+        int end = i;
+        while (end < to && text[end] != '!' && text[end] != ';')
+            end++;
+        useStatement(i, end, stage);
+        if (end < to && text[end] == ';')
+            statements(end + 1, to);
+    }
+
+    private void includeStatement(int from, int to) {
+        int i = skipBlanks(from, to);
+        if (i >= to || (text[i] != '\'' && text[i] != '"'))
+            return;
+        String name = quoted(i, to);
+        if (name != null)
+            unit.addInclude(name);
+        // The literal is complete on this line, nothing to carry over.
+        openQuote = 0;
+    }
+
+    private void directive(int from, int to) {
+        // #include "file" or #include <file>
+        int i = skipBlanks(from, to);
+        int end = word(i, to);
+        if (!keyword(i, end, "include"))
+            return;
+        i = skipBlanks(end, to);
+        if (i >= to)
+            return;
+        if (text[i] == '<') {
+            int close = i + 1;
+            while (close < to && text[close] != '>')
+                close++;
+            if (close < to)
+                unit.addInclude(new String(text, i + 1, close - i - 1, java.nio.charset.StandardCharsets.ISO_8859_1));
+        } else if (text[i] == '"') {
+            String name = quoted(i, to);
+            if (name != null)
+                unit.addInclude(name);
+        }
+    }
+
+    private String quoted(int at, int to) {
+        byte quote = text[at];
+        int close = at + 1;
+        while (close < to && text[close] != quote)
+            close++;
+        if (close >= to)
+            return null;
+        return new String(text, at + 1, close - at - 1, java.nio.charset.StandardCharsets.ISO_8859_1);
+    }
+
+    private int skipBlanks(int from, int to) {
+        while (from < to && isBlank(text[from]))
+            from++;
+        return from;
+    }
+
+    private int word(int from, int to) {
+        if (from >= to || !isLetter(text[from]))
+            return from;
+        int i = from + 1;
+        while (i < to && isNameChar(text[i]))
+            i++;
+        return i;
+    }
+
+    private boolean keyword(int from, int to, String keyword) {
+        if (to - from != keyword.length())
+            return false;
+        for (int k = 0; k < keyword.length(); k++) {
+            if ((text[from + k] | 0x20) != keyword.charAt(k))
+                return false;
+        }
+        return true;
+    }
+
+    private String lower(int from, int to) {
+        char[] out = new char[to - from];
+        for (int k = 0; k < out.length; k++) {
+            byte c = text[from + k];
+            out[k] = (char) (c >= 'A' && c <= 'Z' ? c | 0x20 : c);
+        }
+        return new String(out);
+    }
+}
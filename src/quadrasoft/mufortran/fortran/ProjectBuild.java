@@ -0,0 +1,502 @@
+package quadrasoft.mufortran.fortran;
+
+import quadrasoft.mufortran.fortran.binaryutils.Benchmark;
+import quadrasoft.mufortran.fortran.binaryutils.BuildScheduler;
+import quadrasoft.mufortran.fortran.binaryutils.Compiler;
+import quadrasoft.mufortran.fortran.binaryutils.Job;
+import quadrasoft.mufortran.fortran.binaryutils.JobType;
+import quadrasoft.mufortran.fortran.binaryutils.LinkState;
+import quadrasoft.mufortran.fortran.binaryutils.MagicBoxStatus;
+import quadrasoft.mufortran.fortran.binaryutils.MpiLaunch;
+import quadrasoft.mufortran.fortran.binaryutils.NinjaBuild;
+import quadrasoft.mufortran.fortran.binaryutils.RunLog;
+import quadrasoft.mufortran.fortran.binaryutils.RunMetrics;
+import quadrasoft.mufortran.fortran.binaryutils.Scaling;
+import quadrasoft.mufortran.fortran.binaryutils.Sweep;
+import quadrasoft.mufortran.fortran.binaryutils.Toolchain;
+import quadrasoft.mufortran.general.BuildConfiguration;
+import quadrasoft.mufortran.general.BuildOutput;
+import quadrasoft.mufortran.general.Digests;
+import quadrasoft.mufortran.general.OsUtils;
+import quadrasoft.mufortran.general.Project;
+import quadrasoft.mufortran.general.Session;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class ProjectBuild {
+    /*
+     * Prepares the compile, link and run jobs of one project in one of its build
+     * configurations. Nothing here is static: the IDE submits the jobs to the
+     * BuildService, the command line and the build daemon queue them and wait, and
+     * may build several projects and configurations at once, each in its own object
+     * folder and lane. With the ninja backend, compiling and linking build the
+     * objects and executable targets of a generated build.ninja instead. MPI
+     * projects are built with mpif90 and run through mpirun, see MpiLaunch.
+     */
+    // Run outputs kept per configuration.
+    private static final int runLogs = 5;
+    private static final List<String> linkOnly = Arrays.asList("-static", "-shared", "-pie", "-no-pie", "-rdynamic",
+            "-s");
+
+    private final Project project;
+    private final BuildOutput output;
+    private BuildConfiguration configuration;
+    private boolean incremental;
+    private boolean tracing;
+    private boolean ninja;
+    // Ranks of an MPI run, 0 for a plain one.
+    private int ranks;
+    private String compiler;
+
+    public ProjectBuild(Project project, BuildOutput output) {
+        this.project = project;
+        this.output = output;
+        this.configuration = project.getConfiguration(project.getActiveConfiguration());
+        if (configuration == null)
+            configuration = new BuildConfiguration(project.getActiveConfiguration(), new ArrayList<String>());
+        this.incremental = project.isIncremental();
+        // Timings are exported along with the logs.
+        this.tracing = project.isPrintLog();
+        this.ninja = "true".equalsIgnoreCase(Session.parameter("NinjaBackend"));
+        this.ranks = project.isMpi() ? project.getRanks() : 0;
+    }
+
+    public Project getProject() {
+        return project;
+    }
+
+    public BuildConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    public void setConfiguration(BuildConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    public File logFolder() {
+        // Traces, run outputs and run history of the configuration.
+        return new File(project.getPath() + "logs/" + configuration.getName());
+    }
+
+    public String lane() {
+        // Jobs of one project and configuration share a BuildService lane.
+        return project.getPath() + " " + configuration.getName();
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public void setDebug(boolean debug) {
+        // The debug button, the active configuration when released.
+        BuildConfiguration selected = project.getConfiguration(
+                debug ? BuildConfiguration.DEBUG : project.getActiveConfiguration());
+        if (selected != null)
+            configuration = selected;
+    }
+
+    public String objectFolder() {
+        return project.getPath() + project.getObjectPath(configuration.getName());
+    }
+
+    private String name(String action) {
+        return action + project.getName() + " [" + configuration.getName() + "]";
+    }
+
+    public void setTracing(boolean tracing) {
+        this.tracing = tracing;
+    }
+
+    public void setNinja(boolean ninja) {
+        this.ninja = ninja;
+    }
+
+    public void setRanks(int ranks) {
+        // Runs the project on that many MPI ranks, and builds it for MPI, whether or not it is marked so.
+        this.ranks = ranks;
+        this.compiler = null;
+    }
+
+    public synchronized String compilerPath() {
+        // mpif90 for MPI builds, unless the project names an MPI wrapper already. Probes the toolchain, keep it
+        // off the EDT.
+        if (compiler != null)
+            return compiler;
+        compiler = project.getCompilerPath();
+        String name = compiler == null ? "" : new File(compiler).getName();
+        if (ranks > 0 && !name.startsWith("mpi")) {
+            Toolchain.Tool wrapper = Toolchain.shared().probe("mpif90", Toolchain.Kind.COMPILER);
+            if (wrapper != null)
+                compiler = wrapper.getPath();
+            else
+                output.message("Warning: mpif90 not found, building the MPI project with " + name);
+        }
+        return compiler;
+    }
+
+    private NinjaBuild ninjaBuild(Job job, List<String> sources) {
+        // Null when ninja is not asked for or not installed, the BuildScheduler builds then.
+        if (!ninja || job.getExecutableAbsolutePath() == null)
+            return null;
+        Toolchain.Tool tool = Toolchain.shared().probe("ninja", Toolchain.Kind.TOOL);
+        if (tool == null) {
+            output.message("Warning: ninja not found, building with muFortran");
+            return null;
+        }
+        List<String> options = new ArrayList<String>(project.getExternals());
+        options.addAll(flags(job, usesOpenMP()));
+        List<String> linkOptions = new ArrayList<String>(options);
+        String linker = linker(job);
+        if (linker != null)
+            linkOptions.add(linker);
+        NinjaBuild build = new NinjaBuild(tool.getPath(), job, DependencyIndex.forProject(project));
+        build.setSources(sources, options);
+        build.setExecutable(createExecutableOutput().get(0), linkOptions);
+        return build;
+    }
+
+    private Compiler compiler(Job job) {
+        Compiler aCompiler = new Compiler();
+        aCompiler.clear();
+        aCompiler.setOutput(output);
+        aCompiler.setJob(job);
+        if (tracing)
+            aCompiler.setTraceFolder(logFolder().getPath() + "/");
+        return aCompiler;
+    }
+
+    private boolean usesOpenMP() {
+        // Rescans what changed, in the job: the index may be busy with another build.
+        return DependencyIndex.forProject(project).usesOpenMP(projectSources());
+    }
+
+    private List<String> flags(Job job, boolean openMP) {
+        // The flags of the configuration the compiler accepts, with -fopenmp when the sources have OpenMP directives.
+        List<String> flags = new ArrayList<String>(configuration.getFlags());
+        if (openMP && !flags.contains("-fopenmp") && !project.getExternals().contains("-fopenmp")) {
+            flags.add("-fopenmp");
+            if (job.getNature() == JobType.COMPILING)
+                output.message("OpenMP directives found, building with -fopenmp");
+        }
+        if (job.getExecutableAbsolutePath() == null)
+            return flags;
+        return Toolchain.shared().filter(job.getExecutableAbsolutePath(), flags, output);
+    }
+
+    public List<String> syntaxOptions() {
+        // The externals and flags of the configuration a -fsyntax-only check of a project file needs: those naming
+        // an output, a library or a module folder, or only read by the linker, are left out.
+        List<String> all = new ArrayList<String>(project.getExternals());
+        all.addAll(configuration.getFlags());
+        List<String> options = new ArrayList<String>();
+        for (int i = 0; i < all.size(); i++) {
+            String option = all.get(i);
+            if (option.equals("-o") || option.equals("-J") || option.equals("-l") || option.equals("-L")) {
+                // Followed by its value.
+                i++;
+                continue;
+            }
+            if (!option.startsWith("-") || option.startsWith("-o") || option.startsWith("-J")
+                    || option.startsWith("-l") || option.startsWith("-L") || option.startsWith("-Wl,")
+                    || option.startsWith("-fuse-ld=") || linkOnly.contains(option))
+                continue;
+            options.add(option);
+        }
+        return options;
+    }
+
+    private List<String> projectSources() {
+        List<String> sources = new ArrayList<String>();
+        for (String source : project.getSource()) {
+            if (FileTypesManager.isFortranSource(source) && new File(project.getPath() + source).exists())
+                sources.add(project.getPath() + source);
+        }
+        return sources;
+    }
+
+    private String linker(Job job) {
+        // The fastest linker available, unless the project picked one or it is turned off.
+        if (job.getExecutableAbsolutePath() == null || "false".equalsIgnoreCase(Session.parameter("FastLinker")))
+            return null;
+        for (String option : project.getExternals()) {
+            if (option.startsWith("-fuse-ld="))
+                return null;
+        }
+        for (String option : configuration.getFlags()) {
+            if (option.startsWith("-fuse-ld="))
+                return null;
+        }
+        return Toolchain.shared().fastestLinker(job.getExecutableAbsolutePath());
+    }
+
+    public Compiler compileFile(String path) {
+        Compiler aCompiler = compileJob(name("Compile file"), Arrays.asList(path), false);
+        // The modules the file uses are looked for among the project sources.
+        aCompiler.setScope(projectSources());
+        return aCompiler;
+    }
+
+    public Compiler compileProject() {
+        return compileJob(name("Compile project"), prepareFilesForCompilation(), true);
+    }
+
+    private Compiler compileJob(String name, List<String> sources, boolean whole) {
+        Job job = new Job(name, project.getCompilerPath(), JobType.COMPILING);
+        job.setContext(objectFolder());
+        // We tell the compiler we are going to compile with a certain compiler
+        Compiler aCompiler = compiler(job);
+        aCompiler.setDependencyIndex(DependencyIndex.forProject(project));
+        aCompiler.setIncremental(incremental);
+        // We send the source files to the compiler.
+        aCompiler.input(sources);
+        aCompiler.setPreparation(() -> {
+            job.resolve(compilerPath(), output);
+            // The whole project may go to ninja instead.
+            NinjaBuild ninjaBuild = whole ? ninjaBuild(job, sources) : null;
+            if (ninjaBuild != null) {
+                aCompiler.setNinja(ninjaBuild, NinjaBuild.OBJECTS);
+                new File(project.getPath() + project.getBinaryPath(configuration.getName())).mkdirs();
+            } else {
+                // We specify additive options, the scheduler adds -fopenmp from the graph it scans anyway.
+                aCompiler.option(project.getExternals());
+                aCompiler.option(flags(job, false));
+                aCompiler.setOpenMP(true);
+            }
+            // We init the process.
+            aCompiler.init();
+        });
+        // the build path and object folder
+        new File(objectFolder()).mkdirs();
+        return aCompiler;
+    }
+
+    public Compiler daemonProject(String step, Path socket) {
+        // The daemon reads the saved project file and builds in its own lane of the same folders.
+        Job job = new Job(name("Daemon build"), project.getCompilerPath(), JobType.REMOTE);
+        job.setContext(objectFolder());
+        Compiler aCompiler = compiler(job);
+        DaemonBuild remote = new DaemonBuild(socket, Arrays.asList("--config", configuration.getName(), step,
+                project.getProjectFilePath()));
+        aCompiler.setRemote(remote);
+        // The arguments tell the steps apart in the lane.
+        aCompiler.input(remote.getArgs());
+        return aCompiler;
+    }
+
+    public Compiler linkProject() {
+        Job job = new Job(name("Link project"), project.getCompilerPath(), JobType.LINKING);
+        job.setContext(project.getPath());
+        // We tell the compiler we are goind to link with a certain compiler
+        Compiler aCompiler = compiler(job);
+        // We send the .o files to the compiler.
+        aCompiler.input(createOutputFilesList());
+        // We specify the executable name to the compiler
+        aCompiler.output(createExecutableOutput());
+        aCompiler.setIncremental(incremental);
+        aCompiler.setPreparation(() -> {
+            job.resolve(compilerPath(), output);
+            NinjaBuild ninjaBuild = ninja ? ninjaBuild(job, prepareFilesForCompilation()) : null;
+            if (ninjaBuild != null) {
+                // ninja runs in the object folder, whatever the job.
+                job.setContext(objectFolder());
+                aCompiler.setNinja(ninjaBuild, ninjaBuild.getExecutable());
+            } else {
+                // Libraries and their folders are given with the externals, -pg and the like with the flags.
+                aCompiler.option(project.getExternals());
+                aCompiler.option(flags(job, usesOpenMP()));
+                String linker = linker(job);
+                if (linker != null)
+                    aCompiler.option(Arrays.asList(linker));
+                aCompiler.setLinkState(new LinkState(objectFolder() + "link.state"));
+            }
+            // We init the process.
+            aCompiler.init();
+        });
+        new File(objectFolder()).mkdirs();
+        new File(project.getPath() + project.getBinaryPath(configuration.getName())).mkdirs();
+        return aCompiler;
+    }
+
+    public Compiler launchProject() {
+        Job job = new Job(name("Run project"), project.getCompilerPath(), JobType.EXECUTING);
+        job.setContext(project.getPath() + project.getExecutionPath());
+        Compiler aCompiler = compiler(job);
+        // The whole output is kept under logs/, with the last few runs before it.
+        File logs = logFolder();
+        RunLog.prune(logs, "run-", runLogs - 1);
+        aCompiler.setRunLog(new File(logs, "run-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())
+                + ".log"));
+        aCompiler.setRunHistory(new File(logs, RunMetrics.historyFile));
+        aCompiler.input(createExecutableOutput());
+        aCompiler.input(OsUtils.splitArguments(project.getArgument()));
+        aCompiler.setPreparation(() -> {
+            if (ranks > 0) {
+                Toolchain.Tool mpirun = Toolchain.shared().probe("mpirun", Toolchain.Kind.TOOL);
+                if (mpirun == null)
+                    output.message("Warning: mpirun not found, running a single process");
+                else
+                    aCompiler.setMpi(new MpiLaunch(mpirun.getPath(), mpirun.getVersion(), ranks,
+                            new File(logs, "ranks")));
+            }
+            aCompiler.init();
+        });
+        return aCompiler;
+    }
+
+    private List<String> programCommand() {
+        // The executable with the arguments of the project, as Run starts it.
+        List<String> command = createExecutableOutput();
+        command.addAll(OsUtils.splitArguments(project.getArgument()));
+        return command;
+    }
+
+    public String revision() {
+        // Names what a benchmark measured: the sources, the flags and the compiler they were built with, and the
+        // arguments the program was given.
+        StringBuilder sb = new StringBuilder(String.valueOf(compilerPath()));
+        sb.append('\n').append(String.join(" ", configuration.getFlags()));
+        sb.append('\n').append(String.join(" ", project.getExternals()));
+        List<String> arguments = OsUtils.splitArguments(project.getArgument());
+        // Left out when there are none, baselines taken without arguments still compare.
+        if (!arguments.isEmpty())
+            sb.append('\n').append(String.join(" ", arguments));
+        List<String> sources = new ArrayList<String>(project.getSource());
+        sources.sort(null);
+        for (String source : sources) {
+            sb.append('\n').append(source).append(' ');
+            try {
+                sb.append(Digests.of(new File(project.getPath() + source).toPath()));
+            } catch (IOException e) {
+                sb.append("missing");
+            }
+        }
+        return Digests.of(sb.toString()).substring(0, 12);
+    }
+
+    public Compiler benchmarkProject(int warmups, int runs, File input) {
+        Job job = new Job(name("Benchmark project"), project.getCompilerPath(), JobType.BENCHMARKING);
+        job.setContext(project.getPath() + project.getExecutionPath());
+        Compiler aCompiler = compiler(job);
+        List<String> command = programCommand();
+        // The revision names the compiler, which may need a probe.
+        aCompiler.setPreparation(() -> {
+            aCompiler.setBenchmark(new Benchmark(command, new File(job.getContext()), logFolder(), warmups, runs,
+                    input, revision()));
+            aCompiler.init();
+        });
+        return aCompiler;
+    }
+
+    public MagicBoxStatus benchmark(int warmups, int runs, File input) {
+        return runInLane(benchmarkProject(warmups, runs, input));
+    }
+
+    public Compiler scalingProject(int runs, List<Integer> threads, List<String> bindings, File input) {
+        Job job = new Job(name("Scaling project"), project.getCompilerPath(), JobType.SCALING);
+        job.setContext(project.getPath() + project.getExecutionPath());
+        Compiler aCompiler = compiler(job);
+        List<String> command = programCommand();
+        aCompiler.setPreparation(() -> {
+            if (!usesOpenMP())
+                output.message("Warning: No OpenMP directive in the sources, the thread count may change nothing");
+            aCompiler.setScaling(new Scaling(command, new File(job.getContext()), logFolder(), threads, bindings,
+                    runs, input, revision()));
+            aCompiler.init();
+        });
+        return aCompiler;
+    }
+
+    public MagicBoxStatus scaling(int runs, List<Integer> threads, List<String> bindings, File input) {
+        return runInLane(scalingProject(runs, threads, bindings, input));
+    }
+
+    public Compiler sweepProject(File table, int parallel) throws IOException {
+        // Runs go to sweeps/<table>-<date>/ in the project, where they can be kept with the sources.
+        Job job = new Job(name("Sweep project"), project.getCompilerPath(), JobType.SWEEPING);
+        job.setContext(project.getPath() + project.getExecutionPath());
+        Compiler aCompiler = compiler(job);
+        List<String> command = programCommand();
+        String name = table.getName().replaceFirst("\\.[^.]*$", "");
+        File folder = new File(project.getPath() + "sweeps/" + name + "-"
+                + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()));
+        aCompiler.setSweep(new Sweep(command, new File(job.getContext()), folder, Sweep.readTable(table), parallel));
+        aCompiler.init();
+        return aCompiler;
+    }
+
+    public MagicBoxStatus sweep(File table, int parallel) {
+        try {
+            return runInLane(sweepProject(table, parallel));
+        } catch (IOException e) {
+            output.message("Error: Could not read the parameter table " + table.getPath());
+            return MagicBoxStatus.FAILED;
+        }
+    }
+
+    public MagicBoxStatus compile() {
+        return runInLane(compileProject());
+    }
+
+    public MagicBoxStatus link() {
+        return runInLane(linkProject());
+    }
+
+    public MagicBoxStatus run() {
+        return runInLane(launchProject());
+    }
+
+    private MagicBoxStatus runInLane(Compiler aCompiler) {
+        // Waits for the jobs others queued on the same folders.
+        return BuildService.lane(lane()).queue(aCompiler).join();
+    }
+
+    public List<String> createExecutableOutput() {
+        String exeName = project.getPath() + project.getBinaryPath(configuration.getName()) + project.getExecutableName()
+                + Session.parameter("execExtension");
+        List<String> ret = new ArrayList<String>();
+        ret.add(exeName);
+        return ret;
+    }
+
+    private List<String> createOutputFilesList() {
+        // This function takes source files list from the project and generates the
+        // expected output files names.
+        List<String> files = new ArrayList<String>();
+
+        for (String source : project.getSource()) {
+            if (FileTypesManager.isFortranSource(source)) {
+                // The compiler writes objects under their base name, subfolders are not kept.
+                String sourceAbsPath = objectFolder() + BuildScheduler.objectName(source);
+                files.add(sourceAbsPath);
+            } else {
+                // The file specified isn't recognized as a fortran source for some reason.
+                output.message("Error: Compiler was specified an icorrect file : " + source);
+            }
+        }
+        return files;
+    }
+
+    private List<String> prepareFilesForCompilation() {
+        List<String> files = new ArrayList<String>();
+        for (String source : project.getSource()) {
+            if (FileTypesManager.isFortranSource(source)) {
+                String sourceAbsPath = project.getPath() + source;
+                if (new File(sourceAbsPath).exists()) {
+                    files.add(sourceAbsPath);
+                } else {
+                    output.message("Error: Could not load file : " + source);
+                }
+            } else {
+                output.message("Error: Compiler was specified an icorrect file : " + source);
+            }
+        }
+        return files;
+    }
+}
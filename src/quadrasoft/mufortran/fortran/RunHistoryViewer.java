@@ -0,0 +1,211 @@
+package quadrasoft.mufortran.fortran;
+
+import quadrasoft.mufortran.fortran.binaryutils.RunMetrics;
+import quadrasoft.mufortran.general.BuildConfiguration;
+import quadrasoft.mufortran.general.Project;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+@SuppressWarnings("serial")
+public class RunHistoryViewer extends JFrame {
+    /*
+     * The RunMetrics history of a project, one configuration at a time, the last
+     * run on top. Every cost is compared with the run before it: more than 5% worse
+     * is shown in red, more than 5% better in green, so the effect of the last
+     * edit shows at a glance. Runs of a new build of the executable are marked.
+     * Open viewers reload when a run ends.
+     */
+    private static final List<RunHistoryViewer> viewers = new ArrayList<RunHistoryViewer>();
+    private static final double threshold = 0.05;
+    private static final String[] columns = {"Run", "Build", "Exit", "Wall", "User CPU", "System CPU", "Peak RSS",
+            "Switches (vol/invol)", "Read", "Written"};
+
+    private final Project project;
+    private final JComboBox<String> configurationBox = new JComboBox<String>();
+    private final HistoryModel model = new HistoryModel();
+    private final JTable table = new JTable(model);
+    private final JLabel status = new JLabel();
+
+    private class HistoryModel extends AbstractTableModel {
+        // Last run first.
+        private List<RunMetrics> runs = new ArrayList<RunMetrics>();
+
+        void setRuns(List<RunMetrics> history) {
+            runs = new ArrayList<RunMetrics>();
+            for (int i = history.size() - 1; i >= 0; i--)
+                runs.add(history.get(i));
+            fireTableDataChanged();
+        }
+
+        RunMetrics previous(int row) {
+            return row + 1 < runs.size() ? runs.get(row + 1) : null;
+        }
+
+        @Override
+        public int getRowCount() {
+            return runs.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        long cost(RunMetrics run, int column) {
+            // The compared value of a column, -1 for the others.
+            switch (column) {
+                case 3:
+                    return run.getWall();
+                case 4:
+                    return run.getUser();
+                case 5:
+                    return run.getSystem();
+                case 6:
+                    return run.getPeakRss();
+                case 8:
+                    return run.getReadBytes();
+                case 9:
+                    return run.getWrittenBytes();
+                default:
+                    return -1;
+            }
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            RunMetrics run = runs.get(row);
+            RunMetrics previous = previous(row);
+            switch (column) {
+                case 0:
+                    return run.getRun().replace('T', ' ');
+                case 1:
+                    if (previous != null && previous.getBinary() == run.getBinary())
+                        return "";
+                    if (run.getBinary() <= 0)
+                        return "new";
+                    return "new " + new SimpleDateFormat("HH:mm:ss").format(new Date(run.getBinary()));
+                case 2:
+                    return String.valueOf(run.getExitCode());
+                case 3:
+                case 4:
+                case 5:
+                    return withChange(cost(run, column) < 0 ? "?" : cost(run, column) + " ms", row, column);
+                case 6:
+                    return withChange(run.getPeakRss() < 0 ? "?" : RunMetrics.bytes(run.getPeakRss() * 1024), row,
+                            column);
+                case 7:
+                    return (run.getVoluntarySwitches() < 0 ? "?" : String.valueOf(run.getVoluntarySwitches())) + " / "
+                            + (run.getInvoluntarySwitches() < 0 ? "?" : String.valueOf(run.getInvoluntarySwitches()));
+                default:
+                    return withChange(RunMetrics.bytes(cost(run, column)), row, column);
+            }
+        }
+
+        double change(int row, int column) {
+            // Relative to the run before, 0 when either is unknown.
+            RunMetrics previous = previous(row);
+            if (previous == null)
+                return 0;
+            long before = cost(previous, column);
+            long now = cost(runs.get(row), column);
+            if (before <= 0 || now < 0)
+                return 0;
+            return (double) (now - before) / before;
+        }
+
+        private String withChange(String value, int row, int column) {
+            double change = change(row, column);
+            if (Math.abs(change) < threshold)
+                return value;
+            return value + String.format(" (%+.0f%%)", change * 100);
+        }
+    }
+
+    private class ChangeRenderer extends DefaultTableCellRenderer {
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean selected, boolean focused,
+                                                       int row, int column) {
+            super.getTableCellRendererComponent(table, value, selected, focused, row, column);
+            if (!selected) {
+                double change = model.change(row, column);
+                if (column == 2 && !"0".equals(value))
+                    setForeground(Color.red);
+                else if (change >= threshold)
+                    setForeground(new Color(190, 30, 30));
+                else if (change <= -threshold)
+                    setForeground(new Color(20, 140, 40));
+                else
+                    setForeground(table.getForeground());
+            }
+            return this;
+        }
+    }
+
+    public RunHistoryViewer(Project project) {
+        super("Run history - " + project.getName());
+        this.project = project;
+        setSize(900, 400);
+        getContentPane().setLayout(new BorderLayout());
+
+        for (BuildConfiguration configuration : project.getConfigurations())
+            configurationBox.addItem(configuration.getName());
+        configurationBox.setSelectedItem(project.getActiveConfiguration());
+        configurationBox.addActionListener(e -> reload());
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(new JLabel("Configuration:"));
+        top.add(configurationBox);
+        top.add(status);
+        getContentPane().add(top, BorderLayout.NORTH);
+
+        table.setDefaultRenderer(Object.class, new ChangeRenderer());
+        table.getColumnModel().getColumn(0).setPreferredWidth(140);
+        table.getColumnModel().getColumn(7).setPreferredWidth(120);
+        getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                viewers.remove(RunHistoryViewer.this);
+            }
+        });
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        viewers.add(this);
+        reload();
+    }
+
+    public static void refreshAll() {
+        // On the EDT, after a run was appended to a history.
+        for (RunHistoryViewer viewer : viewers)
+            viewer.reload();
+    }
+
+    private File historyFile() {
+        ProjectBuild build = new ProjectBuild(project, null);
+        String name = (String) configurationBox.getSelectedItem();
+        BuildConfiguration configuration = name == null ? null : project.getConfiguration(name);
+        if (configuration != null)
+            build.setConfiguration(configuration);
+        return new File(build.logFolder(), RunMetrics.historyFile);
+    }
+
+    private void reload() {
+        List<RunMetrics> history = RunMetrics.readHistory(historyFile());
+        model.setRuns(history);
+        status.setText(history.isEmpty() ? "No run yet" : history.size() + " runs");
+    }
+}
@@ -0,0 +1,156 @@
+package quadrasoft.mufortran.fortran;
+
+import quadrasoft.mufortran.fortran.binaryutils.RunLog;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+
+@SuppressWarnings("serial")
+public class RunLogViewer extends JFrame {
+    /*
+     * Shows the whole output of a run from its RunLog, while the program still
+     * writes. The list asks the model for the visible rows only, which reads them
+     * from the mapped file; nothing else of the log is held in memory. New lines
+     * are picked up four times a second, the view follows them while it is at the
+     * bottom. The search runs over the mapped file in the background.
+     */
+    private static final int refresh = 250;
+
+    private final RunLog log;
+    private final LogModel model = new LogModel();
+    private final JList<String> list = new JList<String>(model);
+    private final JScrollPane scrollPane = new JScrollPane(list);
+    private final JTextField searchField = new JTextField(24);
+    private final JLabel status = new JLabel();
+    private final Timer timer;
+    private SwingWorker<Long, Void> search;
+
+    private class LogModel extends AbstractListModel<String> {
+        private int size = 0;
+
+        @Override
+        public String getElementAt(int index) {
+            return log.line(index);
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        void update() {
+            int before = size;
+            // A JList holds int indexes, longer logs show their first 2^31 lines.
+            size = (int) Math.min(Integer.MAX_VALUE - 1, log.isClosed() ? log.getLineCount() : log.publish());
+            if (size > before)
+                fireIntervalAdded(this, before, size - 1);
+        }
+    }
+
+    private class LineRenderer extends DefaultListCellRenderer {
+        LineRenderer() {
+            putClientProperty("html.disable", Boolean.TRUE);
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean selected,
+                                                      boolean focused) {
+            super.getListCellRendererComponent(list, value, index, selected, false);
+            String text = (String) value;
+            setText(text.isEmpty() ? " " : text.replace('\t', ' '));
+            if (!selected)
+                setForeground(log.isError(index) ? Color.red : Color.white);
+            return this;
+        }
+    }
+
+    public RunLogViewer(RunLog log) {
+        super(log.getFile().getName());
+        this.log = log;
+        setSize(800, 500);
+        getContentPane().setLayout(new BorderLayout());
+
+        list.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        list.setBackground(Color.BLACK);
+        list.setCellRenderer(new LineRenderer());
+        // Fixed sizes, otherwise the list measures every line of the log.
+        FontMetrics metrics = list.getFontMetrics(list.getFont());
+        list.setFixedCellHeight(metrics.getHeight());
+        list.setFixedCellWidth(Math.max(400, metrics.charWidth('m') * (log.getWidestLine() + 2)));
+        getContentPane().add(scrollPane, BorderLayout.CENTER);
+
+        JPanel searchPane = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        searchPane.add(new JLabel("Find:"));
+        searchPane.add(searchField);
+        JButton next = new JButton("Next");
+        searchPane.add(next);
+        searchPane.add(status);
+        getContentPane().add(searchPane, BorderLayout.NORTH);
+        searchField.addActionListener(e -> find());
+        next.addActionListener(e -> find());
+
+        timer = new Timer(refresh, e -> update());
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                timer.stop();
+                if (search != null)
+                    search.cancel(true);
+                log.dispose();
+            }
+        });
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        update();
+        timer.start();
+    }
+
+    private void update() {
+        BoundedRangeModel bar = scrollPane.getVerticalScrollBar().getModel();
+        boolean atBottom = bar.getValue() + bar.getExtent() >= bar.getMaximum() - list.getFixedCellHeight() * 2;
+        model.update();
+        int width = list.getFontMetrics(list.getFont()).charWidth('m') * (log.getWidestLine() + 2);
+        if (width > list.getFixedCellWidth())
+            list.setFixedCellWidth(width);
+        if (atBottom && model.getSize() > 0 && !log.isClosed())
+            list.ensureIndexIsVisible(model.getSize() - 1);
+        status.setText(model.getSize() + " lines" + (log.isClosed() ? "" : ", running"));
+        if (log.isClosed() && timer.isRunning())
+            timer.stop();
+    }
+
+    private void find() {
+        String text = searchField.getText();
+        if (text.isEmpty() || (search != null && !search.isDone()))
+            return;
+        long from = list.getSelectedIndex() + 1L;
+        status.setText("Searching...");
+        search = new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() throws IOException {
+                return log.find(text, from, this::isCancelled);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled())
+                    return;
+                try {
+                    long line = get();
+                    if (line < 0 || line >= model.getSize()) {
+                        status.setText("\"" + text + "\" not found below");
+                    } else {
+                        list.setSelectedIndex((int) line);
+                        list.ensureIndexIsVisible((int) line);
+                        status.setText("Line " + (line + 1));
+                    }
+                } catch (Exception e) {
+                    status.setText("Search failed");
+                }
+            }
+        };
+        search.execute();
+    }
+}
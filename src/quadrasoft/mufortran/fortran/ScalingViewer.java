@@ -0,0 +1,141 @@
+package quadrasoft.mufortran.fortran;
+
+import quadrasoft.mufortran.fortran.binaryutils.ScalingResult;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+@SuppressWarnings("serial")
+public class ScalingViewer extends JFrame {
+    /*
+     * Speedup and parallel efficiency of a thread scaling run, one curve per
+     * binding, against the ideal in grey. Thread counts are on a log2 axis, as
+     * they were measured. The point where a curve stops scaling is circled.
+     */
+    private static final Color[] colors = {new Color(0x1f77b4), new Color(0xd62728), new Color(0x2ca02c),
+            new Color(0xff7f0e), new Color(0x9467bd)};
+
+    private final ScalingResult result;
+
+    private class Plot extends JPanel {
+        private final boolean efficiency;
+
+        Plot(boolean efficiency) {
+            this.efficiency = efficiency;
+            setBackground(Color.white);
+            setPreferredSize(new Dimension(360, 300));
+        }
+
+        private double value(ScalingResult.Point point) {
+            return efficiency ? result.getEfficiency(point) : result.getSpeedup(point);
+        }
+
+        @Override
+        protected void paintComponent(Graphics graphics) {
+            super.paintComponent(graphics);
+            Graphics2D g = (Graphics2D) graphics;
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            int maxThreads = 1;
+            double maxValue = 1;
+            for (ScalingResult.Point point : result.getPoints()) {
+                maxThreads = Math.max(maxThreads, point.getThreads());
+                maxValue = Math.max(maxValue, value(point));
+            }
+            if (!efficiency)
+                maxValue = Math.max(maxValue, maxThreads);
+            maxValue *= 1.1;
+            double logMax = Math.max(1, Math.log(maxThreads) / Math.log(2));
+
+            int left = 50;
+            int top = 28;
+            int width = getWidth() - left - 20;
+            int height = getHeight() - top - 40;
+            FontMetrics fm = g.getFontMetrics();
+            g.setColor(Color.black);
+            g.drawString(efficiency ? "Parallel efficiency" : "Speedup", left, 18);
+            g.drawLine(left, top + height, left + width, top + height);
+            g.drawLine(left, top, left, top + height);
+            // The thread counts measured, and a few values on the vertical axis.
+            Set<Integer> counts = new TreeSet<Integer>();
+            for (ScalingResult.Point point : result.getPoints())
+                counts.add(point.getThreads());
+            for (int n : counts) {
+                int x = left + (int) (width * (Math.log(n) / Math.log(2)) / logMax);
+                g.drawLine(x, top + height, x, top + height + 4);
+                String label = String.valueOf(n);
+                g.drawString(label, x - fm.stringWidth(label) / 2, top + height + 6 + fm.getAscent());
+            }
+            String axis = "threads";
+            g.drawString(axis, left + width - fm.stringWidth(axis), top + height + 20 + fm.getAscent());
+            for (int i = 0; i <= 4; i++) {
+                double v = maxValue * i / 4;
+                int y = top + height - (int) (height * v / maxValue);
+                g.drawLine(left - 4, y, left, y);
+                String label = efficiency ? String.format(Locale.ROOT, "%.0f%%", v * 100)
+                        : String.format(Locale.ROOT, "%.1f", v);
+                g.drawString(label, left - 6 - fm.stringWidth(label), y + fm.getAscent() / 2);
+            }
+
+            // Ideal scaling: speedup equal to the threads, efficiency of 1.
+            g.setColor(Color.lightGray);
+            g.setStroke(new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10, new float[]{4, 4}, 0));
+            // A curve on the log axis, drawn in short segments.
+            double logThreads = Math.log(maxThreads) / Math.log(2);
+            for (int k = 0; k < 32; k++) {
+                double t1 = Math.pow(2, logThreads * k / 32);
+                double t2 = Math.pow(2, logThreads * (k + 1) / 32);
+                g.drawLine(left + (int) (width * logThreads * k / 32 / logMax),
+                        top + height - (int) (height * (efficiency ? 1 : t1) / maxValue),
+                        left + (int) (width * logThreads * (k + 1) / 32 / logMax),
+                        top + height - (int) (height * (efficiency ? 1 : t2) / maxValue));
+            }
+
+            List<String> bindings = result.getBindings();
+            for (int b = 0; b < bindings.size(); b++) {
+                String binding = bindings.get(b);
+                g.setColor(colors[b % colors.length]);
+                g.setStroke(new BasicStroke(2));
+                ScalingResult.Point breakdown = result.getBreakdown(binding);
+                int lastX = -1;
+                int lastY = -1;
+                for (ScalingResult.Point point : result.getPoints(binding)) {
+                    int x = left + (int) (width * (Math.log(point.getThreads()) / Math.log(2)) / logMax);
+                    int y = top + height - (int) (height * value(point) / maxValue);
+                    if (lastX >= 0)
+                        g.drawLine(lastX, lastY, x, y);
+                    g.fillOval(x - 3, y - 3, 7, 7);
+                    if (point == breakdown)
+                        g.drawOval(x - 7, y - 7, 14, 14);
+                    lastX = x;
+                    lastY = y;
+                }
+                g.drawString(ScalingResult.name(binding), left + width - 80, top + 14 + b * (fm.getHeight() + 2));
+            }
+        }
+    }
+
+    public ScalingViewer(ScalingResult result) {
+        super("Thread scaling - " + result.getDate().replace('T', ' '));
+        this.result = result;
+        JPanel plots = new JPanel(new GridLayout(1, 2));
+        plots.add(new Plot(false));
+        plots.add(new Plot(true));
+
+        StringBuilder text = new StringBuilder();
+        for (String binding : result.getBindings())
+            text.append(result.summary(binding)).append('\n');
+        JTextArea summary = new JTextArea(text.toString().trim());
+        summary.setEditable(false);
+        summary.setBorder(BorderFactory.createEmptyBorder(4, 6, 4, 6));
+
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(plots, BorderLayout.CENTER);
+        getContentPane().add(summary, BorderLayout.SOUTH);
+        setSize(760, 420);
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+}
@@ -0,0 +1,97 @@
+package quadrasoft.mufortran.fortran;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SourceUnit {
+    /*
+     * What the dependency scanner learned about one source file. Module names are
+     * lower case, submodules are named "ancestor@name" like gfortran's .smod files.
+     * A file with OpenMP directives needs -fopenmp.
+     */
+    private final String path;
+    private long lastModified;
+    private long size;
+    private String hash;
+    private boolean openMP;
+    private final List<String> modules = new ArrayList<String>();
+    private final List<String> submodules = new ArrayList<String>();
+    private final List<String> uses = new ArrayList<String>();
+    private final List<String> includes = new ArrayList<String>();
+
+    public SourceUnit(String path) {
+        this.path = path;
+    }
+
+    public void addInclude(String include) {
+        if (!includes.contains(include))
+            includes.add(include);
+    }
+
+    public void addModule(String module) {
+        if (!modules.contains(module))
+            modules.add(module);
+    }
+
+    public void addSubmodule(String submodule) {
+        if (!submodules.contains(submodule))
+            submodules.add(submodule);
+    }
+
+    public void addUse(String module) {
+        if (!uses.contains(module))
+            uses.add(module);
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public boolean isOpenMP() {
+        return openMP;
+    }
+
+    public void setOpenMP(boolean openMP) {
+        this.openMP = openMP;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public List<String> getModules() {
+        return modules;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public List<String> getSubmodules() {
+        return submodules;
+    }
+
+    public List<String> getUses() {
+        return uses;
+    }
+}
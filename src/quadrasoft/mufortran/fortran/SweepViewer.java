@@ -0,0 +1,100 @@
+package quadrasoft.mufortran.fortran;
+
+import quadrasoft.mufortran.fortran.binaryutils.RunMetrics;
+import quadrasoft.mufortran.fortran.binaryutils.SweepRun;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+@SuppressWarnings("serial")
+public class SweepViewer extends JFrame {
+    /*
+     * Summary of a parameter sweep, one row per run: its parameters, exit code,
+     * runtime, CPU time and peak memory. Failed runs are shown in red, a double
+     * click opens the folder of the run with its output.
+     */
+    private static final String[] columns = {"Run", "Exit", "Wall", "CPU", "Peak RSS", "Parameters"};
+
+    private final List<SweepRun> runs;
+
+    private class SweepModel extends AbstractTableModel {
+        @Override
+        public int getRowCount() {
+            return runs.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            SweepRun run = runs.get(row);
+            RunMetrics m = run.getMetrics();
+            if (m == null && column > 0 && column < 5)
+                return column == 1 ? "not run" : "";
+            switch (column) {
+                case 0:
+                    return run.getFolder().getName();
+                case 1:
+                    return String.valueOf(m.getExitCode());
+                case 2:
+                    return m.getWall() + " ms";
+                case 3:
+                    return m.getUser() < 0 ? "?" : (m.getUser() + Math.max(0, m.getSystem())) + " ms";
+                case 4:
+                    return m.getPeakRss() < 0 ? "?" : RunMetrics.bytes(m.getPeakRss() * 1024);
+                default:
+                    return run.getParameters();
+            }
+        }
+    }
+
+    public SweepViewer(File folder, List<SweepRun> runs) {
+        super("Sweep - " + folder.getName());
+        this.runs = runs;
+        setSize(800, 400);
+        JTable table = new JTable(new SweepModel());
+        table.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean selected,
+                                                           boolean focused, int row, int column) {
+                super.getTableCellRendererComponent(table, value, selected, focused, row, column);
+                if (!selected)
+                    setForeground(runs.get(row).isSuccess() ? table.getForeground() : Color.red);
+                return this;
+            }
+        });
+        table.getColumnModel().getColumn(5).setPreferredWidth(300);
+        table.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = table.rowAtPoint(e.getPoint());
+                if (e.getClickCount() == 2 && row >= 0 && Desktop.isDesktopSupported()) {
+                    try {
+                        Desktop.getDesktop().open(runs.get(row).getFolder());
+                    } catch (IOException | UnsupportedOperationException ex) {
+                        // No file manager to show it.
+                    }
+                }
+            }
+        });
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+        getContentPane().add(new JLabel(" " + folder.getPath()), BorderLayout.SOUTH);
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+}
@@ -0,0 +1,138 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import quadrasoft.mufortran.general.BuildOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+public class Benchmark {
+    /*
+     * Runs a program W times to warm the caches up, then N times measured, one run
+     * after the other. Nothing is read from the program while it runs: its standard
+     * output is discarded, its errors go to a file of the logs folder and its input
+     * comes from a file, the one recorded by the console for instance, or is empty.
+     * Each runtime is measured on the monotonic clock, see TimedRun.
+     *
+     * The BenchmarkResult is compared with the last one of another source revision
+     * of the configuration, then appended to its history. A significant slowdown
+     * ends the job with a warning.
+     */
+    public static final String recordedInput = "stdin-recorded.txt";
+    private static final String errors = "benchmark-stderr.log";
+
+    private final List<String> command;
+    private final File context;
+    private final File logs;
+    private final int warmups;
+    private final int runs;
+    private final File input;
+    private final String revision;
+    private final TimedRun timed;
+
+    public Benchmark(List<String> command, File context, File logs, int warmups, int runs, File input,
+                     String revision) {
+        // The input may be null, the program then reads end of file.
+        this.command = new ArrayList<String>(command);
+        this.context = context;
+        this.logs = logs;
+        this.warmups = warmups;
+        this.runs = runs;
+        this.input = input;
+        this.revision = revision;
+        this.timed = new TimedRun(command, context, new File(logs, errors), input);
+    }
+
+    public void cancel() {
+        timed.cancel();
+    }
+
+    public static String commit(File folder) {
+        // The git commit checked out in a folder or one above it, "-" outside of a repository.
+        for (File dir = folder.getAbsoluteFile(); dir != null; dir = dir.getParentFile()) {
+            File git = new File(dir, ".git");
+            if (!git.isDirectory())
+                continue;
+            try {
+                String head = new String(Files.readAllBytes(new File(git, "HEAD").toPath()), StandardCharsets.UTF_8)
+                        .trim();
+                if (!head.startsWith("ref: "))
+                    return head.substring(0, Math.min(12, head.length()));
+                String ref = head.substring(5);
+                File loose = new File(git, ref);
+                if (loose.isFile())
+                    return new String(Files.readAllBytes(loose.toPath()), StandardCharsets.UTF_8).trim()
+                            .substring(0, 12);
+                for (String line : Files.readAllLines(new File(git, "packed-refs").toPath(), StandardCharsets.UTF_8)) {
+                    if (line.endsWith(" " + ref))
+                        return line.substring(0, 12);
+                }
+            } catch (IOException | RuntimeException e) {
+                // A repository git itself would have to tell about.
+            }
+            return "-";
+        }
+        return "-";
+    }
+
+    public MagicBoxStatus run(BuildOutput output) {
+        logs.mkdirs();
+        if (input != null && !input.isFile()) {
+            output.message("Error: Benchmark input not found : " + input.getPath());
+            return MagicBoxStatus.FAILED;
+        }
+        double[] samples = new double[runs];
+        try {
+            for (int i = 0; i < warmups + runs; i++) {
+                double ms = timed.once(Collections.<String, String>emptyMap());
+                if (timed.isCancelled()) {
+                    output.message("Warning: Benchmark cancelled");
+                    return MagicBoxStatus.FAILED;
+                }
+                if (ms < 0) {
+                    output.message("Error: The program failed, its errors are in " + new File(logs, errors).getPath());
+                    return MagicBoxStatus.FAILED;
+                }
+                boolean warmup = i < warmups;
+                output.message(String.format(Locale.ROOT, "%s %d/%d: %.2f ms", warmup ? "Warm-up" : "Run",
+                        warmup ? i + 1 : i - warmups + 1, warmup ? warmups : runs, ms));
+                if (!warmup)
+                    samples[i - warmups] = ms;
+            }
+        } catch (IOException e) {
+            output.message("Error: Could not start " + command.get(0));
+            return MagicBoxStatus.FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return MagicBoxStatus.FAILED;
+        }
+
+        BenchmarkResult result = new BenchmarkResult(revision, commit(context), warmups, samples);
+        File history = new File(logs, BenchmarkResult.historyFile);
+        BenchmarkResult baseline = BenchmarkResult.baseline(BenchmarkResult.readHistory(history, output), revision);
+        result.appendHistory(history, output);
+        output.message("Benchmark: " + result.summary());
+        MagicBoxStatus status = MagicBoxStatus.FINE;
+        if (baseline != null) {
+            BenchmarkResult.Comparison comparison = result.compare(baseline);
+            String against = String.format(Locale.ROOT, "the baseline of %s (median %.2f ms): %+.1f%%, p = %.3f",
+                    baseline.getDate().replace('T', ' '), baseline.getMedian(), comparison.getChange() * 100,
+                    comparison.getDirectionalP());
+            if (comparison.isSlowdown()) {
+                output.message("Warning: Significantly slower than " + against);
+                status = MagicBoxStatus.WARNING;
+            } else if (comparison.isSpeedup()) {
+                output.message("Significantly faster than " + against);
+            } else {
+                output.message("No significant change from " + against);
+            }
+        }
+        output.programBenchmarked(result, baseline);
+        return status;
+    }
+}
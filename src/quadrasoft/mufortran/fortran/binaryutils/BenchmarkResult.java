@@ -0,0 +1,293 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import quadrasoft.mufortran.general.BuildOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+public class BenchmarkResult {
+    /*
+     * The runtimes of one Benchmark and their statistics: median, 95th percentile,
+     * mean and standard deviation, with 95% confidence intervals for the mean
+     * (Student's t) and for the median (order statistics, no assumption on the
+     * distribution, which is rarely normal for runtimes).
+     *
+     * compare() tells whether the runtimes are slower than those of a baseline
+     * with a one-sided Mann-Whitney U test: it only looks at the ranks of the
+     * samples, so a few runs disturbed by the machine do not decide. A slowdown
+     * is reported when p < 0.05 and the median grew by 2% at least: below that,
+     * long benchmarks find the drift of the machine itself significant.
+     *
+     * Results are appended to a CSV file in the logs folder of the configuration,
+     * one row per benchmark with every sample, in ms:
+     * date,revision,commit,warmups,runs,median_ms,p95_ms,mean_ms,stddev_ms,mean_ci_low,mean_ci_high,median_ci_low,median_ci_high,samples
+     */
+    public static final String historyFile = "benchmarks.csv";
+    public static final double significance = 0.05;
+    public static final double minimumChange = 0.02;
+    private static final String historyHeader = "date,revision,commit,warmups,runs,median_ms,p95_ms,mean_ms,stddev_ms,"
+            + "mean_ci_low,mean_ci_high,median_ci_low,median_ci_high,samples";
+    // Two-sided 95% quantiles of Student's t, for 1 to 30 degrees of freedom.
+    private static final double[] t95 = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228, 2.201,
+            2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086, 2.080, 2.074, 2.069, 2.064, 2.060, 2.056,
+            2.052, 2.048, 2.045, 2.042};
+
+    private final String date;
+    private final String revision;
+    private final String commit;
+    private final int warmups;
+    private final double[] samples;
+    private final double[] sorted;
+
+    public BenchmarkResult(String revision, String commit, int warmups, double[] samples) {
+        this(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date()), revision, commit, warmups, samples);
+    }
+
+    public BenchmarkResult(String date, String revision, String commit, int warmups, double[] samples) {
+        this.date = date;
+        this.revision = revision;
+        this.commit = commit;
+        this.warmups = warmups;
+        this.samples = samples.clone();
+        this.sorted = samples.clone();
+        Arrays.sort(sorted);
+    }
+
+    public static class Comparison {
+        private final double change;
+        private final double p;
+
+        Comparison(double change, double p) {
+            this.change = change;
+            this.p = p;
+        }
+
+        public double getChange() {
+            // Of the median, relative to the baseline.
+            return change;
+        }
+
+        public double getP() {
+            // One-sided, for "slower than the baseline".
+            return p;
+        }
+
+        public double getDirectionalP() {
+            // For the direction the median moved to, what the messages show.
+            return change < 0 ? 1 - p : p;
+        }
+
+        public boolean isSlowdown() {
+            return p < significance && change >= minimumChange;
+        }
+
+        public boolean isSpeedup() {
+            // The same test the other way round.
+            return 1 - p < significance && change <= -minimumChange;
+        }
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public String getRevision() {
+        return revision;
+    }
+
+    public String getCommit() {
+        return commit;
+    }
+
+    public int getWarmups() {
+        return warmups;
+    }
+
+    public int getRuns() {
+        return samples.length;
+    }
+
+    public double[] getSamples() {
+        return samples.clone();
+    }
+
+    private double rank(double position) {
+        // The value at a 1-based rank, clamped to the samples.
+        return sorted[(int) Math.max(0, Math.min(sorted.length - 1, position - 1))];
+    }
+
+    public double getMedian() {
+        int n = sorted.length;
+        if (n == 0)
+            return 0;
+        return n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2;
+    }
+
+    public double getPercentile95() {
+        // Nearest rank.
+        return rank(Math.ceil(0.95 * sorted.length));
+    }
+
+    public double getMean() {
+        double sum = 0;
+        for (double sample : samples)
+            sum += sample;
+        return samples.length == 0 ? 0 : sum / samples.length;
+    }
+
+    public double getStandardDeviation() {
+        // Of the samples, n - 1 in the denominator.
+        if (samples.length < 2)
+            return 0;
+        double mean = getMean();
+        double sum = 0;
+        for (double sample : samples)
+            sum += (sample - mean) * (sample - mean);
+        return Math.sqrt(sum / (samples.length - 1));
+    }
+
+    private static double t(int degrees) {
+        if (degrees <= t95.length)
+            return t95[Math.max(1, degrees) - 1];
+        return degrees <= 60 ? 2.000 : degrees <= 120 ? 1.980 : 1.960;
+    }
+
+    public double[] getMeanInterval() {
+        int n = samples.length;
+        double half = n < 2 ? 0 : t(n - 1) * getStandardDeviation() / Math.sqrt(n);
+        return new double[]{getMean() - half, getMean() + half};
+    }
+
+    public double[] getMedianInterval() {
+        // Ranks n/2 -+ 1.96 sqrt(n)/2, the whole range for a handful of runs.
+        int n = sorted.length;
+        double spread = 1.96 * Math.sqrt(n) / 2;
+        return new double[]{rank(Math.floor(n / 2.0 - spread)), rank(Math.ceil(1 + n / 2.0 + spread))};
+    }
+
+    private static double normal(double z) {
+        // Standard normal distribution function, Abramowitz and Stegun 7.1.26, within 1.5e-7.
+        double x = Math.abs(z) / Math.sqrt(2);
+        double t = 1 / (1 + 0.3275911 * x);
+        double erf = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741 + t * (-1.453152027
+                + t * 1.061405429)))) * Math.exp(-x * x);
+        return z >= 0 ? (1 + erf) / 2 : (1 - erf) / 2;
+    }
+
+    public Comparison compare(BenchmarkResult baseline) {
+        double[] a = samples;
+        double[] b = baseline.samples;
+        int n1 = a.length;
+        int n2 = b.length;
+        int n = n1 + n2;
+        double change = baseline.getMedian() == 0 ? 0 : getMedian() / baseline.getMedian() - 1;
+        if (n1 == 0 || n2 == 0)
+            return new Comparison(change, 1);
+        // Ranks of the pooled samples, ties get the mean of their ranks.
+        double[][] pooled = new double[n][];
+        for (int i = 0; i < n1; i++)
+            pooled[i] = new double[]{a[i], 1};
+        for (int i = 0; i < n2; i++)
+            pooled[n1 + i] = new double[]{b[i], 0};
+        Arrays.sort(pooled, (x, y) -> Double.compare(x[0], y[0]));
+        double ranks = 0;
+        double ties = 0;
+        for (int i = 0; i < n; ) {
+            int j = i;
+            while (j < n && pooled[j][0] == pooled[i][0])
+                j++;
+            double rank = (i + 1 + j) / 2.0;
+            for (int k = i; k < j; k++) {
+                if (pooled[k][1] == 1)
+                    ranks += rank;
+            }
+            double t = j - i;
+            ties += t * t * t - t;
+            i = j;
+        }
+        double u = ranks - n1 * (n1 + 1) / 2.0;
+        double mean = n1 * n2 / 2.0;
+        double variance = n1 * n2 / 12.0 * ((n + 1) - ties / ((double) n * (n - 1)));
+        if (variance <= 0)
+            return new Comparison(change, u > mean ? 0 : 1);
+        // Continuity corrected, large U means this run is slower.
+        double z = (u - mean - 0.5) / Math.sqrt(variance);
+        return new Comparison(change, 1 - normal(z));
+    }
+
+    public String summary() {
+        double[] mean = getMeanInterval();
+        double[] median = getMedianInterval();
+        return String.format(Locale.ROOT, "median %.2f ms [%.2f, %.2f], p95 %.2f ms, mean %.2f ms [%.2f, %.2f], "
+                        + "stddev %.2f ms, %d runs after %d warm-ups", getMedian(), median[0], median[1],
+                getPercentile95(), getMean(), mean[0], mean[1], getStandardDeviation(), getRuns(), warmups);
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    public synchronized void appendHistory(File file, BuildOutput output) {
+        List<String> rows = new ArrayList<String>();
+        if (!file.exists())
+            rows.add(historyHeader);
+        double[] mean = getMeanInterval();
+        double[] median = getMedianInterval();
+        List<String> values = new ArrayList<String>();
+        for (double sample : samples)
+            values.add(number(sample));
+        rows.add(date + "," + revision + "," + commit + "," + warmups + "," + samples.length + ","
+                + number(getMedian()) + "," + number(getPercentile95()) + "," + number(getMean()) + ","
+                + number(getStandardDeviation()) + "," + number(mean[0]) + "," + number(mean[1]) + ","
+                + number(median[0]) + "," + number(median[1]) + "," + String.join(" ", values));
+        try {
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), rows, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            output.message("Warning: Could not write benchmark history " + file.getPath());
+        }
+    }
+
+    public static List<BenchmarkResult> readHistory(File file, BuildOutput output) {
+        // Oldest first, the statistics are computed again from the samples.
+        List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+        if (!file.isFile())
+            return results;
+        try {
+            for (String row : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                String[] f = row.split(",");
+                if (f.length < 14 || row.startsWith("date,"))
+                    continue;
+                try {
+                    double[] samples = Arrays.stream(f[13].trim().split(" ")).mapToDouble(Double::parseDouble)
+                            .toArray();
+                    results.add(new BenchmarkResult(f[0], f[1], f[2], Integer.parseInt(f[3]), samples));
+                } catch (NumberFormatException e) {
+                    // A row cut by a crash.
+                }
+            }
+        } catch (IOException e) {
+            output.message("Warning: Could not read benchmark history " + file.getPath());
+        }
+        return results;
+    }
+
+    public static BenchmarkResult baseline(List<BenchmarkResult> history, String revision) {
+        // The last benchmark of another revision, or the last one when the sources did not change since.
+        for (int i = history.size() - 1; i >= 0; i--) {
+            if (!history.get(i).getRevision().equals(revision))
+                return history.get(i);
+        }
+        return history.isEmpty() ? null : history.get(history.size() - 1);
+    }
+}
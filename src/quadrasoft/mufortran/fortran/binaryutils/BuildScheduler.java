@@ -0,0 +1,510 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import quadrasoft.mufortran.fortran.DependencyGraph;
+import quadrasoft.mufortran.fortran.DependencyIndex;
+import quadrasoft.mufortran.fortran.Diagnostic;
+import quadrasoft.mufortran.fortran.DiagnosticParser;
+import quadrasoft.mufortran.fortran.Diagnostics;
+import quadrasoft.mufortran.fortran.SourceUnit;
+import quadrasoft.mufortran.general.BuildOutput;
+import quadrasoft.mufortran.general.Digests;
+import quadrasoft.mufortran.general.SwingOutput;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BuildScheduler {
+    /*
+     * Compiles every source file as its own gfortran process on a pool sized to the
+     * machine. A file using a module waits until the file defining it has produced
+     * its .mod in the object folder. In incremental mode a file is compiled only if
+     * its build.state record no longer matches or the interface of a module it uses
+     * changed: rebuilding a module without touching its interface stops there.
+     * Files that must be compiled are looked up in the compilation cache first.
+     * Given the sources of the whole project as scope, compiling a few files also
+     * compiles the stale files providing the modules they use, directly or not.
+     */
+    private final Job job;
+    private final DependencyIndex index;
+    private final List<String> options = new ArrayList<String>();
+    private final int workers;
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger upToDate = new AtomicInteger();
+    private final Map<String, String> interfaceHashes = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> includeHashes = new ConcurrentHashMap<String, String>();
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+    private final Set<String> requested = new HashSet<String>();
+    private List<String> scope;
+    private volatile boolean cancelled = false;
+    private boolean incremental = true;
+    private boolean openMP = false;
+    private BuildState buildState;
+    private CompilationCache cache;
+    private BuildOutput output = new SwingOutput();
+    private BuildTrace trace = new BuildTrace("Compile");
+    private DependencyGraph graph;
+    private String flagsHash;
+    private String compiler;
+    private int total;
+
+    public BuildScheduler(Job job, DependencyIndex index, List<String> options) {
+        this(job, index, options, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BuildScheduler(Job job, DependencyIndex index, List<String> options, int workers) {
+        this.job = job;
+        this.index = index;
+        this.options.addAll(options);
+        this.workers = Math.max(1, workers);
+    }
+
+    private static MagicBoxStatus worst(MagicBoxStatus a, MagicBoxStatus b) {
+        if (a == MagicBoxStatus.FAILED || b == MagicBoxStatus.FAILED)
+            return MagicBoxStatus.FAILED;
+        if (a == MagicBoxStatus.WARNING || b == MagicBoxStatus.WARNING)
+            return MagicBoxStatus.WARNING;
+        return MagicBoxStatus.FINE;
+    }
+
+    private static String shortName(String source) {
+        return new File(source).getName();
+    }
+
+    public static String objectName(String source) {
+        // gfortran -c writes the object next to the working directory under the source's base name.
+        String name = shortName(source);
+        int dot = name.lastIndexOf(".");
+        return (dot > 0 ? name.substring(0, dot) : name) + ".o";
+    }
+
+    public int getUpToDate() {
+        return upToDate.get();
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setScope(List<String> scope) {
+        // Where the providers of the modules used by the compiled files are looked for.
+        this.scope = scope;
+    }
+
+    private void log(String m) {
+        output.compilerOutput(m, new ArrayList<String>(), new ArrayList<Diagnostic>());
+    }
+
+    public void setTrace(BuildTrace trace) {
+        this.trace = trace;
+    }
+
+    public void setOutput(BuildOutput output) {
+        this.output = output;
+    }
+
+    public void setCache(CompilationCache cache) {
+        this.cache = cache;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public void setOpenMP(boolean openMP) {
+        // Builds with -fopenmp when a scanned source has OpenMP directives.
+        this.openMP = openMP;
+    }
+
+    private void addOpenMP() {
+        if (!openMP || options.contains("-fopenmp"))
+            return;
+        for (SourceUnit unit : graph.getUnits()) {
+            if (unit.isOpenMP()) {
+                List<String> accepted = Toolchain.shared().filter(job.getExecutableAbsolutePath(),
+                        Arrays.asList("-fopenmp"), output);
+                if (!accepted.isEmpty())
+                    log("OpenMP directives found, building with -fopenmp");
+                options.addAll(accepted);
+                return;
+            }
+        }
+    }
+
+    public void cancel() {
+        // Units not started yet give up, the running compilers are killed.
+        cancelled = true;
+        for (Process process : processes)
+            ProcessPump.destroyTree(process);
+    }
+
+    public MagicBoxStatus compile(List<String> sources) {
+        total = sources.size();
+        done.set(0);
+        if (total == 0)
+            return MagicBoxStatus.FINE;
+
+        long time1 = trace.now();
+        requested.clear();
+        requested.addAll(sources);
+        Set<String> scanned = new LinkedHashSet<String>(sources);
+        if (scope != null)
+            scanned.addAll(scope);
+        graph = index.update(new ArrayList<String>(scanned));
+        addOpenMP();
+        long time2 = trace.now();
+        trace.span("scan dependencies", "scan", time1, time2, index.getRescanned() + " rescanned");
+        log("Scanned dependencies of " + scanned.size() + " files in " + (time2 - time1) / 1000000 + " ms ("
+                + index.getRescanned() + " rescanned)");
+        if (scope != null)
+            sources = withPrerequisites(sources);
+        for (String module : graph.getDuplicateModules()) {
+            log("Warning: module " + module + " is defined in more than one file, using "
+                    + shortName(graph.getProvider(module)));
+        }
+        buildState = new BuildState(new File(job.getContext(), "build.state").getPath());
+        flagsHash = Digests.of(String.join("\u0000", options));
+        compiler = CompilerIdentity.of(job.getExecutableAbsolutePath());
+        upToDate.set(0);
+        interfaceHashes.clear();
+
+        Set<String> cyclic = new HashSet<String>();
+        for (List<String> cycle : graph.cycles()) {
+            List<String> names = new ArrayList<String>();
+            for (String source : cycle)
+                names.add(shortName(source));
+            log("Error: circular module dependency between " + String.join(", ", names));
+            cyclic.addAll(cycle);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, total));
+        Map<String, CompletableFuture<MagicBoxStatus>> units = new HashMap<String, CompletableFuture<MagicBoxStatus>>();
+        MagicBoxStatus state = MagicBoxStatus.FINE;
+        try {
+            for (String source : cyclic) {
+                done.incrementAndGet();
+                units.put(source, CompletableFuture.completedFuture(MagicBoxStatus.FAILED));
+            }
+            // Providers come first in this order, their futures exist when a dependent is scheduled.
+            for (String source : graph.topologicalOrder()) {
+                schedule(source, graph.getPrerequisites(source), units, pool);
+            }
+            for (String source : sources) {
+                CompletableFuture<MagicBoxStatus> unit = units.get(source);
+                if (unit == null) {
+                    // Depends on a file caught in a cycle.
+                    log("[" + done.incrementAndGet() + "/" + total + "] Skipped " + shortName(source)
+                            + ", a module it uses failed to compile");
+                    state = MagicBoxStatus.FAILED;
+                    continue;
+                }
+                state = worst(state, unit.join());
+            }
+        } finally {
+            pool.shutdown();
+            buildState.save(output);
+            if (cache != null)
+                cache.trim();
+        }
+        return state;
+    }
+
+    private List<String> withPrerequisites(List<String> sources) {
+        // The asked files and everything they need, the graph narrowed down to them.
+        Set<String> needed = new LinkedHashSet<String>();
+        for (String source : sources)
+            needed.addAll(graph.closure(source));
+        needed.addAll(sources);
+        List<SourceUnit> units = new ArrayList<SourceUnit>();
+        for (String source : needed)
+            units.add(graph.getUnit(source));
+        graph = new DependencyGraph(units);
+        total = needed.size();
+        if (total > sources.size())
+            log("Modules used come from " + (total - sources.size())
+                    + " more files, the stale ones are compiled first");
+        return new ArrayList<String>(needed);
+    }
+
+    private void schedule(String source, List<String> prerequisites,
+                          Map<String, CompletableFuture<MagicBoxStatus>> units, ExecutorService pool) {
+        List<CompletableFuture<MagicBoxStatus>> before = new ArrayList<CompletableFuture<MagicBoxStatus>>();
+        for (String prerequisite : prerequisites) {
+            before.add(units.get(prerequisite));
+        }
+
+        // Stamped when the last prerequisite completes, the wait for a worker starts there.
+        CompletableFuture<Long> ready = CompletableFuture.allOf(before.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> trace.now());
+        CompletableFuture<MagicBoxStatus> unit = ready.thenApplyAsync(queued -> {
+            trace.span(shortName(source), "queue", queued, trace.now());
+            if (cancelled) {
+                done.incrementAndGet();
+                return MagicBoxStatus.FAILED;
+            }
+            for (CompletableFuture<MagicBoxStatus> prerequisite : before) {
+                if (prerequisite.join() == MagicBoxStatus.FAILED) {
+                    log("[" + done.incrementAndGet() + "/" + total + "] Skipped " + shortName(source)
+                            + ", a module it uses failed to compile");
+                    return MagicBoxStatus.FAILED;
+                }
+            }
+            // Providers are done, their module files are final for this build.
+            long time1 = trace.now();
+            BuildState.Record current = fingerprint(source);
+            // Prerequisites are only rebuilt when stale, even for a full build of a file.
+            boolean fresh = (incremental || !requested.contains(source)) && isUpToDate(source, current);
+            trace.span(shortName(source), "check", time1, trace.now(), fresh ? "up to date" : "stale");
+            if (fresh) {
+                done.incrementAndGet();
+                upToDate.incrementAndGet();
+                return MagicBoxStatus.FINE;
+            }
+            Map<String, String> interfaces = providedInterfaces(source);
+            String key = cache == null ? null : cacheKey(source, current);
+            MagicBoxStatus result = key == null ? null : restoreUnit(source, key);
+            if (result == null)
+                result = compileUnit(source, key);
+            if (result == MagicBoxStatus.FAILED) {
+                buildState.forget(source);
+            } else {
+                buildState.record(source, current);
+                reportInterfaces(source, interfaces);
+            }
+            return result;
+        }, pool);
+        units.put(source, unit);
+    }
+
+    private BuildState.Record fingerprint(String source) {
+        SourceUnit unit = graph.getUnit(source);
+        List<String> includes = new ArrayList<String>();
+        for (String include : unit.getIncludes()) {
+            includes.add(include + "=" + includeHash(source, include));
+        }
+        BuildState.Record record = new BuildState.Record(unit.getHash(),
+                Digests.of(String.join("\u0000", includes)), flagsHash, compiler);
+        for (String module : unit.getUses()) {
+            String provider = graph.getProvider(module);
+            if (provider == null) {
+                // Built outside the project and found through -I, intrinsic modules are not.
+                File external = externalModule(module);
+                if (external != null)
+                    record.getInterfaces().put(module, interfaceHashes.computeIfAbsent(external.getAbsolutePath(),
+                            path -> ModuleInterface.hash(external)));
+            } else if (!provider.equals(source)) {
+                record.getInterfaces().put(module, interfaceHash(module));
+            }
+        }
+        // Submodules also depend on the private parts of their ancestor, under a key of their own.
+        for (String submodule : unit.getSubmodules()) {
+            String ancestor = submodule.substring(0, submodule.indexOf('@'));
+            String provider = graph.getProvider(ancestor);
+            if (provider != null && !provider.equals(source))
+                record.getInterfaces().put(ancestor + ".smod", interfaceHashes.computeIfAbsent(ancestor + ".smod",
+                        name -> ModuleInterface.descendantHash(new File(job.getContext()), ancestor)));
+        }
+        return record;
+    }
+
+    private String cacheKey(String source, BuildState.Record current) {
+        // Include folders are left out, the included files and the external modules
+        // found there are hashed already, so projects sharing sources share entries
+        // while one built against another version of a module does not. Debug
+        // information names the source.
+        List<String> flags = new ArrayList<String>();
+        for (int i = 0; i < options.size(); i++) {
+            if (options.get(i).equals("-I"))
+                i++;
+            else if (!options.get(i).startsWith("-I"))
+                flags.add(options.get(i));
+        }
+        List<String> parts = new ArrayList<String>();
+        parts.add(current.getSourceHash());
+        parts.add(current.getIncludesHash());
+        parts.add(String.join(" ", flags));
+        parts.add(current.getCompiler());
+        for (Map.Entry<String, String> module : current.getInterfaces().entrySet())
+            parts.add(module.getKey() + "=" + module.getValue());
+        for (String flag : flags) {
+            if (flag.startsWith("-g")) {
+                parts.add(source);
+                break;
+            }
+        }
+        return Digests.of(String.join("\u0000", parts));
+    }
+
+    private List<File> moduleFiles(String source) {
+        // The module files the compiler writes for a source, kept with its object in the cache.
+        List<File> files = new ArrayList<File>();
+        File folder = new File(job.getContext());
+        SourceUnit unit = graph.getUnit(source);
+        for (String module : unit.getModules()) {
+            files.add(ModuleInterface.fileFor(folder, module));
+            files.add(new File(folder, module + ".smod"));
+        }
+        for (String submodule : unit.getSubmodules())
+            files.add(ModuleInterface.fileFor(folder, submodule));
+        return files;
+    }
+
+    private String interfaceHash(String module) {
+        return interfaceHashes.computeIfAbsent(module,
+                name -> ModuleInterface.hash(new File(job.getContext()), name));
+    }
+
+    private Map<String, String> providedInterfaces(String source) {
+        // Interfaces as left by the previous build, read before the compiler replaces them.
+        Map<String, String> interfaces = new HashMap<String, String>();
+        if (graph.getDependents(source).isEmpty())
+            return interfaces;
+        for (String module : graph.getUnit(source).getModules()) {
+            interfaces.put(module, ModuleInterface.hash(new File(job.getContext()), module));
+        }
+        return interfaces;
+    }
+
+    private void reportInterfaces(String source, Map<String, String> before) {
+        // Tells whether the rebuild of a module reaches the files using it.
+        for (Map.Entry<String, String> module : before.entrySet()) {
+            if (module.getValue().equals(interfaceHash(module.getKey())))
+                log("Interface of module " + module.getKey() + " unchanged, its users are not recompiled");
+        }
+    }
+
+    private File externalModule(String module) {
+        // Looked up like gfortran does: in the object folder, where it runs, then in the -I folders.
+        List<String> folders = new ArrayList<String>();
+        folders.add(".");
+        for (int i = 0; i < options.size(); i++) {
+            String option = options.get(i);
+            if (option.equals("-I") && i + 1 < options.size())
+                folders.add(options.get(++i));
+            else if (option.startsWith("-I") && option.length() > 2)
+                folders.add(option.substring(2));
+        }
+        for (String folder : folders) {
+            File dir = new File(folder);
+            if (!dir.isAbsolute())
+                dir = new File(job.getContext(), folder);
+            File candidate = ModuleInterface.fileFor(dir, module);
+            if (candidate.isFile())
+                return candidate;
+        }
+        return null;
+    }
+
+    private String includeHash(String source, String include) {
+        // Looked up like gfortran does: next to the source first, then in the -I folders.
+        List<File> candidates = new ArrayList<File>();
+        candidates.add(new File(new File(source).getParentFile(), include));
+        for (String option : options) {
+            if (option.startsWith("-I") && option.length() > 2)
+                candidates.add(new File(option.substring(2), include));
+        }
+        for (File candidate : candidates) {
+            if (candidate.isFile()) {
+                return includeHashes.computeIfAbsent(candidate.getAbsolutePath(), path -> {
+                    try {
+                        return Digests.of(candidate.toPath());
+                    } catch (IOException e) {
+                        return "-";
+                    }
+                });
+            }
+        }
+        return "-";
+    }
+
+    private boolean isUpToDate(String source, BuildState.Record current) {
+        BuildState.Record previous = buildState.get(source);
+        if (!current.matches(previous))
+            return false;
+        if (!current.getInterfaces().equals(previous.getInterfaces()))
+            return false;
+        // The outputs must still be there, the .mod files are removed by "clear project".
+        if (!new File(job.getContext(), objectName(source)).isFile())
+            return false;
+        for (String module : graph.getUnit(source).getModules()) {
+            if (!new File(job.getContext(), module + ".mod").isFile())
+                return false;
+        }
+        return true;
+    }
+
+    private MagicBoxStatus compileUnit(String source, String key) {
+        List<String> commands = new ArrayList<String>();
+        commands.add(job.getExecutableAbsolutePath());
+        commands.add("-c");
+        commands.add(source);
+        commands.addAll(options);
+
+        ProcessBuilder builder = new ProcessBuilder(commands);
+        builder.directory(new File(job.getContext()));
+
+        List<String> lines = new ArrayList<String>();
+        MagicBoxStatus state = MagicBoxStatus.FINE;
+        long time1 = trace.now();
+        try {
+            Process p = builder.start();
+            processes.add(p);
+            if (cancelled)
+                ProcessPump.destroyTree(p);
+            trace.span(shortName(source), "start", time1, trace.now());
+            // Both pipes are drained together, lines are kept in the order they came.
+            ProcessPump pump = new ProcessPump(p, line -> lines.add(line.getText()));
+            if (pump.start().join() != 0)
+                state = MagicBoxStatus.FAILED;
+            processes.remove(p);
+        } catch (IOException e) {
+            output.message("Error: Could not start compiler.");
+            e.printStackTrace();
+            state = MagicBoxStatus.FAILED;
+        }
+        long time2 = trace.now();
+        state = report(source, lines, state, "compiled", (time2 - time1) / 1000000);
+        trace.span(shortName(source), "compile", time1, time2, state.toString());
+        if (key != null && state != MagicBoxStatus.FAILED)
+            cache.store(key, new File(job.getContext(), objectName(source)), moduleFiles(source), lines);
+        return state;
+    }
+
+    private MagicBoxStatus restoreUnit(String source, String key) {
+        // Null on a miss, the unit must then be compiled.
+        long time1 = trace.now();
+        List<String> lines = cache.restore(key, new File(job.getContext()), objectName(source));
+        long time2 = trace.now();
+        trace.span(shortName(source), "cache", time1, time2, lines == null ? "miss" : "hit");
+        if (lines == null)
+            return null;
+        return report(source, lines, MagicBoxStatus.FINE, "restored from cache", (time2 - time1) / 1000000);
+    }
+
+    private MagicBoxStatus report(String source, List<String> lines, MagicBoxStatus state, String verb,
+                                  long elapsed) {
+        // Publishes what the compiler said about the source and logs its output as one block.
+        List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+        DiagnosticParser parser = new DiagnosticParser(new File(job.getContext()), diagnostics::add);
+        for (String line : lines)
+            parser.feed(line);
+        parser.flush();
+        for (Diagnostic diagnostic : diagnostics) {
+            if (diagnostic.getSeverity() == Diagnostic.Severity.ERROR) {
+                state = MagicBoxStatus.FAILED;
+            } else if (diagnostic.getSeverity() == Diagnostic.Severity.WARNING && state == MagicBoxStatus.FINE) {
+                state = MagicBoxStatus.WARNING;
+            }
+        }
+        Diagnostics.publish(source, diagnostics);
+
+        String verdict = state == MagicBoxStatus.FAILED ? " failed" : " " + verb;
+        output.compilerOutput("[" + done.incrementAndGet() + "/" + total + "] " + shortName(source) + verdict
+                + " in " + elapsed + " ms", lines, diagnostics);
+        return state;
+    }
+}
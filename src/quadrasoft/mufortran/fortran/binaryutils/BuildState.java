@@ -0,0 +1,128 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import quadrasoft.mufortran.general.BuildOutput;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class BuildState {
+    /*
+     * What every object in the object folder was built from, saved as build.state so
+     * that unchanged translation units are not handed to the compiler again.
+     *
+     * Format, one record per line, tab separated:
+     * O source sourceHash includesHash flagsHash compilerIdentity, followed by
+     * U module interfaceHash for every project module the object was compiled against,
+     * and U ancestor.smod hash for the ancestor of a submodule.
+     */
+    private static final String header = "muFortran build state 2";
+
+    private final File file;
+    private final Map<String, Record> records = new ConcurrentHashMap<String, Record>();
+
+    public BuildState(String statePath) {
+        file = new File(statePath);
+        load();
+    }
+
+    public static class Record {
+        private final String sourceHash;
+        private final String includesHash;
+        private final String flagsHash;
+        private final String compiler;
+        private final Map<String, String> interfaces = new TreeMap<String, String>();
+
+        public Record(String sourceHash, String includesHash, String flagsHash, String compiler) {
+            this.sourceHash = sourceHash;
+            this.includesHash = includesHash;
+            this.flagsHash = flagsHash;
+            this.compiler = compiler;
+        }
+
+        public String getCompiler() {
+            return compiler;
+        }
+
+        public String getFlagsHash() {
+            return flagsHash;
+        }
+
+        public String getIncludesHash() {
+            return includesHash;
+        }
+
+        public Map<String, String> getInterfaces() {
+            return interfaces;
+        }
+
+        public String getSourceHash() {
+            return sourceHash;
+        }
+
+        public boolean matches(Record other) {
+            return other != null && sourceHash.equals(other.sourceHash) && includesHash.equals(other.includesHash)
+                    && flagsHash.equals(other.flagsHash) && compiler.equals(other.compiler);
+        }
+    }
+
+    public void forget(String source) {
+        records.remove(source);
+    }
+
+    public Record get(String source) {
+        return records.get(source);
+    }
+
+    private void load() {
+        if (!file.exists())
+            return;
+        try (BufferedReader br = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            if (!header.equals(br.readLine()))
+                return;
+            Record record = null;
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length == 6 && fields[0].equals("O")) {
+                    record = new Record(fields[2], fields[3], fields[4], fields[5]);
+                    records.put(fields[1], record);
+                } else if (fields.length == 3 && fields[0].equals("U") && record != null) {
+                    record.interfaces.put(fields[1], fields[2]);
+                }
+            }
+        } catch (IOException e) {
+            // Without a state everything is simply rebuilt.
+            records.clear();
+        }
+    }
+
+    public void record(String source, Record current) {
+        records.put(source, current);
+    }
+
+    public void save(BuildOutput output) {
+        try (BufferedWriter bw = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            bw.write(header);
+            bw.newLine();
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                Record record = entry.getValue();
+                bw.write("O\t" + entry.getKey() + "\t" + record.sourceHash + "\t" + record.includesHash + "\t"
+                        + record.flagsHash + "\t" + record.compiler);
+                bw.newLine();
+                for (Map.Entry<String, String> module : record.interfaces.entrySet()) {
+                    bw.write("U\t" + module.getKey() + "\t" + module.getValue());
+                    bw.newLine();
+                }
+            }
+        } catch (IOException e) {
+            output.message("Warning: Could not save build state " + file.getPath());
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import quadrasoft.mufortran.general.BuildOutput;
+import quadrasoft.mufortran.general.JsonOutput;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+public class BuildTrace {
+    /*
+     * Timeline of one job: queue wait, process start, compile time of every file,
+     * cache restores, link and run. Times come from System.nanoTime() and are kept
+     * relative to the creation of the trace. Spans are recorded from any thread and
+     * shown on one lane per thread.
+     *
+     * The trace is exported as Chrome trace events (chrome://tracing, Perfetto) and
+     * appended to a CSV history, one row per span:
+     * build,job,category,name,status,start_ms,duration_ms,thread
+     */
+    private static final String historyHeader = "build,job,category,name,status,start_ms,duration_ms,thread";
+
+    private final String job;
+    private final long origin;
+    private final String started = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date());
+    private final List<Span> spans = new ArrayList<Span>();
+    private final Map<Long, String> threads = new TreeMap<Long, String>();
+
+    public BuildTrace(String job) {
+        this(job, System.nanoTime());
+    }
+
+    public BuildTrace(String job, long origin) {
+        this.job = job;
+        this.origin = origin;
+    }
+
+    public static class Span {
+        private final String name;
+        private final String category;
+        private final long from;
+        private final long to;
+        private final long thread;
+        private final String status;
+
+        Span(String name, String category, long from, long to, long thread, String status) {
+            this.name = name;
+            this.category = category;
+            this.from = from;
+            this.to = to;
+            this.thread = thread;
+            this.status = status;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public long getDuration() {
+            return to - from;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private static String csv(String field) {
+        if (field.contains(",") || field.contains("\"") || field.contains("\n"))
+            return "\"" + field.replace("\"", "\"\"") + "\"";
+        return field;
+    }
+
+    public long now() {
+        return System.nanoTime();
+    }
+
+    public void span(String name, String category, long from, long to) {
+        span(name, category, from, to, "");
+    }
+
+    public synchronized void span(String name, String category, long from, long to, String status) {
+        Thread current = Thread.currentThread();
+        threads.put(current.getId(), current.getName());
+        spans.add(new Span(name, category, from - origin, to - origin, current.getId(), status));
+    }
+
+    public synchronized List<Span> getSpans() {
+        return new ArrayList<Span>(spans);
+    }
+
+    public String summary() {
+        // Tells which files dominate and whether the workers were kept busy.
+        long first = Long.MAX_VALUE;
+        long last = 0;
+        long busy = 0;
+        Span slowest = null;
+        for (Span span : getSpans()) {
+            boolean hit = span.category.equals("cache") && span.status.equals("hit");
+            if (!span.category.equals("compile") && !hit)
+                continue;
+            first = Math.min(first, span.from);
+            last = Math.max(last, span.to);
+            busy += span.getDuration();
+            if (slowest == null || span.getDuration() > slowest.getDuration())
+                slowest = span;
+        }
+        if (slowest == null)
+            return null;
+        long wall = Math.max(last - first, 1);
+        return String.format(Locale.ROOT, "Compile time %d ms over %d ms, parallelism %.1fx, slowest %s (%d ms)",
+                busy / 1000000, wall / 1000000, (double) busy / wall, slowest.name, slowest.getDuration() / 1000000);
+    }
+
+    public synchronized void writeChromeTrace(File file, BuildOutput output) {
+        try (BufferedWriter bw = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            bw.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+            bw.newLine();
+            bw.write("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"args\":{\"name\":" + JsonOutput.quote(job)
+                    + "}}");
+            for (Map.Entry<Long, String> thread : threads.entrySet()) {
+                bw.write(",");
+                bw.newLine();
+                bw.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + thread.getKey()
+                        + ",\"args\":{\"name\":" + JsonOutput.quote(thread.getValue()) + "}}");
+            }
+            for (Span span : spans) {
+                bw.write(",");
+                bw.newLine();
+                bw.write("{\"name\":" + JsonOutput.quote(span.name) + ",\"cat\":\"" + span.category
+                        + "\",\"ph\":\"X\",\"pid\":1,\"tid\":" + span.thread + ",\"ts\":" + span.from / 1000
+                        + ",\"dur\":" + (span.to - span.from) / 1000 + ",\"args\":{\"status\":"
+                        + JsonOutput.quote(span.status) + "}}");
+            }
+            bw.newLine();
+            bw.write("]}");
+            bw.newLine();
+        } catch (IOException e) {
+            output.message("Warning: Could not write build trace " + file.getPath());
+        }
+    }
+
+    public synchronized void appendHistory(File file, BuildOutput output) {
+        List<String> rows = new ArrayList<String>();
+        if (!file.exists())
+            rows.add(historyHeader);
+        for (Span span : spans) {
+            rows.add(started + "," + csv(job) + "," + span.category + "," + csv(span.name) + "," + csv(span.status)
+                    + "," + span.from / 1000000 + "," + (span.to - span.from) / 1000000 + "," + span.thread);
+        }
+        try {
+            Files.write(file.toPath(), rows, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            output.message("Warning: Could not write build history " + file.getPath());
+        }
+    }
+}
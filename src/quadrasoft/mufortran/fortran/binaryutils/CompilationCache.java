@@ -0,0 +1,183 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import quadrasoft.mufortran.general.BuildOutput;
+import quadrasoft.mufortran.general.Session;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CompilationCache {
+    /*
+     * Compiler outputs shared by every project of the user, stored by the hash of
+     * everything that went into them: source and included files, flags, compiler
+     * identity and the interfaces of the modules used. An entry is a folder holding
+     * the object, the module files and the compiler output, which is replayed on a
+     * hit so that warnings are not lost.
+     *
+     * Entries are written to a temporary folder and renamed into place, several
+     * builds may share the cache. The least recently used entries go first when the
+     * cache grows over its size limit.
+     */
+    private static final String objectFile = "object.o";
+    private static final String outputFile = "output.txt";
+    private static final long defaultLimit = 1024;
+
+    private final File folder;
+    private final long limit;
+    // Where the build using the cache reports.
+    private final BuildOutput output;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public CompilationCache(File folder, long limit, BuildOutput output) {
+        this.folder = folder;
+        this.limit = limit;
+        this.output = output;
+    }
+
+    public static CompilationCache shared(BuildOutput output) {
+        // Null when turned off in the options.
+        if ("false".equalsIgnoreCase(Session.parameter("CompilationCache")))
+            return null;
+        long megabytes = defaultLimit;
+        try {
+            if (Session.parameter("CompilationCacheSize") != null)
+                megabytes = Long.parseLong(Session.parameter("CompilationCacheSize").trim());
+        } catch (NumberFormatException e) {
+            output.message("Warning: Invalid compilation cache size, using " + defaultLimit + " MB");
+        }
+        File folder = new File(Session.getAppdatasoragefolder() + "cache/");
+        try {
+            folder.toPath();
+        } catch (InvalidPathException e) {
+            // The application folder name cannot be encoded with the system locale.
+            output.message("Warning: Compilation cache disabled, " + e.getMessage());
+            return null;
+        }
+        return new CompilationCache(folder, megabytes * 1024 * 1024, output);
+    }
+
+    private static void delete(Path path) {
+        try {
+            if (Files.isDirectory(path)) {
+                try (DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+                    for (Path child : children)
+                        delete(child);
+                }
+            }
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Another build may be removing it as well.
+        }
+    }
+
+    private static long size(File entry) {
+        long size = 0;
+        File[] files = entry.listFiles();
+        if (files != null) {
+            for (File file : files)
+                size += file.length();
+        }
+        return size;
+    }
+
+    private File entry(String key) {
+        return new File(new File(folder, key.substring(0, 2)), key.substring(2));
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    public List<String> restore(String key, File objects, String objectName) {
+        // Copies the outputs of a hit into the object folder, returns the compiler output or null on a miss.
+        File entry = entry(key);
+        File[] files = entry.listFiles();
+        if (files == null || !new File(entry, objectFile).isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(new File(entry, outputFile).toPath(), StandardCharsets.UTF_8);
+            for (File file : files) {
+                if (file.getName().equals(outputFile))
+                    continue;
+                String name = file.getName().equals(objectFile) ? objectName : file.getName();
+                Files.copy(file.toPath(), new File(objects, name).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            // Marks the entry as recently used.
+            entry.setLastModified(System.currentTimeMillis());
+            hits.incrementAndGet();
+            return lines;
+        } catch (IOException e) {
+            // Evicted while we were reading it.
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    public void store(String key, File object, List<File> modules, List<String> lines) {
+        File entry = entry(key);
+        if (entry.isDirectory())
+            return;
+        File temporary = new File(new File(folder, "tmp"), UUID.randomUUID().toString());
+        try {
+            Files.createDirectories(temporary.toPath());
+            Files.copy(object.toPath(), new File(temporary, objectFile).toPath());
+            for (File module : modules) {
+                if (module.isFile())
+                    Files.copy(module.toPath(), new File(temporary, module.getName()).toPath());
+            }
+            Files.write(new File(temporary, outputFile).toPath(), lines, StandardCharsets.UTF_8);
+            Files.createDirectories(entry.getParentFile().toPath());
+            Files.move(temporary.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            delete(temporary.toPath());
+            // Unless another build stored it in the meantime.
+            if (!entry.isDirectory())
+                output.message("Warning: Could not store " + object.getName() + " in the compilation cache");
+        }
+    }
+
+    public void trim() {
+        // Removes the least recently used entries until the cache is 10% under its limit.
+        File[] buckets = folder.listFiles();
+        if (buckets == null)
+            return;
+        List<File> entries = new ArrayList<File>();
+        long total = 0;
+        for (File bucket : buckets) {
+            File[] children = bucket.getName().equals("tmp") ? null : bucket.listFiles();
+            if (children == null)
+                continue;
+            for (File entry : children) {
+                entries.add(entry);
+                total += size(entry);
+            }
+        }
+        if (total <= limit)
+            return;
+        entries.sort(Comparator.comparingLong(File::lastModified));
+        long target = limit - limit / 10;
+        int evicted = 0;
+        for (File entry : entries) {
+            if (total <= target)
+                break;
+            total -= size(entry);
+            delete(entry.toPath());
+            evicted++;
+        }
+        output.message("Compilation cache trimmed, " + evicted + " entries evicted");
+    }
+}
@@ -1,22 +1,50 @@
 package quadrasoft.mufortran.fortran.binaryutils;
 
-import quadrasoft.mufortran.fortran.ExecutorConsole;
+import quadrasoft.mufortran.fortran.DaemonBuild;
+import quadrasoft.mufortran.fortran.DependencyIndex;
+import quadrasoft.mufortran.fortran.Diagnostic;
 import quadrasoft.mufortran.fortran.binaryutils.Job;
-import quadrasoft.mufortran.general.CompilerLog;
-import quadrasoft.mufortran.general.Log;
+import quadrasoft.mufortran.general.BuildOutput;
+import quadrasoft.mufortran.general.SwingOutput;
 
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
 
 public class Compiler extends Thread {
-    public BufferedReader bri;
-    public BufferedReader bre;
-    public BufferedWriter bw;
+    /*
+     * Runs one job: compiling, linking or executing. Everything it has to say goes to
+     * its BuildOutput, the IDE panels unless told otherwise. It can be started as a
+     * thread or run in place, the outcome is then read with getResult().
+     */
     MagicBoxStatus state;
     ProcessBuilder builder;
-    ExecutorConsole console = new ExecutorConsole();
+    private BuildOutput output = new SwingOutput();
+    private MagicBoxStatus result = MagicBoxStatus.IDLE;
+    private BuildTrace trace;
+    private String traceFolder;
+    // When the job was prepared, it waits in the queue from there.
+    private long queued = System.nanoTime();
     private Job job;
+    private DependencyIndex dependencyIndex;
+    private LinkState linkState;
+    private volatile boolean cancelled = false;
+    private volatile Process process;
+    private volatile BuildScheduler scheduler;
+    private NinjaBuild ninja;
+    private List<String> scope;
+    private File runLogFile;
+    private File runHistoryFile;
+    private RunMeter meter;
+    private Benchmark benchmark;
+    private Sweep sweep;
+    private Scaling scaling;
+    private MpiLaunch mpi;
+    private DaemonBuild remote;
+    private Runnable preparation;
+    private boolean openMP = false;
+    private String ninjaTarget;
+    private boolean incremental = true;
     private List<String> commands = new ArrayList<String>();
     private List<String> inputFiles = new ArrayList<String>();
     private List<String> outputFiles = new ArrayList<String>();
@@ -27,6 +55,29 @@ public class Compiler extends Thread {
         outputFiles.clear();
     }
 
+    public void cancel() {
+        // Kills whatever the job is running, with its children.
+        cancelled = true;
+        BuildScheduler running = scheduler;
+        if (running != null)
+            running.cancel();
+        if (ninja != null)
+            ninja.cancel();
+        if (benchmark != null)
+            benchmark.cancel();
+        if (sweep != null)
+            sweep.cancel();
+        if (scaling != null)
+            scaling.cancel();
+        Process p = process;
+        if (p != null)
+            ProcessPump.destroyTree(p);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
     public void clear() {
         inputFiles.clear();
         outputFiles.clear();
@@ -41,6 +92,101 @@ public class Compiler extends Thread {
         this.job = job;
     }
 
+    public List<String> getInputs() {
+        return inputFiles;
+    }
+
+    public BuildOutput getOutput() {
+        return output;
+    }
+
+    public void setOutput(BuildOutput output) {
+        this.output = output;
+    }
+
+    public MagicBoxStatus getResult() {
+        return result;
+    }
+
+    public BuildTrace getTrace() {
+        return trace;
+    }
+
+    public void setTraceFolder(String traceFolder) {
+        // Null keeps the trace in memory only.
+        this.traceFolder = traceFolder;
+    }
+
+    public void setDependencyIndex(DependencyIndex dependencyIndex) {
+        this.dependencyIndex = dependencyIndex;
+    }
+
+    public void setLinkState(LinkState linkState) {
+        // Null always links.
+        this.linkState = linkState;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public void setRunLog(File runLogFile) {
+        // Where a run writes its whole output, null keeps it on screen only.
+        this.runLogFile = runLogFile;
+    }
+
+    public void setRunHistory(File runHistoryFile) {
+        // Where the RunMetrics of a run are appended, null meters it for the output only.
+        this.runHistoryFile = runHistoryFile;
+    }
+
+    public void setBenchmark(Benchmark benchmark) {
+        // What a BENCHMARKING job runs.
+        this.benchmark = benchmark;
+    }
+
+    public void setSweep(Sweep sweep) {
+        // What a SWEEPING job runs.
+        this.sweep = sweep;
+    }
+
+    public void setScaling(Scaling scaling) {
+        // What a SCALING job runs.
+        this.scaling = scaling;
+    }
+
+    public void setOpenMP(boolean openMP) {
+        // A COMPILING job then adds -fopenmp when the scanned sources have OpenMP directives.
+        this.openMP = openMP;
+    }
+
+    public void setPreparation(Runnable preparation) {
+        // Run on the lane right before the job: probing the toolchain, choosing flags and
+        // the like, which would freeze the EDT the job is built on. It ends with init().
+        this.preparation = preparation;
+    }
+
+    public void setRemote(DaemonBuild remote) {
+        // What a REMOTE job hands to the build daemon.
+        this.remote = remote;
+    }
+
+    public void setMpi(MpiLaunch mpi) {
+        // An EXECUTING job then runs the program on the ranks of mpirun.
+        this.mpi = mpi;
+    }
+
+    public void setScope(List<String> scope) {
+        // The project sources, compiling a file then compiles the modules it uses first.
+        this.scope = scope;
+    }
+
+    public void setNinja(NinjaBuild ninja, String target) {
+        // Compiling or linking then means building that ninja target.
+        this.ninja = ninja;
+        this.ninjaTarget = target;
+    }
+
     public void init() {
         // init prepares the command buffer by filling it with basic options and files
         commands.clear();
@@ -56,8 +202,11 @@ public class Compiler extends Thread {
             commands.add("-o");
             commands.addAll(outputFiles);
             commands.addAll(inputFiles);
+            commands.addAll(options);
         } else if (job.getNature() == JobType.EXECUTING) {
-            commands.addAll(inputFiles);
+            // Started through the meter's wrapper when it has one.
+            meter = new RunMeter();
+            commands.addAll(meter.wrap(mpi == null ? inputFiles : mpi.command(inputFiles)));
         }
         System.out.println(commands);
 
@@ -67,7 +216,7 @@ public class Compiler extends Thread {
         builder.directory(new File(job.getContext()));
         // We like to get a separate error stream, easy to detect fails.
         builder.redirectErrorStream(false);
-
+        queued = System.nanoTime();
     }
 
     public void input(List<String> f) {
@@ -82,100 +231,244 @@ public class Compiler extends Thread {
         outputFiles.addAll(f);
     }
 
+    private String linkStamp() {
+        // Null when there is nothing to compare, a missing object for instance.
+        if (linkState == null || outputFiles.isEmpty())
+            return null;
+        try {
+            return LinkState.stamp(job.getExecutableAbsolutePath(), commands, inputFiles, options,
+                    job.getContext() == null ? null : new File(job.getContext()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void report(long elapsed) {
+        result = state;
+        if (state == MagicBoxStatus.FINE) {
+            output.message("Operation executed gracefully in " + String.valueOf(elapsed) + " ms");
+        } else if (state == MagicBoxStatus.WARNING) {
+            output.message("Warning: Operation executed with warnings" + String.valueOf(elapsed) + " ms"
+                    + ", check build log");
+        } else if (state == MagicBoxStatus.FAILED) {
+            output.message("Error: Operation failed in " + String.valueOf(elapsed) + " ms");
+        }
+    }
+
     @Override
     public void run() {
-        if (job.getNature() == JobType.EXECUTING) {
-            // Starting timestamp
-            long time1 = System.currentTimeMillis();
-            // We wake up the console
-            console.activate();
+        trace = new BuildTrace(job.getName(), queued);
+        long begin = trace.now();
+        trace.span(job.getName(), "queue", queued, begin);
+        runJob();
+        trace.span(job.getName(), "job", begin, trace.now(), String.valueOf(result));
+        if (traceFolder != null) {
+            new File(traceFolder).mkdirs();
+            trace.writeChromeTrace(new File(traceFolder, "trace-" + job.getNature().toString().toLowerCase() + ".json"),
+                    output);
+            trace.appendHistory(new File(traceFolder, "build-history.csv"), output);
+        }
+    }
+
+    private Process startProcess() throws IOException {
+        // A cancel coming in while the process starts still reaches it.
+        Process p = builder.start();
+        process = p;
+        if (cancelled)
+            ProcessPump.destroyTree(p);
+        return p;
+    }
+
+    private RunLog openRunLog() {
+        if (runLogFile == null)
+            return null;
+        try {
+            RunLog log = new RunLog(runLogFile);
+            output.programLogged(log);
+            return log;
+        } catch (IOException e) {
+            output.message("Warning: Could not write the run output to " + runLogFile.getPath());
+            return null;
+        }
+    }
+
+    private long binaryDate() {
+        // When the executable was built, runs of one build share it.
+        return inputFiles.isEmpty() ? 0 : new File(inputFiles.get(0)).lastModified();
+    }
+
+    private RunSupervisor startRun() throws IOException {
+        RunSupervisor run = RunSupervisor.start(builder);
+        process = run.getProcess();
+        if (cancelled)
+            ProcessPump.destroyTree(process);
+        return run;
+    }
+
+    private void runJob() {
+        if (cancelled) {
+            result = MagicBoxStatus.FAILED;
+            output.message("Warning: " + job.getName() + " cancelled");
+            return;
+        }
+        if (preparation != null) {
+            long started = trace.now();
+            preparation.run();
+            trace.span(job.getName(), "prepare", started, trace.now());
+        }
+        if (ninja != null && job.getNature() != JobType.EXECUTING) {
+            long time1 = System.nanoTime() / 1000000;
+            output.compilerReset();
+            long started = trace.now();
+            state = ninja.build(ninjaTarget, incremental, output);
+            trace.span(job.getName(), "ninja " + ninjaTarget, started, trace.now(), String.valueOf(state));
+            report(System.nanoTime() / 1000000 - time1);
+            this.cleanUp();
+            state = MagicBoxStatus.IDLE;
+        } else if (job.getNature() == JobType.BENCHMARKING) {
+            long started = trace.now();
+            result = benchmark.run(output);
+            trace.span(job.getName(), "benchmark", started, trace.now(), String.valueOf(result));
+        } else if (job.getNature() == JobType.SWEEPING) {
+            long started = trace.now();
+            result = sweep.run(output);
+            trace.span(job.getName(), "sweep", started, trace.now(), String.valueOf(result));
+        } else if (job.getNature() == JobType.SCALING) {
+            long started = trace.now();
+            result = scaling.run(output);
+            trace.span(job.getName(), "scaling", started, trace.now(), String.valueOf(result));
+        } else if (job.getNature() == JobType.REMOTE) {
+            long started = trace.now();
+            result = remote.run(output);
+            trace.span(job.getName(), "daemon", started, trace.now(), String.valueOf(result));
+        } else if (job.getNature() == JobType.EXECUTING) {
             try {
-                // Let's start the process
-                Process p = builder.start();
-                // Creating error and info streams. Creating also commands stream.
-                bri = new BufferedReader(new InputStreamReader(p.getInputStream()));
-                bre = new BufferedReader(new InputStreamReader(p.getErrorStream()));
-                bw = new BufferedWriter(new OutputStreamWriter(p.getOutputStream()));
-                // We bind the commands flow and the process control to the console.
-                console.bindFlows(bw, p);
-                console.setProcessRunning(true);
-                // Now we fetch the program's output.
-                String line;
-                while (p.isAlive()) {
-                    while ((line = bri.readLine()) != null) {
-                        ExecutorConsole.sendInfo(line);
-                    }
-                    while ((line = bre.readLine()) != null) {
-                        ExecutorConsole.sendError(line);
-                    }
-                }
-                // The program has ended.
-                console.setProcessRunning(false);
+                // Let's start the process, the output decides what to do with its input.
+                long started = trace.now();
+                RunSupervisor run = startRun();
+                trace.span(job.getName(), "start", started, run.getStarted());
+                meter.start(run.getProcess());
+                output.programStarted(run.getProcess());
+                RunLog log = openRunLog();
+                // Now we fetch the program's output until it exits, nothing is polled meanwhile.
+                int exitCode = run.supervise(line -> {
+                    if (log != null)
+                        log.append(line.getText(), line.isError());
+                    if (mpi != null)
+                        mpi.dispatch(line.getText(), line.isError(), output);
+                    else
+                        output.programOutput(line.getText(), line.isError());
+                }).join();
+                if (log != null)
+                    log.close();
+                result = exitCode == 0 ? MagicBoxStatus.FINE : MagicBoxStatus.FAILED;
+                trace.span(job.getName(), "run", run.getStarted(), run.getStarted() + run.getElapsedNanos(),
+                        "exit " + exitCode);
                 // We clear the runnable.
                 this.cleanUp();
-                // Ending timestamp
-                long time2 = System.currentTimeMillis();
-                // We notify the user within the console.
-                ExecutorConsole.sendInfo("Process terminated in " + String.valueOf(time2 - time1) + " ms");
+                // The program has ended, we notify the user with its monotonic runtime.
+                output.programEnded(exitCode, run.getElapsedMillis());
+                RunMetrics metrics = meter.stop(exitCode, run.getElapsedMillis(), binaryDate());
+                if (runHistoryFile != null)
+                    metrics.appendHistory(runHistoryFile, output);
+                output.programMetered(metrics);
+                if (mpi != null) {
+                    List<RunMetrics> ranks = mpi.ranks(metrics.getRun(), metrics.getBinary());
+                    output.programRanked(ranks);
+                }
 
             } catch (IOException e) {
-                Log.send(
+                result = MagicBoxStatus.FAILED;
+                output.message(
                         "Error: Could not start specified compiler. Consider checking it's path in the project options.");
                 e.printStackTrace();
             }
+        } else if (job.getNature() == JobType.COMPILING) {
+            // Each source is compiled on its own, in module order, by the scheduler.
+            long time1 = System.nanoTime() / 1000000;
+            state = MagicBoxStatus.WORKING;
+            output.compilerReset();
+            BuildScheduler scheduler = new BuildScheduler(job, dependencyIndex, options);
+            scheduler.setOutput(output);
+            scheduler.setTrace(trace);
+            scheduler.setIncremental(incremental);
+            scheduler.setScope(scope);
+            scheduler.setOpenMP(openMP);
+            CompilationCache cache = CompilationCache.shared(output);
+            scheduler.setCache(cache);
+            this.scheduler = scheduler;
+            if (cancelled)
+                scheduler.cancel();
+            state = scheduler.compile(inputFiles);
+            this.scheduler = null;
+            long time2 = System.nanoTime() / 1000000;
+            if (cancelled)
+                output.message("Warning: " + job.getName() + " cancelled");
+            if (incremental)
+                output.message(scheduler.getUpToDate() + " of " + scheduler.getTotal() + " files up to date");
+            if (cache != null)
+                output.message("Compilation cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+            if (trace.summary() != null)
+                output.message(trace.summary());
+            report(time2 - time1);
+            this.cleanUp();
+            state = MagicBoxStatus.IDLE;
         } else {
-            // Then we compile or link.
+            // Then we link.
 
             // We get starting timestamp
-            long time1 = System.currentTimeMillis();
+            long time1 = System.nanoTime() / 1000000;
             state = MagicBoxStatus.WORKING;
+            String executable = outputFiles.isEmpty() ? null : outputFiles.get(0);
+            String stamp = linkStamp();
+            if (incremental && stamp != null && linkState.upToDate(executable, stamp)) {
+                // Same objects, libraries and flags as the executable on disk.
+                output.compilerReset();
+                long now = trace.now();
+                trace.span(job.getName(), "link", now, now, "skipped");
+                output.message("Link skipped (up to date) : " + new File(executable).getName());
+                result = MagicBoxStatus.FINE;
+                this.cleanUp();
+                state = MagicBoxStatus.IDLE;
+                return;
+            }
             try {
-                Process p = builder.start();
-                // Check if it started gracefully
-                if (!p.isAlive()) {
-                    Log.send("Error: Could not start compiler.");
-                }
-                // Creating error and info streams.
-                BufferedReader bri = new BufferedReader(new InputStreamReader(p.getInputStream()));
-                BufferedReader bre = new BufferedReader(new InputStreamReader(p.getErrorStream()));
+                long started = trace.now();
+                Process p = startProcess();
+                trace.span(job.getName(), "start", started, trace.now());
                 // Ensuring the compiler log is empty.
-                CompilerLog.reset();
-                // Gathering output.
-                String line;
-                while ((line = bri.readLine()) != null) { // Classic pipe
-                    CompilerLog.send(line);
-                }
+                output.compilerReset();
                 state = MagicBoxStatus.FINE;
-                while ((line = bre.readLine()) != null) { // Error and warning pipe
-                    state = MagicBoxStatus.WARNING;
-                    if (line.contains("Error:")) {
-                        state = MagicBoxStatus.FAILED;
+                // Gathering both pipes as they come, errors and warnings arrive on stderr.
+                ProcessPump pump = new ProcessPump(p, line -> {
+                    if (line.isError()) {
+                        if (line.getText().contains("Error:"))
+                            state = MagicBoxStatus.FAILED;
+                        else if (state != MagicBoxStatus.FAILED)
+                            state = MagicBoxStatus.WARNING;
                     }
-                    CompilerLog.send(line);
-                }
-                long time2 = System.currentTimeMillis();
-
-                if (state == MagicBoxStatus.FINE) {
-                    Log.send("Operation executed gracefully in " + String.valueOf(time2 - time1) + " ms");
-                } else if (state == MagicBoxStatus.WARNING) {
-                    Log.send("Warning: Operation executed with warnings" + String.valueOf(time2 - time1) + " ms"
-                            + ", check build log");
-                } else if (state == MagicBoxStatus.FAILED) {
-                    Log.send("Error: Operation failed in " + String.valueOf(time2 - time1) + " ms");
+                    output.compilerOutput(line.getText(), new ArrayList<String>(), new ArrayList<Diagnostic>());
+                });
+                if (pump.start().join() != 0)
+                    state = MagicBoxStatus.FAILED;
+                trace.span(job.getName(), "link", started, trace.now(), String.valueOf(state));
+                if (linkState != null && executable != null) {
+                    // Only a successful link can be reused, a failed one may have left a partial file.
+                    if (state != MagicBoxStatus.FAILED && stamp != null)
+                        linkState.record(executable, stamp);
+                    else
+                        linkState.forget(executable);
+                    linkState.save(output);
                 }
-
-                // Clearing all the streams
-                bre.close();
-                bri.close();
-                // We wait for the process to end.
-                p.waitFor();
-                p.destroy();
+                long time2 = System.nanoTime() / 1000000;
+                report(time2 - time1);
 
                 this.cleanUp();
                 state = MagicBoxStatus.IDLE;
 
-            } catch (IOException | InterruptedException e) {
-                Log.send("Error: Could not start compiler.");
+            } catch (IOException e) {
+                result = MagicBoxStatus.FAILED;
+                output.message("Error: Could not start compiler.");
                 e.printStackTrace();
             }
         }
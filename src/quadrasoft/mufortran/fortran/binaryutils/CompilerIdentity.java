@@ -0,0 +1,48 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class CompilerIdentity {
+    /*
+     * Identifies the compiler behind a command so that objects built by another
+     * compiler are not reused. The version banner is read once per binary and
+     * modification date, by the Toolchain.
+     */
+    private static final Map<String, String> known = new HashMap<String, String>();
+
+    private CompilerIdentity() {
+    }
+
+    public static File resolve(String command) {
+        File file = new File(command);
+        if (file.isAbsolute() || command.contains("/") || command.contains("\\"))
+            return file;
+        String path = System.getenv("PATH");
+        if (path == null)
+            return file;
+        for (String folder : path.split(File.pathSeparator)) {
+            File candidate = new File(folder, command);
+            if (candidate.isFile() && candidate.canExecute())
+                return candidate;
+            candidate = new File(folder, command + ".exe");
+            if (candidate.isFile() && candidate.canExecute())
+                return candidate;
+        }
+        return file;
+    }
+
+    public static synchronized String of(String command) {
+        File binary = resolve(command);
+        String key = binary.getAbsolutePath() + "@" + binary.lastModified();
+        String identity = known.get(key);
+        if (identity == null) {
+            // The banner comes from the toolchain probes, kept across sessions.
+            Toolchain.Tool tool = Toolchain.shared().probe(command, Toolchain.Kind.COMPILER);
+            identity = key + " " + (tool == null ? "unknown" : tool.getVersion());
+            known.put(key, identity);
+        }
+        return identity;
+    }
+}
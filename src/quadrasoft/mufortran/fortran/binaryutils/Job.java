@@ -1,8 +1,7 @@
 package quadrasoft.mufortran.fortran.binaryutils;
 
-import quadrasoft.mufortran.fortran.binaryutils.JobType;
+import quadrasoft.mufortran.general.BuildOutput;
 
-import java.io.File;
 import java.util.List;
 
 public class Job {
@@ -15,9 +14,23 @@ public class Job {
 
     public Job(String nm, String exepath, JobType nt) {
         name = nm;
-        if (new File(exepath).exists() || exepath.equals("gfortran"))
-            executableAbsolutePath = exepath;
         nature = nt;
+        // Any command found on the PATH will do, not only gfortran.
+        if (exepath != null && !exepath.equals("") && CompilerIdentity.resolve(exepath).isFile())
+            executableAbsolutePath = exepath;
+    }
+
+    public void resolve(String exepath, BuildOutput output) {
+        // Picks the compiler once the job runs: falling back to another one probes the
+        // toolchain, which must not happen while the job is built on the EDT.
+        executableAbsolutePath = null;
+        if (exepath != null && !exepath.equals("") && CompilerIdentity.resolve(exepath).isFile()) {
+            executableAbsolutePath = exepath;
+        } else if (nature != JobType.EXECUTING) {
+            executableAbsolutePath = Toolchain.shared().defaultCompiler();
+            if (executableAbsolutePath != null)
+                output.message("Warning: Compiler " + exepath + " not found, using " + executableAbsolutePath);
+        }
     }
 
     public void addArgument(String argument) {
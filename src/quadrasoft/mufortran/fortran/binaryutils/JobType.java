@@ -1,5 +1,5 @@
 package quadrasoft.mufortran.fortran.binaryutils;
 
 public enum JobType {
-    LINKING, RUNNING, COMPILING, EXECUTING
+    LINKING, RUNNING, COMPILING, EXECUTING, BENCHMARKING, SWEEPING, SCALING, REMOTE
 }
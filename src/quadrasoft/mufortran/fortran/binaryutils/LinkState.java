@@ -0,0 +1,147 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import quadrasoft.mufortran.general.BuildOutput;
+import quadrasoft.mufortran.general.Digests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class LinkState {
+    /*
+     * What every executable was last linked from, saved as link.state in the object
+     * folder so that a link with the same inputs is skipped. The stamp of a link
+     * covers the compiler, the command, the content of every object and of the
+     * libraries named by the options, either as files or as -l. A -l is looked up
+     * like the linker does, in the -L folders, then LIBRARY_PATH and the system
+     * folders; when it cannot be found there the link cannot be proven up to date
+     * and has no stamp. Relative paths are taken from the folder the link runs in.
+     *
+     * Format, one record per line, tab separated: executable stamp
+     */
+    private static final String header = "muFortran link state 1";
+    private static final List<String> systemFolders = Arrays.asList("/usr/local/lib64", "/usr/local/lib",
+            "/lib/x86_64-linux-gnu", "/usr/lib/x86_64-linux-gnu", "/lib/aarch64-linux-gnu",
+            "/usr/lib/aarch64-linux-gnu", "/lib64", "/usr/lib64", "/lib", "/usr/lib");
+
+    private final File file;
+    private final Map<String, String> stamps = new TreeMap<String, String>();
+
+    public LinkState(String statePath) {
+        file = new File(statePath);
+        load();
+    }
+
+    public static String stamp(String compiler, List<String> commands, List<String> objects, List<String> options,
+                               File context) throws IOException {
+        List<String> parts = new ArrayList<String>();
+        parts.add(CompilerIdentity.of(compiler));
+        parts.add(String.join(" ", commands));
+        for (String object : objects)
+            parts.add(object + "=" + Digests.of(new File(object).toPath()));
+        for (File library : libraries(options, context)) {
+            // A library built again under the same name changes the executable too.
+            parts.add(library.getPath() + "=" + Digests.of(library.toPath()));
+        }
+        return Digests.of(String.join("\u0000", parts));
+    }
+
+    private static File resolve(File context, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(context, path);
+    }
+
+    private static List<File> libraries(List<String> options, File context) throws IOException {
+        List<File> folders = new ArrayList<File>();
+        for (int i = 0; i < options.size(); i++) {
+            if (options.get(i).equals("-L") && i + 1 < options.size())
+                folders.add(resolve(context, options.get(++i)));
+            else if (options.get(i).startsWith("-L"))
+                folders.add(resolve(context, options.get(i).substring(2)));
+        }
+        String libraryPath = System.getenv("LIBRARY_PATH");
+        if (libraryPath != null) {
+            for (String folder : libraryPath.split(File.pathSeparator)) {
+                if (!folder.isEmpty())
+                    folders.add(new File(folder));
+            }
+        }
+        for (String folder : systemFolders)
+            folders.add(new File(folder));
+
+        List<File> found = new ArrayList<File>();
+        for (String option : options) {
+            if (option.startsWith("-l") && option.length() > 2) {
+                // -lname for libname.so or libname.a, -l:file for that file name.
+                String name = option.substring(2);
+                List<String> names = name.startsWith(":") ? Arrays.asList(name.substring(1))
+                        : Arrays.asList("lib" + name + ".so", "lib" + name + ".a");
+                File library = null;
+                for (int f = 0; f < folders.size() && library == null; f++) {
+                    for (String candidate : names) {
+                        File file = new File(folders.get(f), candidate);
+                        if (file.isFile()) {
+                            library = file;
+                            break;
+                        }
+                    }
+                }
+                if (library == null)
+                    throw new IOException("Library not found: " + option);
+                found.add(library);
+            } else if (!option.startsWith("-") && resolve(context, option).isFile()) {
+                found.add(resolve(context, option));
+            }
+        }
+        return found;
+    }
+
+    public boolean upToDate(String executable, String stamp) {
+        return new File(executable).isFile() && stamp.equals(stamps.get(executable));
+    }
+
+    private void load() {
+        if (!file.exists())
+            return;
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !header.equals(lines.get(0)))
+                return;
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split("\t");
+                if (fields.length == 2)
+                    stamps.put(fields[0], fields[1]);
+            }
+        } catch (IOException e) {
+            // Without a state the next link simply happens.
+            stamps.clear();
+        }
+    }
+
+    public void forget(String executable) {
+        stamps.remove(executable);
+    }
+
+    public void record(String executable, String stamp) {
+        stamps.put(executable, stamp);
+    }
+
+    public void save(BuildOutput output) {
+        List<String> lines = new ArrayList<String>();
+        lines.add(header);
+        for (Map.Entry<String, String> entry : stamps.entrySet())
+            lines.add(entry.getKey() + "\t" + entry.getValue());
+        try {
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            output.message("Warning: Could not save link state " + file.getPath());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import quadrasoft.mufortran.general.Digests;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.util.zip.GZIPInputStream;
+
+public final class ModuleInterface {
+    /*
+     * Hash of what a gfortran module file exposes to the files using it. Since
+     * gfortran 4.9 .mod files are gzip compressed text, older ones are plain text.
+     * The first line names the source and compiler version and is left out, so a
+     * module rebuilt without interface changes keeps the same hash.
+     *
+     * A module with submodules also gets a <module>.smod describing its private
+     * parts. Only its descendant submodules read it, so it is hashed on its own by
+     * descendantHash() and left out of the hash the files using the module see.
+     */
+    private ModuleInterface() {
+    }
+
+    public static File fileFor(File folder, String module) {
+        // Submodules are written as ancestor@name.smod.
+        return new File(folder, module + (module.contains("@") ? ".smod" : ".mod"));
+    }
+
+    public static String hash(File folder, String module) {
+        File mod = fileFor(folder, module);
+        if (!mod.isFile())
+            return "-";
+        return hash(mod);
+    }
+
+    public static String descendantHash(File folder, String ancestor) {
+        // What the submodules of a module see beyond its public interface.
+        File smod = new File(folder, ancestor + ".smod");
+        if (!smod.isFile())
+            return "-";
+        return hash(smod);
+    }
+
+    public static String hash(File mod) {
+        try (InputStream in = open(mod)) {
+            MessageDigest digest = Digests.sha256();
+            byte[] buffer = new byte[64 * 1024];
+            boolean header = true;
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                int from = 0;
+                if (header) {
+                    while (from < read && buffer[from] != '\n')
+                        from++;
+                    if (from == read)
+                        continue;
+                    header = false;
+                    from++;
+                }
+                digest.update(buffer, from, read - from);
+            }
+            return Digests.toHex(digest.digest());
+        } catch (IOException e) {
+            return "-";
+        }
+    }
+
+    private static InputStream open(File mod) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(new FileInputStream(mod));
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        if (b1 == 0x1f && b2 == 0x8b)
+            return new GZIPInputStream(in);
+        return in;
+    }
+}
@@ -0,0 +1,149 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import quadrasoft.mufortran.general.BuildOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class MpiLaunch {
+    /*
+     * Runs a program on N local ranks through mpirun and tells their output apart.
+     * mpirun is asked to tag every line with the rank it comes from, --tag-output
+     * for Open MPI and -prepend-rank for the Hydra launchers of MPICH and Intel
+     * MPI; dispatch() takes the tag off and hands the line to the output of its
+     * rank. Lines mpirun writes itself carry no tag and go to the common output.
+     *
+     * Every rank runs under a shell which takes the time around it and, once it
+     * exited, writes its exit code, its CPU times and its I/O to a report of its
+     * own, the way RunMeter does for a whole run. ranks() reads them back as one
+     * RunMetrics per rank. The load imbalance is max / mean - 1 of the rank wall
+     * times: 0 when every rank took as long, 1 when the slowest took twice the
+     * average, and so as much time was spent waiting for it.
+     */
+    private static final Pattern tag = Pattern.compile("^\\[(?:\\d+,)?(\\d+)\\](?:<std(?:out|err)>)?:? ?");
+    // $0 is the report, named after the rank, the program and its arguments follow.
+    private static final String wrapper = "r=${OMPI_COMM_WORLD_RANK:-${PMI_RANK:-${PMIX_RANK:-0}}}; "
+            + "s=$(date +%s%N); \"$@\"; code=$?; e=$(date +%s%N); "
+            + "{ echo \"$code $s $e\"; cat /proc/$$/stat /proc/$$/io; } > \"$0-$r\" 2>/dev/null; exit $code";
+    private static final String reportName = "rank";
+
+    private final String mpirun;
+    private final boolean openMpi;
+    private final int ranks;
+    private final File reports;
+
+    public MpiLaunch(String mpirun, String version, int ranks, File reports) {
+        // The version is the banner of mpirun --version, it tells the launchers apart.
+        this.mpirun = mpirun;
+        this.openMpi = version.contains("Open MPI") || version.contains("OpenRTE");
+        this.ranks = ranks;
+        this.reports = reports;
+    }
+
+    public int getRanks() {
+        return ranks;
+    }
+
+    public List<String> command(List<String> program) {
+        // Reports of a previous run must not pass for this one's.
+        reports.mkdirs();
+        for (int r = 0; r < ranks; r++)
+            new File(reports, reportName + "-" + r).delete();
+        List<String> command = new ArrayList<String>(Arrays.asList(mpirun, "-np", String.valueOf(ranks)));
+        if (openMpi) {
+            command.add("--tag-output");
+            // Open MPI refuses more ranks than cores unless told.
+            if (ranks > Runtime.getRuntime().availableProcessors())
+                command.add("--oversubscribe");
+        } else {
+            command.add("-prepend-rank");
+        }
+        command.addAll(Arrays.asList("/bin/sh", "-c", wrapper, new File(reports, reportName).getAbsolutePath()));
+        command.addAll(program);
+        return command;
+    }
+
+    public int dispatch(String line, boolean error, BuildOutput output) {
+        // Returns the rank of the line, -1 for those of mpirun.
+        Matcher m = tag.matcher(line);
+        if (!m.find()) {
+            output.programOutput(line, error);
+            return -1;
+        }
+        int rank = Integer.parseInt(m.group(1));
+        output.programOutput(rank, line.substring(m.end()), error);
+        return rank;
+    }
+
+    public List<RunMetrics> ranks(String run, long binary) {
+        // One per rank, by rank; a rank killed before it could report has an exit code of -1 and no times.
+        List<RunMetrics> metrics = new ArrayList<RunMetrics>();
+        for (int r = 0; r < ranks; r++) {
+            int code = -1;
+            long wall = -1;
+            long[] exact = {-1, -1, -1, -1};
+            try {
+                List<String> lines = Files.readAllLines(new File(reports, reportName + "-" + r).toPath(),
+                        StandardCharsets.UTF_8);
+                String[] f = lines.get(0).trim().split(" ");
+                code = Integer.parseInt(f[0]);
+                wall = (Long.parseLong(f[2]) - Long.parseLong(f[1])) / 1000000;
+                if (lines.size() > 1)
+                    exact = RunMeter.report(lines.subList(1, lines.size()));
+            } catch (IOException | RuntimeException e) {
+                // Missing, cut, or written by a shell without nanoseconds in its date.
+            }
+            metrics.add(new RunMetrics(run + " rank " + r, binary, code, wall, exact[0], exact[1], -1, -1, -1,
+                    exact[2], exact[3]));
+        }
+        return metrics;
+    }
+
+    public static double imbalance(List<RunMetrics> ranks) {
+        // max / mean - 1 of the wall times, -1 when some are unknown.
+        long max = 0;
+        long sum = 0;
+        for (RunMetrics rank : ranks) {
+            if (rank.getWall() < 0)
+                return -1;
+            max = Math.max(max, rank.getWall());
+            sum += rank.getWall();
+        }
+        return sum == 0 ? 0 : max * (double) ranks.size() / sum - 1;
+    }
+
+    public static String summary(List<RunMetrics> ranks) {
+        RunMetrics slowest = null;
+        RunMetrics fastest = null;
+        long cpu = 0;
+        for (RunMetrics rank : ranks) {
+            if (rank.getWall() < 0)
+                continue;
+            if (slowest == null || rank.getWall() > slowest.getWall())
+                slowest = rank;
+            if (fastest == null || rank.getWall() < fastest.getWall())
+                fastest = rank;
+            cpu += Math.max(0, rank.getUser()) + Math.max(0, rank.getSystem());
+        }
+        if (slowest == null)
+            return ranks.size() + " ranks, no rank reported its times";
+        double imbalance = imbalance(ranks);
+        return String.format(Locale.ROOT, "%d ranks: wall %d ms (%s) to %d ms (%s), CPU %d ms in all, "
+                        + "load imbalance %s", ranks.size(), fastest.getWall(), name(fastest), slowest.getWall(),
+                name(slowest), cpu, imbalance < 0 ? "unknown" : String.format(Locale.ROOT, "%.1f%%",
+                        imbalance * 100));
+    }
+
+    private static String name(RunMetrics rank) {
+        String run = rank.getRun();
+        return run.substring(run.lastIndexOf("rank "));
+    }
+}
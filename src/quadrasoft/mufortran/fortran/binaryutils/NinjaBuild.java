@@ -0,0 +1,324 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import quadrasoft.mufortran.fortran.DependencyGraph;
+import quadrasoft.mufortran.fortran.DependencyIndex;
+import quadrasoft.mufortran.fortran.Diagnostic;
+import quadrasoft.mufortran.fortran.DiagnosticParser;
+import quadrasoft.mufortran.fortran.Diagnostics;
+import quadrasoft.mufortran.fortran.SourceUnit;
+import quadrasoft.mufortran.general.BuildOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.regex.Pattern;
+
+public class NinjaBuild {
+    /*
+     * Builds a project with ninja instead of the BuildScheduler. build.ninja is
+     * written in the object folder from the dependency graph before every build, and
+     * only rewritten when it changed: one edge per source, producing its object and
+     * the .mod files of the modules it defines, each source depending on the .mod
+     * files of the modules it uses. With restat a module recompiled without changes
+     * leaves its .mod untouched, and ninja stops there. The targets are "objects"
+     * for a compile and the executable for a link.
+     *
+     * ninja's status lines and the output of the failed commands are read back and
+     * sent to the BuildOutput as one block per source, with their Diagnostics.
+     */
+    public static final String OBJECTS = "objects";
+
+    private static final String file = "build.ninja";
+    private static final Pattern plain = Pattern.compile("[A-Za-z0-9_./=+,:@%-]+");
+    private static final Pattern status = Pattern.compile("^\\[\\d+/\\d+\\] .*");
+
+    private final String ninja;
+    private final Job job;
+    private final DependencyIndex index;
+    private final List<String> sources = new ArrayList<String>();
+    private final List<String> options = new ArrayList<String>();
+    private final List<String> linkOptions = new ArrayList<String>();
+    private String executable;
+    private BuildOutput output;
+    private volatile Process process;
+    private volatile boolean cancelled = false;
+
+    // Block being read from ninja's output.
+    private String header;
+    private String source;
+    private boolean failed;
+    private boolean command;
+    private List<String> lines = new ArrayList<String>();
+    private MagicBoxStatus state;
+
+    public NinjaBuild(String ninja, Job job, DependencyIndex index) {
+        // The job gives the compiler and the object folder, where ninja runs.
+        this.ninja = ninja;
+        this.job = job;
+        this.index = index;
+    }
+
+    public void setSources(List<String> sources, List<String> options) {
+        this.sources.addAll(sources);
+        this.options.addAll(options);
+    }
+
+    public void setExecutable(String executable, List<String> linkOptions) {
+        this.executable = executable;
+        this.linkOptions.addAll(linkOptions);
+    }
+
+    public String getExecutable() {
+        return executable;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        Process p = process;
+        if (p != null)
+            ProcessPump.destroyTree(p);
+    }
+
+    private static String path(String path) {
+        // Escaped for the build lines of a ninja file.
+        return path.replace("$", "$$").replace(" ", "$ ").replace(":", "$:");
+    }
+
+    private static String argument(String argument) {
+        // Quoted for the shell ninja runs the commands with, then escaped for ninja.
+        if (!plain.matcher(argument).matches())
+            argument = "\"" + argument.replace("\\", "\\\\").replace("\"", "\\\"").replace("`", "\\`")
+                    .replace("$", "\\$") + "\"";
+        return argument.replace("$", "$$");
+    }
+
+    private static String arguments(List<String> arguments) {
+        List<String> quoted = new ArrayList<String>();
+        for (String a : arguments)
+            quoted.add(argument(a));
+        return String.join(" ", quoted);
+    }
+
+    private List<String> includes(SourceUnit unit) {
+        // Included files found like gfortran finds them, missing ones are left to the compiler.
+        List<String> found = new ArrayList<String>();
+        for (String include : unit.getIncludes()) {
+            List<File> candidates = new ArrayList<File>();
+            candidates.add(new File(new File(unit.getPath()).getParentFile(), include));
+            for (String option : options) {
+                if (option.startsWith("-I") && option.length() > 2)
+                    candidates.add(new File(option.substring(2), include));
+            }
+            for (File candidate : candidates) {
+                if (candidate.isFile()) {
+                    found.add(candidate.getAbsolutePath());
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static List<String> ancestors(SourceUnit unit) {
+        // The modules the submodules of a unit descend from.
+        List<String> found = new ArrayList<String>();
+        for (String submodule : unit.getSubmodules())
+            found.add(submodule.substring(0, submodule.indexOf('@')));
+        return found;
+    }
+
+    public String generate(DependencyGraph graph) {
+        File folder = new File(job.getContext());
+        StringBuilder sb = new StringBuilder();
+        sb.append("# Written by muFortran before every ninja build, changes are lost.\n");
+        sb.append("ninja_required_version = 1.5\n\n");
+        sb.append("fc = ").append(argument(job.getExecutableAbsolutePath())).append("\n");
+        sb.append("fflags = ").append(arguments(options)).append("\n");
+        sb.append("ldflags = ").append(arguments(linkOptions)).append("\n\n");
+        sb.append("rule fc\n  command = $fc -c $in $fflags\n  description = FC $in\n  restat = 1\n\n");
+        sb.append("rule link\n  command = $fc -o $out $in $ldflags\n  description = LINK $out\n\n");
+
+        // Modules with submodules also write M.smod, which their submodules are compiled against.
+        Set<String> ancestors = new HashSet<String>();
+        for (SourceUnit unit : graph.getUnits())
+            ancestors.addAll(ancestors(unit));
+        List<String> objects = new ArrayList<String>();
+        for (String path : graph.topologicalOrder()) {
+            SourceUnit unit = graph.getUnit(path);
+            String object = BuildScheduler.objectName(path);
+            objects.add(object);
+            List<String> outputs = new ArrayList<String>();
+            outputs.add(path(object));
+            for (String module : unit.getModules()) {
+                // A module defined twice is produced by the file the graph picked only.
+                if (path.equals(graph.getProvider(module))) {
+                    outputs.add(path(ModuleInterface.fileFor(folder, module).getName()));
+                    if (ancestors.contains(module))
+                        outputs.add(path(module + ".smod"));
+                }
+            }
+            for (String submodule : unit.getSubmodules()) {
+                if (path.equals(graph.getProvider(submodule)))
+                    outputs.add(path(ModuleInterface.fileFor(folder, submodule).getName()));
+            }
+            List<String> implicit = new ArrayList<String>();
+            for (String module : unit.getUses()) {
+                String provider = graph.getProvider(module);
+                if (provider == null || provider.equals(path))
+                    continue;
+                // A submodule reads its parent M from M.smod, a nested one from M@parent.smod.
+                String name = ancestors(unit).contains(module) ? module + ".smod"
+                        : ModuleInterface.fileFor(folder, module).getName();
+                implicit.add(path(name));
+            }
+            for (String include : includes(unit))
+                implicit.add(path(include));
+            sb.append("build ").append(String.join(" ", outputs)).append(": fc ").append(path(path));
+            if (!implicit.isEmpty())
+                sb.append(" | ").append(String.join(" ", implicit));
+            sb.append("\n");
+        }
+        sb.append("\nbuild ").append(OBJECTS).append(": phony");
+        for (String object : objects)
+            sb.append(" ").append(path(object));
+        sb.append("\n");
+        if (executable != null) {
+            sb.append("build ").append(path(executable)).append(": link");
+            for (String object : objects)
+                sb.append(" ").append(path(object));
+            sb.append("\n\ndefault ").append(path(executable)).append("\n");
+        } else {
+            sb.append("\ndefault ").append(OBJECTS).append("\n");
+        }
+        return sb.toString();
+    }
+
+    private boolean write(String text) {
+        File target = new File(job.getContext(), file);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        try {
+            // Left alone when nothing changed, so its date tells when the project last did.
+            if (target.isFile() && Arrays.equals(Files.readAllBytes(target.toPath()), bytes))
+                return true;
+            target.getParentFile().mkdirs();
+            Files.write(target.toPath(), bytes);
+            return true;
+        } catch (IOException e) {
+            output.message("Error: Could not write " + target.getPath());
+            return false;
+        }
+    }
+
+    private void flush() {
+        if (header == null && lines.isEmpty())
+            return;
+        List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+        DiagnosticParser parser = new DiagnosticParser(new File(job.getContext()), diagnostics::add);
+        for (String line : lines)
+            parser.feed(line);
+        parser.flush();
+        MagicBoxStatus block = failed ? MagicBoxStatus.FAILED : MagicBoxStatus.FINE;
+        for (Diagnostic diagnostic : diagnostics) {
+            if (diagnostic.getSeverity() == Diagnostic.Severity.ERROR)
+                block = MagicBoxStatus.FAILED;
+            else if (diagnostic.getSeverity() == Diagnostic.Severity.WARNING && block == MagicBoxStatus.FINE)
+                block = MagicBoxStatus.WARNING;
+        }
+        if (source != null)
+            Diagnostics.publish(source, diagnostics);
+        if (block == MagicBoxStatus.FAILED)
+            state = MagicBoxStatus.FAILED;
+        else if (block == MagicBoxStatus.WARNING && state == MagicBoxStatus.FINE)
+            state = MagicBoxStatus.WARNING;
+        output.compilerOutput(header == null ? "ninja" : header + (failed ? " failed" : ""), lines, diagnostics);
+        header = null;
+        source = null;
+        failed = false;
+        command = false;
+        lines = new ArrayList<String>();
+    }
+
+    private void read(String line) {
+        if (status.matcher(line).matches()) {
+            // [3/12] FC /home/me/solver/src/grid.f90
+            flush();
+            String description = line.substring(line.indexOf("] ") + 2);
+            if (description.startsWith("FC ")) {
+                source = description.substring(3);
+                header = line.substring(0, line.indexOf("] ") + 2) + new File(source).getName();
+            } else if (description.startsWith("LINK ")) {
+                header = line.substring(0, line.indexOf("] ") + 2) + "link "
+                        + new File(description.substring(5)).getName();
+            } else {
+                header = line;
+            }
+        } else if (line.startsWith("FAILED: ")) {
+            // The failed command comes next and is left out, its output follows.
+            failed = true;
+            command = true;
+        } else if (command) {
+            command = false;
+        } else if (line.startsWith("ninja: ")) {
+            flush();
+            if (line.startsWith("ninja: error") || line.startsWith("ninja: build stopped")) {
+                state = MagicBoxStatus.FAILED;
+                output.message("Error: " + line.substring(7));
+            } else if (line.startsWith("ninja: no work to do")) {
+                output.message("Nothing to do, everything is up to date");
+            } else if (!line.startsWith("ninja: Entering directory")) {
+                output.message(line);
+            }
+        } else {
+            lines.add(line);
+        }
+    }
+
+    private int run(List<String> arguments) throws IOException {
+        List<String> commands = new ArrayList<String>();
+        commands.add(ninja);
+        commands.add("-f");
+        commands.add(file);
+        commands.addAll(arguments);
+        ProcessBuilder builder = new ProcessBuilder(commands);
+        builder.directory(new File(job.getContext()));
+        Process p = builder.start();
+        process = p;
+        if (cancelled)
+            ProcessPump.destroyTree(p);
+        p.getOutputStream().close();
+        int code = new ProcessPump(p, line -> read(line.getText())).start().join();
+        process = null;
+        flush();
+        return code;
+    }
+
+    public MagicBoxStatus build(String target, boolean incremental, BuildOutput output) {
+        this.output = output;
+        this.state = MagicBoxStatus.FINE;
+        DependencyGraph graph = index.update(sources);
+        for (List<String> cycle : graph.cycles()) {
+            List<String> names = new ArrayList<String>();
+            for (String path : cycle)
+                names.add(new File(path).getName());
+            output.message("Error: circular module dependency between " + String.join(", ", names));
+            return MagicBoxStatus.FAILED;
+        }
+        new File(job.getContext()).mkdirs();
+        if (!write(generate(graph)))
+            return MagicBoxStatus.FAILED;
+        try {
+            if (!incremental && run(Arrays.asList("-t", "clean")) != 0)
+                return MagicBoxStatus.FAILED;
+            // One compiler per core, as the BuildScheduler does.
+            int code = run(Arrays.asList("-j", String.valueOf(Runtime.getRuntime().availableProcessors()), target));
+            if (cancelled)
+                output.message("Warning: " + job.getName() + " cancelled");
+            return code == 0 && !cancelled ? state : MagicBoxStatus.FAILED;
+        } catch (IOException e) {
+            output.message("Error: Could not start ninja : " + ninja);
+            return MagicBoxStatus.FAILED;
+        }
+    }
+}
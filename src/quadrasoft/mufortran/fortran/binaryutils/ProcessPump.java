@@ -0,0 +1,177 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ProcessPump {
+    /*
+     * Drains the standard output and error of a process at the same time, each on
+     * its own reader thread, so the child never blocks on a full pipe. Lines are
+     * stamped when read and handed to the listener in that order by a single
+     * dispatcher thread. The queue between them is bounded: a listener that falls
+     * far behind makes the readers wait, and the child then waits on its pipe,
+     * instead of the lines piling up in memory. Completion is driven by
+     * Process.onExit(), nothing is polled.
+     *
+     * Lines end with \n or \r\n. A lone \r also ends a line, which is then handed
+     * out with its \r: progress counters rewrite their line that way, and consoles
+     * replace the line with the next one. A line longer than maxLine characters is
+     * handed out in pieces of that length.
+     */
+    private static final int bufferSize = 64 * 1024;
+    private static final int queueSize = 4096;
+    public static final int maxLine = 64 * 1024;
+    private static final AtomicLong threads = new AtomicLong();
+
+    private final Process process;
+    private final LineListener listener;
+    private final BlockingQueue<OutputLine> queue = new ArrayBlockingQueue<OutputLine>(queueSize);
+    private final AtomicLong sequence = new AtomicLong();
+    private final long started = System.nanoTime();
+    // Marks the end of one stream in the queue.
+    private final OutputLine endOfStream = new OutputLine(-1, 0, false, null);
+
+    public ProcessPump(Process process, LineListener listener) {
+        this.process = process;
+        this.listener = listener;
+    }
+
+    public interface LineListener {
+        void line(OutputLine line);
+    }
+
+    public static class OutputLine {
+        private final long sequence;
+        private final long nanos;
+        private final boolean error;
+        private final String text;
+
+        OutputLine(long sequence, long nanos, boolean error, String text) {
+            this.sequence = sequence;
+            this.nanos = nanos;
+            this.error = error;
+            this.text = text;
+        }
+
+        public long getNanos() {
+            // Monotonic time since the process was started.
+            return nanos;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public boolean isError() {
+            return error;
+        }
+    }
+
+    public static void destroyTree(Process process) {
+        // Children first, gfortran leaves f951 and as running behind a killed driver.
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    public long getStarted() {
+        return started;
+    }
+
+    private Thread reader(InputStream stream, boolean error) {
+        Thread thread = new Thread(() -> {
+            try (Reader reader = new InputStreamReader(stream)) {
+                char[] buffer = new char[bufferSize];
+                StringBuilder line = new StringBuilder();
+                boolean carriageReturn = false;
+                int read;
+                while ((read = reader.read(buffer)) >= 0) {
+                    for (int i = 0; i < read; i++) {
+                        char c = buffer[i];
+                        if (carriageReturn) {
+                            carriageReturn = false;
+                            if (c == '\n') {
+                                emit(line, error);
+                                continue;
+                            }
+                            emit(line.append('\r'), error);
+                        }
+                        if (c == '\n') {
+                            emit(line, error);
+                        } else if (c == '\r') {
+                            carriageReturn = true;
+                        } else {
+                            line.append(c);
+                            if (line.length() >= maxLine)
+                                emit(line, error);
+                        }
+                    }
+                }
+                if (carriageReturn)
+                    line.append('\r');
+                if (line.length() > 0)
+                    emit(line, error);
+            } catch (IOException e) {
+                // The stream was closed under us, the process is gone.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    queue.put(endOfStream);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, (error ? "stderr-" : "stdout-") + threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void emit(StringBuilder line, boolean error) throws InterruptedException {
+        // The queue hands out sequence numbers in arrival order, and blocks both readers while it is full.
+        synchronized (queue) {
+            queue.put(new OutputLine(sequence.getAndIncrement(), System.nanoTime() - started, error,
+                    line.toString()));
+        }
+        line.setLength(0);
+    }
+
+    public CompletableFuture<Integer> start() {
+        // Completes with the exit code once the process ended and every line was delivered.
+        CompletableFuture<Void> drained = new CompletableFuture<Void>();
+        Thread dispatcher = new Thread(() -> {
+            int open = 2;
+            try {
+                while (open > 0) {
+                    OutputLine line = queue.take();
+                    if (line == endOfStream) {
+                        open--;
+                    } else {
+                        try {
+                            listener.line(line);
+                        } catch (RuntimeException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+                drained.complete(null);
+            } catch (InterruptedException e) {
+                drained.completeExceptionally(e);
+            }
+        }, "dispatch-" + threads.incrementAndGet());
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        reader(process.getInputStream(), false).start();
+        reader(process.getErrorStream(), true).start();
+        return process.onExit().thenCombine(drained, (p, v) -> p.exitValue());
+    }
+}
@@ -0,0 +1,303 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import org.fife.util.DynamicIntArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+public class RunLog {
+    /*
+     * Everything a program run printed, spilled to a file under the logs folder of
+     * the project as it comes, so that runs printing gigabytes can be read back
+     * whole. The line index is built while writing: the offset of every 64th line
+     * is kept, a line is found from the closest one by scanning at most 63 line
+     * ends, which keeps the index small for billions of lines. Line numbers of
+     * standard error output are kept too. Readers map the file in windows and
+     * only see what was flushed, see publish().
+     *
+     * The file holds the output as the program wrote it: a line ending with \r is
+     * written without a line feed, the next line then rewrites it.
+     */
+    private static final int step = 64;
+    private static final int bufferSize = 1 << 20;
+    // Mapped windows, the file is read through a few of them at a time.
+    private static final int windowBits = 26;
+    private static final int windows = 8;
+    private static final int longestLine = 10000;
+
+    private final File file;
+    private final FileChannel channel;
+    private FileChannel reader;
+    private final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+    private final DynamicIntArray errors = new DynamicIntArray();
+    private final Map<Long, MappedByteBuffer> mapped = new LinkedHashMap<Long, MappedByteBuffer>(windows, 0.75f, true);
+    private volatile long[] checkpoints = new long[1024];
+    private long written = 0;
+    private long lines = 0;
+    private boolean lineOpen = false;
+    private int widest = 0;
+    private volatile long publishedBytes = 0;
+    private volatile long publishedLines = 0;
+    private volatile boolean closed = false;
+
+    public RunLog(File file) throws IOException {
+        this.file = file;
+        file.getParentFile().mkdirs();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    public static void prune(File folder, String prefix, int keep) {
+        // Keeps the last runs, a few of them can fill a disk.
+        File[] logs = folder.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".log"));
+        if (logs == null || logs.length <= keep)
+            return;
+        Arrays.sort(logs, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        for (int i = keep; i < logs.length; i++)
+            logs[i].delete();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public synchronized void append(String text, boolean error) {
+        boolean carriageReturn = text.endsWith("\r");
+        if (!lineOpen) {
+            // A new line starts here.
+            if (lines % step == 0) {
+                long[] index = checkpoints;
+                int slot = (int) (lines / step);
+                if (slot == index.length) {
+                    index = Arrays.copyOf(index, index.length * 2);
+                    checkpoints = index;
+                }
+                index[slot] = written;
+            }
+            if (error && lines < Integer.MAX_VALUE)
+                errors.add((int) lines);
+            lines++;
+        }
+        widest = Math.max(widest, Math.min(text.length(), longestLine));
+        write(text.getBytes(StandardCharsets.UTF_8));
+        if (!carriageReturn)
+            write(new byte[]{'\n'});
+        lineOpen = carriageReturn;
+    }
+
+    private void write(byte[] bytes) {
+        try {
+            if (closed)
+                return;
+            if (bytes.length > buffer.remaining())
+                flush();
+            if (bytes.length > buffer.capacity()) {
+                channel.write(ByteBuffer.wrap(bytes), written);
+            } else {
+                buffer.put(bytes);
+            }
+            written += bytes.length;
+        } catch (IOException e) {
+            // The disk is full or gone, the console still shows the output.
+            closed = true;
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        long position = written - buffer.remaining();
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+        buffer.clear();
+    }
+
+    public synchronized long publish() {
+        // Makes what was written so far readable, returns the number of lines readers can see.
+        try {
+            if (!closed && buffer.position() > 0)
+                flush();
+        } catch (IOException e) {
+            closed = true;
+        }
+        publishedBytes = written;
+        publishedLines = lines;
+        return lines;
+    }
+
+    public synchronized void close() {
+        // Writing is over, the file can still be read.
+        publish();
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing left to write anyway.
+        }
+    }
+
+    public synchronized void dispose() {
+        // Releases the mapped windows once nobody reads anymore.
+        mapped.clear();
+        try {
+            if (reader != null)
+                reader.close();
+        } catch (IOException e) {
+            // Closed already.
+        }
+        reader = null;
+    }
+
+    public long getLineCount() {
+        return publishedLines;
+    }
+
+    public synchronized int getWidestLine() {
+        // In characters, capped.
+        return widest;
+    }
+
+    public synchronized boolean isError(long line) {
+        if (line >= Integer.MAX_VALUE)
+            return false;
+        // Line numbers are added in order, a binary search finds them.
+        int low = 0;
+        int high = errors.getSize() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = errors.get(middle);
+            if (value < line)
+                low = middle + 1;
+            else if (value > line)
+                high = middle - 1;
+            else
+                return true;
+        }
+        return false;
+    }
+
+    private synchronized MappedByteBuffer window(long index) throws IOException {
+        long start = index << windowBits;
+        long length = Math.min(1L << windowBits, publishedBytes - start);
+        MappedByteBuffer window = mapped.get(index);
+        // Mapped before the file grew past it, mapped again.
+        if (window == null || window.capacity() < length) {
+            if (reader == null)
+                reader = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            window = reader.map(FileChannel.MapMode.READ_ONLY, start, length);
+            mapped.put(index, window);
+            if (mapped.size() > windows)
+                mapped.remove(mapped.keySet().iterator().next());
+        }
+        return window;
+    }
+
+    private int byteAt(long offset) throws IOException {
+        MappedByteBuffer window = window(offset >>> windowBits);
+        return window.get((int) (offset & ((1L << windowBits) - 1))) & 0xff;
+    }
+
+    private long lineEnd(long from, long limit) throws IOException {
+        // Offset of the first \n from the given one, the limit when there is none before it.
+        long offset = from;
+        while (offset < limit) {
+            long index = offset >>> windowBits;
+            long start = index << windowBits;
+            MappedByteBuffer window = window(index);
+            int end = (int) Math.min(window.capacity(), limit - start);
+            for (int i = (int) (offset - start); i < end; i++) {
+                if (window.get(i) == '\n')
+                    return start + i;
+            }
+            offset = start + end;
+        }
+        return limit;
+    }
+
+    public long offsetOf(long line) throws IOException {
+        // Where the line starts, from the closest checkpoint.
+        long offset = checkpoints[(int) (line / step)];
+        for (long skip = line % step; skip > 0 && offset < publishedBytes; skip--)
+            offset = lineEnd(offset, publishedBytes) + 1;
+        return offset;
+    }
+
+    public String line(long line) {
+        // The text shown for a line: what follows its last \r, long lines are cut.
+        if (line < 0 || line >= publishedLines)
+            return "";
+        try {
+            long start = offsetOf(line);
+            long end = lineEnd(start, Math.min(publishedBytes, start + longestLine * 4L));
+            byte[] bytes = new byte[(int) (end - start)];
+            for (int i = 0; i < bytes.length; i++)
+                bytes[i] = (byte) byteAt(start + i);
+            String text = new String(bytes, StandardCharsets.UTF_8);
+            String shown = text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+            return shown.substring(shown.lastIndexOf('\r') + 1);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    public long lineAt(long offset) throws IOException {
+        // The line holding the byte at the offset.
+        long[] index = checkpoints;
+        int low = 0;
+        int high = (int) ((publishedLines - 1) / step);
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (index[middle] <= offset)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        long line = (long) low * step;
+        for (long position = lineEnd(index[low], offset); position < offset; position = lineEnd(position + 1, offset))
+            line++;
+        return line;
+    }
+
+    public long find(String text, long fromLine, BooleanSupplier cancelled) throws IOException {
+        // The first line from the given one holding the text, -1 when none does. Each
+        // window is scanned in place, only matches running over its end read the next.
+        byte[] pattern = text.getBytes(StandardCharsets.UTF_8);
+        if (pattern.length == 0 || publishedLines == 0)
+            return -1;
+        long end = publishedBytes - pattern.length;
+        long offset = offsetOf(Math.min(fromLine, publishedLines - 1));
+        byte first = pattern[0];
+        while (offset <= end) {
+            if (cancelled.getAsBoolean())
+                return -1;
+            long index = offset >>> windowBits;
+            long start = index << windowBits;
+            MappedByteBuffer window = window(index);
+            int limit = (int) Math.min(window.capacity(), end + 1 - start);
+            for (int i = (int) (offset - start); i < limit; i++) {
+                if (window.get(i) != first)
+                    continue;
+                int j = 1;
+                while (j < pattern.length && (i + j < window.capacity() ? window.get(i + j)
+                        : (byte) byteAt(start + i + j)) == pattern[j])
+                    j++;
+                if (j == pattern.length)
+                    return lineAt(start + i);
+            }
+            offset = start + limit;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,206 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class RunMeter {
+    /*
+     * Meters a program run by sampling /proc/<pid> of the program and of every
+     * process it started: stat for the CPU times, status for the resident memory
+     * and the context switches, io for the bytes read and written. Samples come
+     * every 10 ms at first and half as often each time, down to four a second,
+     * which keeps short runs accurate and costs long ones nothing worth counting.
+     * The wall time is the one of the RunSupervisor.
+     *
+     * The JVM reaps the program as soon as it exits, so samples miss whatever it
+     * did after the last one, writing its results typically. Where /bin/sh is
+     * there, wrap() runs the program under a shell which waits for it, then
+     * writes its own stat and io to a report file: the kernel adds the CPU times
+     * and the I/O of a reaped child to its parent, so those of the program and
+     * everything it waited for are exact, as wait4() would give them. Context
+     * switches and memory still come from the samples.
+     *
+     * Sampled, each process is counted with the last values seen for it and
+     * children that came and went between two samples are missed. Peak RSS is the
+     * largest sum of the resident sets seen at once, or the high water mark of the
+     * largest single process when that is larger. Without /proc only the CPU time
+     * is known, from ProcessHandle, and counted as user time.
+     */
+    private static final File proc = new File("/proc");
+    // USER_HZ, the unit of the times in /proc/<pid>/stat; 100 on every Linux built these years.
+    private static final long ticks = 100;
+    private static final long firstPeriod = 10;
+    private static final long lastPeriod = 250;
+    // $0 is the report, the program and its arguments follow; its exit code is kept.
+    private static final String wrapper = "\"$@\"; code=$?; cat /proc/$$/stat /proc/$$/io > \"$0\" 2>/dev/null; "
+            + "exit $code";
+    private static final File shell = new File("/bin/sh");
+
+    private ProcessHandle root;
+    private File report;
+    private final boolean linux = new File(proc, "self/stat").isFile();
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "run meter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<Long, long[]> processes = new HashMap<Long, long[]>();
+    private final String run = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date());
+    private long period = firstPeriod;
+    private long peakRss = 0;
+    private long peakHighWater = 0;
+    private boolean stopped = false;
+
+    // Per process: user, system (ms), voluntary, involuntary, read, written.
+    private static final int USER = 0, SYSTEM = 1, VOLUNTARY = 2, INVOLUNTARY = 3, READ = 4, WRITTEN = 5;
+
+    public List<String> wrap(List<String> command) {
+        // The command to start instead, the same one where it cannot be wrapped.
+        if (!linux || !shell.canExecute() || command.isEmpty())
+            return command;
+        try {
+            report = File.createTempFile("run", ".meter");
+        } catch (IOException e) {
+            return command;
+        }
+        List<String> wrapped = new ArrayList<String>(Arrays.asList(shell.getPath(), "-c", wrapper,
+                report.getAbsolutePath()));
+        wrapped.addAll(command);
+        return wrapped;
+    }
+
+    public void start(Process process) {
+        this.root = process.toHandle();
+        sampler.execute(this::tick);
+    }
+
+    private synchronized void tick() {
+        if (stopped)
+            return;
+        long rss = 0;
+        // The wrapping shell itself is left out.
+        if (report == null)
+            rss += sample(root);
+        for (ProcessHandle child : (Iterable<ProcessHandle>) root.descendants()::iterator)
+            rss += sample(child);
+        peakRss = Math.max(peakRss, rss);
+        sampler.schedule(this::tick, period, TimeUnit.MILLISECONDS);
+        period = Math.min(lastPeriod, period * 2);
+    }
+
+    private static long field(List<String> lines, String name) {
+        // "VmHWM:	   12345 kB", in kB for the memory fields.
+        for (String line : lines) {
+            if (line.startsWith(name)) {
+                String value = line.substring(name.length()).trim();
+                int space = value.indexOf(' ');
+                return Long.parseLong(space < 0 ? value : value.substring(0, space));
+            }
+        }
+        return -1;
+    }
+
+    private long sample(ProcessHandle process) {
+        // Returns the resident set of the process in kB, 0 once it is gone.
+        long[] values = processes.computeIfAbsent(process.pid(), pid -> new long[]{-1, -1, -1, -1, -1, -1});
+        if (!linux) {
+            process.info().totalCpuDuration().ifPresent(cpu -> values[USER] = cpu.toMillis());
+            return 0;
+        }
+        String folder = "/proc/" + process.pid() + "/";
+        try {
+            String stat = new String(Files.readAllBytes(Paths.get(folder + "stat")), StandardCharsets.UTF_8);
+            // The name may hold spaces and parentheses, the fields start after the last one.
+            String[] f = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            long user = Long.parseLong(f[11]) * 1000 / ticks;
+            long system = Long.parseLong(f[12]) * 1000 / ticks;
+            List<String> status = Files.readAllLines(Paths.get(folder + "status"), StandardCharsets.UTF_8);
+            long rss = Math.max(0, field(status, "VmRSS:"));
+            peakHighWater = Math.max(peakHighWater, field(status, "VmHWM:"));
+            long voluntary = field(status, "voluntary_ctxt_switches:");
+            long involuntary = field(status, "nonvoluntary_ctxt_switches:");
+            values[USER] = user;
+            values[SYSTEM] = system;
+            values[VOLUNTARY] = voluntary;
+            values[INVOLUNTARY] = involuntary;
+            try {
+                // Everything that went through read() and write(), the pipes to the console included.
+                List<String> io = Files.readAllLines(Paths.get(folder + "io"), StandardCharsets.UTF_8);
+                values[READ] = field(io, "rchar:");
+                values[WRITTEN] = field(io, "wchar:");
+            } catch (IOException e) {
+                // Not readable for processes of other users, setuid ones for instance.
+            }
+            return rss;
+        } catch (IOException | RuntimeException e) {
+            // Exited between the listing and the reading, the last values stay.
+            return 0;
+        }
+    }
+
+    private long total(int field) {
+        long total = -1;
+        for (long[] values : processes.values()) {
+            if (values[field] >= 0)
+                total = Math.max(total, 0) + values[field];
+        }
+        return total;
+    }
+
+    static long[] report(List<String> lines) {
+        // The stat of a shell then its io: user and system ms, read and written bytes of everything it waited for.
+        String stat = lines.get(0);
+        String[] f = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+        // cutime and cstime, the shell's own time is not the program's.
+        long user = Long.parseLong(f[13]) * 1000 / ticks;
+        long system = Long.parseLong(f[14]) * 1000 / ticks;
+        return new long[]{user, system, field(lines, "rchar:"), field(lines, "wchar:")};
+    }
+
+    private long[] reported() {
+        // Null without a report.
+        if (report == null)
+            return null;
+        try {
+            List<String> lines = Files.readAllLines(report.toPath(), StandardCharsets.UTF_8);
+            if (lines.isEmpty())
+                return null;
+            return report(lines);
+        } catch (IOException | RuntimeException e) {
+            // Killed before the shell could write it.
+            return null;
+        } finally {
+            report.delete();
+        }
+    }
+
+    public synchronized RunMetrics stop(int exitCode, long wall, long binary) {
+        // Once the program exited, with its runtime from the RunSupervisor.
+        stopped = true;
+        sampler.shutdownNow();
+        // Unknown when the run was over before the first sample.
+        long peak = Math.max(peakRss, peakHighWater);
+        if (!linux || peak == 0)
+            peak = -1;
+        long[] exact = reported();
+        if (exact == null)
+            return new RunMetrics(run, binary, exitCode, wall, total(USER), total(SYSTEM), peak, total(VOLUNTARY),
+                    total(INVOLUNTARY), total(READ), total(WRITTEN));
+        boolean io = exact[2] >= 0;
+        return new RunMetrics(run, binary, exitCode, wall, exact[0], exact[1], peak, total(VOLUNTARY),
+                total(INVOLUNTARY), io ? exact[2] : total(READ), io ? exact[3] : total(WRITTEN));
+    }
+}
@@ -0,0 +1,165 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import quadrasoft.mufortran.general.BuildOutput;
+import quadrasoft.mufortran.general.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RunMetrics {
+    /*
+     * What one run of a program cost, as measured by its RunMeter: wall time, CPU
+     * time in user and system mode, peak resident memory, context switches and the
+     * bytes it read and wrote. Values the platform does not tell are -1.
+     *
+     * Runs of a project are appended to a CSV history in its logs folder, one row
+     * per run:
+     * run,binary,exit,wall_ms,user_ms,system_ms,peak_rss_kb,voluntary_switches,involuntary_switches,read_bytes,written_bytes
+     * binary is the modification time of the executable, rows with the same one ran
+     * the same build.
+     */
+    public static final String historyFile = "run-history.csv";
+    private static final String historyHeader = "run,binary,exit,wall_ms,user_ms,system_ms,peak_rss_kb,"
+            + "voluntary_switches,involuntary_switches,read_bytes,written_bytes";
+
+    private final String run;
+    private final long binary;
+    private final int exitCode;
+    private final long wall;
+    private final long user;
+    private final long system;
+    private final long peakRss;
+    private final long voluntarySwitches;
+    private final long involuntarySwitches;
+    private final long readBytes;
+    private final long writtenBytes;
+
+    public RunMetrics(String run, long binary, int exitCode, long wall, long user, long system, long peakRss,
+                      long voluntarySwitches, long involuntarySwitches, long readBytes, long writtenBytes) {
+        this.run = run;
+        this.binary = binary;
+        this.exitCode = exitCode;
+        this.wall = wall;
+        this.user = user;
+        this.system = system;
+        this.peakRss = peakRss;
+        this.voluntarySwitches = voluntarySwitches;
+        this.involuntarySwitches = involuntarySwitches;
+        this.readBytes = readBytes;
+        this.writtenBytes = writtenBytes;
+    }
+
+    public String getRun() {
+        return run;
+    }
+
+    public long getBinary() {
+        return binary;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public long getWall() {
+        // In milliseconds, as the other times.
+        return wall;
+    }
+
+    public long getUser() {
+        return user;
+    }
+
+    public long getSystem() {
+        return system;
+    }
+
+    public long getPeakRss() {
+        // In kilobytes.
+        return peakRss;
+    }
+
+    public long getVoluntarySwitches() {
+        return voluntarySwitches;
+    }
+
+    public long getInvoluntarySwitches() {
+        return involuntarySwitches;
+    }
+
+    public long getReadBytes() {
+        return readBytes;
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    public static String bytes(long bytes) {
+        if (bytes < 0)
+            return "?";
+        if (bytes < 1024)
+            return bytes + " B";
+        if (bytes < 1024 * 1024)
+            return String.format("%.1f kB", bytes / 1024.0);
+        if (bytes < 1024L * 1024 * 1024)
+            return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+
+    private static String value(long value, String unit) {
+        return value < 0 ? "?" : value + unit;
+    }
+
+    public String summary() {
+        // One line for the consoles.
+        return "wall " + wall + " ms, CPU " + value(user, " ms") + " user + " + value(system, " ms") + " system"
+                + ", peak RSS " + (peakRss < 0 ? "?" : bytes(peakRss * 1024))
+                + ", " + value(voluntarySwitches, "") + " voluntary / " + value(involuntarySwitches, "")
+                + " involuntary switches, read " + bytes(readBytes) + ", written " + bytes(writtenBytes);
+    }
+
+    public synchronized void appendHistory(File file, BuildOutput output) {
+        List<String> rows = new ArrayList<String>();
+        if (!file.exists())
+            rows.add(historyHeader);
+        rows.add(run + "," + binary + "," + exitCode + "," + wall + "," + user + "," + system + "," + peakRss + ","
+                + voluntarySwitches + "," + involuntarySwitches + "," + readBytes + "," + writtenBytes);
+        try {
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), rows, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            output.message("Warning: Could not write run history " + file.getPath());
+        }
+    }
+
+    public static List<RunMetrics> readHistory(File file) {
+        // Oldest first, rows that do not parse are skipped.
+        List<RunMetrics> runs = new ArrayList<RunMetrics>();
+        if (!file.isFile())
+            return runs;
+        try {
+            for (String row : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                String[] f = row.split(",");
+                if (f.length < 11 || row.startsWith("run,"))
+                    continue;
+                try {
+                    long[] v = Arrays.stream(f, 1, 11).mapToLong(Long::parseLong).toArray();
+                    runs.add(new RunMetrics(f[0], v[0], (int) v[1], v[2], v[3], v[4], v[5], v[6], v[7], v[8], v[9]));
+                } catch (NumberFormatException e) {
+                    // A row cut by a crash.
+                }
+            }
+        } catch (IOException e) {
+            Log.send("Warning: Could not read run history " + file.getPath());
+        }
+        return runs;
+    }
+}
@@ -0,0 +1,66 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+public class RunSupervisor {
+    /*
+     * Watches a program started from the IDE without taking CPU time away from it.
+     * The output is read by the blocking readers of a ProcessPump and the end of the
+     * run comes from Process.onExit(), so no thread wakes up unless the program
+     * writes or exits. The runtime is measured on the monotonic clock, from the
+     * moment the process was started to the moment it exited; draining the last
+     * lines of output afterwards is not counted.
+     */
+    private final Process process;
+    private final long started;
+    private volatile long ended = -1;
+
+    private RunSupervisor(Process process, long started) {
+        this.process = process;
+        this.started = started;
+    }
+
+    public static RunSupervisor start(ProcessBuilder builder) throws IOException {
+        Process process = builder.start();
+        return new RunSupervisor(process, System.nanoTime());
+    }
+
+    public Process getProcess() {
+        return process;
+    }
+
+    public long getStarted() {
+        return started;
+    }
+
+    public long getElapsedNanos() {
+        // Up to now while the program runs.
+        long end = ended;
+        return (end < 0 ? System.nanoTime() : end) - started;
+    }
+
+    public long getElapsedMillis() {
+        return getElapsedNanos() / 1000000;
+    }
+
+    public int waitFor() throws InterruptedException {
+        // For programs whose output goes to files, there is nothing to drain.
+        int code = process.waitFor();
+        if (ended < 0)
+            ended = System.nanoTime();
+        return code;
+    }
+
+    public CompletableFuture<Integer> supervise(ProcessPump.LineListener listener) {
+        // Completes with the exit code once the program exited and its output was delivered.
+        process.onExit().thenRun(() -> ended = System.nanoTime());
+        CompletableFuture<Integer> done = new ProcessPump(process, listener).start();
+        return done.thenApply(code -> {
+            // onExit callbacks may run in any order, the exit is stamped here at the latest.
+            if (ended < 0)
+                ended = System.nanoTime();
+            return code;
+        });
+    }
+}
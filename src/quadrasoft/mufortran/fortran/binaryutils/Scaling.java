@@ -0,0 +1,123 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import quadrasoft.mufortran.general.BuildOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class Scaling {
+    /*
+     * Runs an OpenMP program with 1, 2, 4... threads up to the number of cores,
+     * and with the number of cores itself, to see how far it scales. Each thread
+     * count is run N times after one warm-up run, measured like a Benchmark: the
+     * output is discarded, the errors go to a file of the logs folder and the
+     * input comes from a file or is empty. OMP_NUM_THREADS sets the threads. Each
+     * binding asked for, "close" or "spread" for instance, is measured once more
+     * with OMP_PROC_BIND set to it and OMP_PLACES to cores; the empty binding
+     * leaves both to the runtime.
+     */
+    private static final String errors = "scaling-stderr.log";
+
+    private final List<String> command;
+    private final File context;
+    private final File logs;
+    private final List<Integer> threads;
+    private final List<String> bindings;
+    private final int runs;
+    private final File input;
+    private final String revision;
+    private final TimedRun timed;
+
+    public Scaling(List<String> command, File context, File logs, List<Integer> threads, List<String> bindings,
+                   int runs, File input, String revision) {
+        this.command = new ArrayList<String>(command);
+        this.context = context;
+        this.logs = logs;
+        this.threads = new ArrayList<Integer>(threads);
+        this.bindings = new ArrayList<String>(bindings);
+        this.runs = runs;
+        this.input = input;
+        this.revision = revision;
+        this.timed = new TimedRun(command, context, new File(logs, errors), input);
+    }
+
+    public static List<Integer> threadCounts(int max) {
+        // Powers of two below max, then max.
+        List<Integer> counts = new ArrayList<Integer>();
+        for (int n = 1; n < max; n *= 2)
+            counts.add(n);
+        counts.add(Math.max(1, max));
+        return counts;
+    }
+
+    public void cancel() {
+        timed.cancel();
+    }
+
+    private double once(int threads, String binding) throws IOException, InterruptedException {
+        // The runtime in ms, -1 when the program failed.
+        Map<String, String> environment = new HashMap<String, String>();
+        environment.put("OMP_NUM_THREADS", String.valueOf(threads));
+        // The empty binding leaves both to the runtime, whatever the IDE was started with.
+        environment.put("OMP_PROC_BIND", binding.isEmpty() ? null : binding);
+        environment.put("OMP_PLACES", binding.isEmpty() ? null : "cores");
+        return timed.once(environment);
+    }
+
+    public MagicBoxStatus run(BuildOutput output) {
+        logs.mkdirs();
+        if (input != null && !input.isFile()) {
+            output.message("Error: Scaling input not found : " + input.getPath());
+            return MagicBoxStatus.FAILED;
+        }
+        output.message("Scaling over " + threads + " threads, " + runs + " runs each");
+        String commit = Benchmark.commit(context);
+        ScalingResult result = new ScalingResult(revision);
+        try {
+            for (String binding : bindings) {
+                for (int n : threads) {
+                    double[] samples = new double[runs];
+                    for (int i = -1; i < runs; i++) {
+                        double ms = once(n, binding);
+                        if (timed.isCancelled()) {
+                            output.message("Warning: Scaling cancelled");
+                            return MagicBoxStatus.FAILED;
+                        }
+                        if (ms < 0) {
+                            output.message("Error: The program failed with " + n + " threads, its errors are in "
+                                    + new File(logs, errors).getPath());
+                            return MagicBoxStatus.FAILED;
+                        }
+                        // The first run only warms up.
+                        if (i >= 0)
+                            samples[i] = ms;
+                    }
+                    ScalingResult.Point point = new ScalingResult.Point(binding, n,
+                            new BenchmarkResult(result.getDate(), revision, commit, 1, samples));
+                    result.add(point);
+                    output.message(String.format(Locale.ROOT, "%s, %d thread%s: median %.2f ms, speedup %.2f, "
+                                    + "efficiency %.0f%%", ScalingResult.name(binding), n, n == 1 ? "" : "s",
+                            point.getResult().getMedian(), result.getSpeedup(point),
+                            result.getEfficiency(point) * 100));
+                }
+            }
+        } catch (IOException e) {
+            output.message("Error: Could not start " + command.get(0));
+            return MagicBoxStatus.FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return MagicBoxStatus.FAILED;
+        }
+
+        result.appendHistory(new File(logs, ScalingResult.historyFile), output);
+        for (String binding : result.getBindings())
+            output.message("Scaling: " + result.summary(binding));
+        output.programScaled(result);
+        return MagicBoxStatus.FINE;
+    }
+}
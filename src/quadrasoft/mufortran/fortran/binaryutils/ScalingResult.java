@@ -0,0 +1,174 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import quadrasoft.mufortran.general.BuildOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+public class ScalingResult {
+    /*
+     * The runtimes of a Scaling, one BenchmarkResult per binding and thread count.
+     * The speedup of a point is the median of the single thread runs of its binding
+     * over its own median, the parallel efficiency that speedup over the threads.
+     * Strong scaling is said to break down at the first thread count where the
+     * efficiency falls under 50% or the speedup stops growing.
+     *
+     * Points are appended to a CSV file in the logs folder of the configuration:
+     * date,revision,binding,threads,runs,median_ms,speedup,efficiency,samples
+     */
+    public static final String historyFile = "scaling.csv";
+    public static final double efficiencyFloor = 0.5;
+    private static final String historyHeader = "date,revision,binding,threads,runs,median_ms,speedup,efficiency,"
+            + "samples";
+
+    public static class Point {
+        private final String binding;
+        private final int threads;
+        private final BenchmarkResult result;
+
+        public Point(String binding, int threads, BenchmarkResult result) {
+            this.binding = binding;
+            this.threads = threads;
+            this.result = result;
+        }
+
+        public String getBinding() {
+            // Empty when OMP_PROC_BIND was left to the runtime.
+            return binding;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public BenchmarkResult getResult() {
+            return result;
+        }
+    }
+
+    private final String date;
+    private final String revision;
+    private final List<Point> points = new ArrayList<Point>();
+
+    public ScalingResult(String revision) {
+        this(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date()), revision);
+    }
+
+    public ScalingResult(String date, String revision) {
+        this.date = date;
+        this.revision = revision;
+    }
+
+    public void add(Point point) {
+        points.add(point);
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public String getRevision() {
+        return revision;
+    }
+
+    public List<Point> getPoints() {
+        return points;
+    }
+
+    public List<String> getBindings() {
+        List<String> bindings = new ArrayList<String>();
+        for (Point point : points) {
+            if (!bindings.contains(point.getBinding()))
+                bindings.add(point.getBinding());
+        }
+        return bindings;
+    }
+
+    public List<Point> getPoints(String binding) {
+        // By thread count, as they were measured.
+        List<Point> selected = new ArrayList<Point>();
+        for (Point point : points) {
+            if (point.getBinding().equals(binding))
+                selected.add(point);
+        }
+        return selected;
+    }
+
+    public double getSpeedup(Point point) {
+        // Against the fewest threads measured with the binding, 1 thread unless asked otherwise.
+        List<Point> series = getPoints(point.getBinding());
+        Point reference = series.get(0);
+        for (Point p : series) {
+            if (p.getThreads() < reference.getThreads())
+                reference = p;
+        }
+        double median = point.getResult().getMedian();
+        return median <= 0 ? 0 : reference.getResult().getMedian() * reference.getThreads() / median;
+    }
+
+    public double getEfficiency(Point point) {
+        return getSpeedup(point) / point.getThreads();
+    }
+
+    public Point getBreakdown(String binding) {
+        // The first point that no longer scales, null when every one does.
+        double best = 0;
+        for (Point point : getPoints(binding)) {
+            double speedup = getSpeedup(point);
+            if (getEfficiency(point) < efficiencyFloor || speedup <= best)
+                return point;
+            best = speedup;
+        }
+        return null;
+    }
+
+    public static String name(String binding) {
+        return binding.isEmpty() ? "default" : binding;
+    }
+
+    public String summary(String binding) {
+        StringBuilder sb = new StringBuilder(name(binding)).append(':');
+        for (Point point : getPoints(binding))
+            sb.append(String.format(Locale.ROOT, " %d: %.2fx", point.getThreads(), getSpeedup(point)));
+        Point breakdown = getBreakdown(binding);
+        if (breakdown == null)
+            sb.append(", scales up to the last thread count");
+        else
+            sb.append(String.format(Locale.ROOT, ", breaks down at %d threads (efficiency %.0f%%)",
+                    breakdown.getThreads(), getEfficiency(breakdown) * 100));
+        return sb.toString();
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    public synchronized void appendHistory(File file, BuildOutput output) {
+        List<String> rows = new ArrayList<String>();
+        if (!file.exists())
+            rows.add(historyHeader);
+        for (Point point : points) {
+            List<String> values = new ArrayList<String>();
+            for (double sample : point.getResult().getSamples())
+                values.add(number(sample));
+            rows.add(date + "," + revision + "," + name(point.getBinding()) + "," + point.getThreads() + ","
+                    + values.size() + "," + number(point.getResult().getMedian()) + "," + number(getSpeedup(point))
+                    + "," + number(getEfficiency(point)) + "," + String.join(" ", values));
+        }
+        try {
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), rows, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            output.message("Warning: Could not write scaling history " + file.getPath());
+        }
+    }
+}
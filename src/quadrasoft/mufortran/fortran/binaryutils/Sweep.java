@@ -0,0 +1,241 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import quadrasoft.mufortran.general.BuildOutput;
+import quadrasoft.mufortran.general.OsUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Sweep {
+    /*
+     * Runs a program once per row of a parameter table, several rows at a time on
+     * a bounded pool, one per core by default. The table is a CSV file whose first
+     * line names the columns: "args" holds arguments added after those of the
+     * project, any other column sets the environment variable it is named after.
+     * Empty cells leave the variable alone, lines starting with # are skipped.
+     *
+     *   args,OMP_NUM_THREADS
+     *   --grid 64,1
+     *   "--grid 128 --title ""fine grid""",4
+     *
+     * Every run gets its own folder, run-001 and so on, which is its working
+     * directory and receives its stdout.txt and stderr.txt; SWEEP_RUN gives the
+     * number of the run and SWEEP_HOME the execution folder of the project, where
+     * input files usually are. Runs are metered by a RunMeter. The summary, one
+     * row per run with exit code, runtime, CPU and peak memory, is written to
+     * summary.csv next to the run folders and handed to the BuildOutput.
+     */
+    public static final String ARGUMENTS = "args";
+    public static final String summaryFile = "summary.csv";
+
+    private final List<String> command;
+    private final File home;
+    private final File folder;
+    private final List<SweepRun> runs = new ArrayList<SweepRun>();
+    private final int parallel;
+    private final Set<Process> running = Collections.synchronizedSet(new HashSet<Process>());
+    private volatile boolean cancelled = false;
+
+    public Sweep(List<String> command, File home, File folder, List<Map<String, String>> table, int parallel) {
+        // The command is the executable and the arguments of the project, the rows come from readTable().
+        this.command = new ArrayList<String>(command);
+        this.home = home;
+        this.folder = folder;
+        this.parallel = parallel > 0 ? parallel : Runtime.getRuntime().availableProcessors();
+        for (Map<String, String> row : table) {
+            List<String> arguments = new ArrayList<String>();
+            Map<String, String> environment = new LinkedHashMap<String, String>();
+            for (Map.Entry<String, String> cell : row.entrySet()) {
+                if (cell.getKey().equalsIgnoreCase(ARGUMENTS))
+                    arguments.addAll(OsUtils.splitArguments(cell.getValue()));
+                else if (!cell.getValue().isEmpty())
+                    environment.put(cell.getKey(), cell.getValue());
+            }
+            int index = runs.size() + 1;
+            runs.add(new SweepRun(index, arguments, environment, new File(folder, String.format("run-%03d", index))));
+        }
+    }
+
+    private static List<String> fields(String line) {
+        // One CSV line, double quotes group and "" stands for one.
+        List<String> fields = new ArrayList<String>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString().trim());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString().trim());
+        return fields;
+    }
+
+    public static List<Map<String, String>> readTable(File table) throws IOException {
+        List<Map<String, String>> rows = new ArrayList<Map<String, String>>();
+        List<String> header = null;
+        for (String line : Files.readAllLines(table.toPath(), StandardCharsets.UTF_8)) {
+            if (line.trim().isEmpty() || line.trim().startsWith("#"))
+                continue;
+            List<String> fields = fields(line);
+            if (header == null) {
+                header = fields;
+                continue;
+            }
+            Map<String, String> row = new LinkedHashMap<String, String>();
+            for (int i = 0; i < header.size(); i++)
+                row.put(header.get(i), i < fields.size() ? fields.get(i) : "");
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    public List<SweepRun> getRuns() {
+        return runs;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        synchronized (running) {
+            for (Process p : running)
+                ProcessPump.destroyTree(p);
+        }
+    }
+
+    private void run(SweepRun run, BuildOutput output, AtomicInteger done) {
+        if (cancelled)
+            return;
+        run.getFolder().mkdirs();
+        List<String> arguments = new ArrayList<String>(command);
+        arguments.addAll(run.getArguments());
+        RunMeter meter = new RunMeter();
+        ProcessBuilder builder = new ProcessBuilder(meter.wrap(arguments));
+        builder.directory(run.getFolder());
+        builder.environment().putAll(run.getEnvironment());
+        builder.environment().put("SWEEP_RUN", String.valueOf(run.getIndex()));
+        builder.environment().put("SWEEP_HOME", home.getAbsolutePath());
+        builder.redirectOutput(new File(run.getFolder(), "stdout.txt"));
+        builder.redirectError(new File(run.getFolder(), "stderr.txt"));
+        try {
+            RunSupervisor supervisor = RunSupervisor.start(builder);
+            Process process = supervisor.getProcess();
+            running.add(process);
+            if (cancelled)
+                ProcessPump.destroyTree(process);
+            process.getOutputStream().close();
+            meter.start(process);
+            int code = supervisor.waitFor();
+            running.remove(process);
+            run.setMetrics(meter.stop(code, supervisor.getElapsedMillis(), new File(command.get(0)).lastModified()));
+            RunMetrics m = run.getMetrics();
+            output.message(String.format("%s[%d/%d] %s exit %d in %d ms, peak RSS %s : %s",
+                    code == 0 ? "" : "Warning: ", done.incrementAndGet(), runs.size(), run.getFolder().getName(),
+                    code, m.getWall(), m.getPeakRss() < 0 ? "?" : RunMetrics.bytes(m.getPeakRss() * 1024),
+                    run.getParameters()));
+        } catch (IOException e) {
+            output.message("Error: Could not start " + command.get(0) + " for " + run.getFolder().getName());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeSummary() {
+        Set<String> variables = new LinkedHashSet<String>();
+        for (SweepRun run : runs)
+            variables.addAll(run.getEnvironment().keySet());
+        List<String> rows = new ArrayList<String>();
+        rows.add("run,exit,wall_ms,user_ms,system_ms,peak_rss_kb,folder,args"
+                + (variables.isEmpty() ? "" : "," + String.join(",", variables)));
+        for (SweepRun run : runs) {
+            RunMetrics m = run.getMetrics();
+            StringBuilder sb = new StringBuilder(String.valueOf(run.getIndex()));
+            if (m == null)
+                sb.append(",,,,,");
+            else
+                sb.append(',').append(m.getExitCode()).append(',').append(m.getWall()).append(',').append(m.getUser())
+                        .append(',').append(m.getSystem()).append(',').append(m.getPeakRss());
+            sb.append(',').append(run.getFolder().getName());
+            sb.append(',').append(csv(String.join(" ", run.getArguments())));
+            for (String variable : variables)
+                sb.append(',').append(csv(run.getEnvironment().getOrDefault(variable, "")));
+            rows.add(sb.toString());
+        }
+        try {
+            Files.write(new File(folder, summaryFile).toPath(), rows, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // The output still has every run.
+        }
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0)
+            return value;
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    public MagicBoxStatus run(BuildOutput output) {
+        if (runs.isEmpty()) {
+            output.message("Error: The parameter table has no row");
+            return MagicBoxStatus.FAILED;
+        }
+        folder.mkdirs();
+        int threads = Math.min(parallel, runs.size());
+        output.message("Sweep of " + runs.size() + " runs, " + threads + " at a time, in " + folder.getPath());
+        long started = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger done = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (SweepRun run : runs)
+            futures.add(pool.submit(() -> run(run, output, done)));
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        pool.shutdown();
+        writeSummary();
+
+        int failed = 0;
+        for (SweepRun run : runs) {
+            if (!run.isSuccess())
+                failed++;
+        }
+        long elapsed = (System.nanoTime() - started) / 1000000;
+        output.sweepEnded(folder, runs);
+        if (cancelled) {
+            output.message("Warning: Sweep cancelled");
+            return MagicBoxStatus.FAILED;
+        }
+        if (failed > 0) {
+            output.message("Warning: " + failed + " of " + runs.size() + " runs failed, sweep done in " + elapsed
+                    + " ms");
+            return MagicBoxStatus.WARNING;
+        }
+        output.message("Sweep of " + runs.size() + " runs done in " + elapsed + " ms, summary in "
+                + new File(folder, summaryFile).getPath());
+        return MagicBoxStatus.FINE;
+    }
+}
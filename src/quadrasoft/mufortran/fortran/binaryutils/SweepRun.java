@@ -0,0 +1,65 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SweepRun {
+    /*
+     * One row of a Sweep: the arguments and environment variables it adds, the
+     * folder the program ran in and what the run cost. The metrics are null when
+     * the program could not be started or the sweep was cancelled before.
+     */
+    private final int index;
+    private final List<String> arguments;
+    private final Map<String, String> environment;
+    private final File folder;
+    private RunMetrics metrics;
+
+    public SweepRun(int index, List<String> arguments, Map<String, String> environment, File folder) {
+        this.index = index;
+        this.arguments = new ArrayList<String>(arguments);
+        this.environment = new LinkedHashMap<String, String>(environment);
+        this.folder = folder;
+    }
+
+    public int getIndex() {
+        // From 1, as in the name of the folder.
+        return index;
+    }
+
+    public List<String> getArguments() {
+        return arguments;
+    }
+
+    public Map<String, String> getEnvironment() {
+        return environment;
+    }
+
+    public File getFolder() {
+        return folder;
+    }
+
+    public RunMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public boolean isSuccess() {
+        return metrics != null && metrics.getExitCode() == 0;
+    }
+
+    public String getParameters() {
+        // What sets the run apart, shown in the summaries.
+        List<String> parameters = new ArrayList<String>();
+        for (Map.Entry<String, String> variable : environment.entrySet())
+            parameters.add(variable.getKey() + "=" + variable.getValue());
+        parameters.addAll(arguments);
+        return String.join(" ", parameters);
+    }
+}
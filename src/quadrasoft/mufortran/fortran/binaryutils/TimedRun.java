@@ -0,0 +1,70 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class TimedRun {
+    /*
+     * Runs a program over and over for Benchmark and Scaling, with nothing read from
+     * it while it runs: its standard output is discarded, its errors go to a file
+     * and its input comes from a file or is empty. Each run is timed by a
+     * RunSupervisor. cancel() kills the run in progress and keeps the next ones
+     * from starting.
+     */
+    private final List<String> command;
+    private final File context;
+    private final File errors;
+    private final File input;
+    private volatile Process process;
+    private volatile boolean cancelled = false;
+
+    public TimedRun(List<String> command, File context, File errors, File input) {
+        // The input may be null, the program then reads end of file.
+        this.command = new ArrayList<String>(command);
+        this.context = context;
+        this.errors = errors;
+        this.input = input;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        Process p = process;
+        if (p != null)
+            ProcessPump.destroyTree(p);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public double once(Map<String, String> environment) throws IOException, InterruptedException {
+        // The runtime in ms, -1 when the program failed or the runs were cancelled. A null value
+        // removes the variable from the environment.
+        if (cancelled)
+            return -1;
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(context);
+        for (Map.Entry<String, String> variable : environment.entrySet()) {
+            if (variable.getValue() == null)
+                builder.environment().remove(variable.getKey());
+            else
+                builder.environment().put(variable.getKey(), variable.getValue());
+        }
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(errors);
+        if (input != null)
+            builder.redirectInput(input);
+        RunSupervisor run = RunSupervisor.start(builder);
+        process = run.getProcess();
+        if (cancelled)
+            ProcessPump.destroyTree(process);
+        if (input == null)
+            process.getOutputStream().close();
+        int code = run.waitFor();
+        process = null;
+        return code == 0 ? run.getElapsedNanos() / 1e6 : -1;
+    }
+}
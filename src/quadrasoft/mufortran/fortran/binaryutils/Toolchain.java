@@ -0,0 +1,296 @@
+package quadrasoft.mufortran.fortran.binaryutils;
+
+import quadrasoft.mufortran.general.BuildOutput;
+import quadrasoft.mufortran.general.Log;
+import quadrasoft.mufortran.general.Session;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class Toolchain {
+    /*
+     * The compilers, linkers and tools found on the machine, with their version and
+     * the flags each compiler accepts. Probing means starting processes, so results
+     * are kept in toolchain.txt in the application folder and a binary is probed
+     * again only when its modification date changes. Flags are tried lazily, the
+     * first time a build needs to know, by compiling an empty program with them.
+     *
+     * Format, one record per line, tab separated:
+     * T kind name path modified version, followed by
+     * F flag yes|no for every flag tried with that compiler.
+     */
+    public enum Kind {
+        COMPILER, LINKER, TOOL
+    }
+
+    private static final String header = "muFortran toolchain 1";
+    private static final long timeout = 30;
+    private static final List<String> compilers = Arrays.asList("gfortran", "ifx", "ifort", "flang-new", "flang",
+            "nvfortran", "lfortran", "mpif90");
+    // Fastest first, with the name gfortran knows them by in -fuse-ld.
+    private static final String[][] linkers = {{"mold", "mold"}, {"ld.lld", "lld"}, {"ld.gold", "gold"},
+            {"ld", "bfd"}};
+    private static final List<String> tools = Arrays.asList("ar", "gcov", "gprof", "valgrind", "ninja", "mpirun");
+    private static final List<String> capabilities = Arrays.asList("-fopenmp", "-flto", "-march=native",
+            "-fuse-ld=mold", "-fuse-ld=lld", "-fuse-ld=gold");
+    private static Toolchain shared;
+
+    private final File file;
+    private final Map<String, Tool> known = new TreeMap<String, Tool>();
+
+    public Toolchain(File file) {
+        // A null file keeps the probes in memory.
+        this.file = file;
+        load();
+    }
+
+    public static class Tool {
+        private final Kind kind;
+        private final String name;
+        private final String path;
+        private final long modified;
+        private final String version;
+        private final Map<String, Boolean> flags = new TreeMap<String, Boolean>();
+
+        Tool(Kind kind, String name, String path, long modified, String version) {
+            this.kind = kind;
+            this.name = name;
+            this.path = path;
+            this.modified = modified;
+            this.version = version;
+        }
+
+        public Map<String, Boolean> getFlags() {
+            return flags;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+    }
+
+    public static synchronized Toolchain shared() {
+        if (shared == null) {
+            File file = new File(Session.getAppdatasoragefolder() + "toolchain.txt");
+            try {
+                file.toPath();
+            } catch (InvalidPathException e) {
+                // The application folder name cannot be encoded with the system locale.
+                file = null;
+            }
+            shared = new Toolchain(file);
+        }
+        return shared;
+    }
+
+    private static List<String> run(File folder, List<String> command) {
+        // Output of a short probe, null when it could not run or failed.
+        List<String> lines = new ArrayList<String>();
+        Process p = null;
+        try {
+            ProcessBuilder builder = new ProcessBuilder(command);
+            if (folder != null)
+                builder.directory(folder);
+            p = builder.start();
+            p.getOutputStream().close();
+            CompletableFuture<Integer> done = new ProcessPump(p, line -> lines.add(line.getText())).start();
+            return done.get(timeout, TimeUnit.SECONDS) == 0 ? lines : null;
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            if (p != null && p.isAlive())
+                ProcessPump.destroyTree(p);
+        }
+    }
+
+    private static boolean tryFlag(String compiler, String flag) {
+        File folder = null;
+        try {
+            folder = Files.createTempDirectory("mufortran-probe").toFile();
+            Files.write(new File(folder, "probe.f90").toPath(),
+                    "program probe\nend program probe\n".getBytes(StandardCharsets.UTF_8));
+            List<String> command = new ArrayList<String>(Arrays.asList(compiler, flag));
+            // Linker and link time flags only show up when linking.
+            if (flag.startsWith("-fuse-ld=") || flag.equals("-flto"))
+                command.addAll(Arrays.asList("probe.f90", "-o", "probe"));
+            else
+                command.addAll(Arrays.asList("-c", "probe.f90", "-o", "probe.o"));
+            List<String> output = run(folder, command);
+            if (output == null)
+                return false;
+            for (String line : output) {
+                // gfortran accepts some flags with only a warning.
+                String text = line.toLowerCase();
+                if (text.contains("unrecognized") || text.contains("not supported") || text.contains("ignored")
+                        || text.contains("valid for"))
+                    return false;
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (folder != null) {
+                File[] files = folder.listFiles();
+                if (files != null) {
+                    for (File f : files)
+                        f.delete();
+                }
+                folder.delete();
+            }
+        }
+    }
+
+    public synchronized Tool probe(String command, Kind kind) {
+        // Null when the command is not found.
+        File binary = CompilerIdentity.resolve(command);
+        if (!binary.isFile())
+            return null;
+        String path = binary.getAbsolutePath();
+        Tool tool = known.get(path);
+        if (tool != null && tool.modified == binary.lastModified())
+            return tool;
+        List<String> banner = run(null, Arrays.asList(path, "--version"));
+        String version = banner == null || banner.isEmpty() ? "unknown" : banner.get(0).trim().replace('\t', ' ');
+        tool = new Tool(kind, binary.getName(), path, binary.lastModified(), version);
+        known.put(path, tool);
+        save();
+        return tool;
+    }
+
+    public synchronized boolean supports(String compiler, String flag) {
+        Tool tool = probe(compiler, Kind.COMPILER);
+        if (tool == null)
+            return false;
+        Boolean supported = tool.flags.get(flag);
+        if (supported == null) {
+            supported = tryFlag(tool.path, flag);
+            tool.flags.put(flag, supported);
+            save();
+        }
+        return supported;
+    }
+
+    public List<String> filter(String compiler, List<String> flags, BuildOutput output) {
+        // Code generation flags vary between compilers and versions, unsupported ones are dropped.
+        List<String> kept = new ArrayList<String>();
+        for (String flag : flags) {
+            if ((flag.startsWith("-f") || flag.startsWith("-m")) && !supports(compiler, flag))
+                output.message("Warning: " + new File(compiler).getName() + " does not support " + flag
+                        + ", flag skipped");
+            else
+                kept.add(flag);
+        }
+        return kept;
+    }
+
+    public String fastestLinker(String compiler) {
+        // The -fuse-ld flag of the fastest linker the compiler can drive, null for its default.
+        for (String[] linker : linkers) {
+            if (linker[1].equals("bfd"))
+                return null;
+            if (probe(linker[0], Kind.LINKER) != null && supports(compiler, "-fuse-ld=" + linker[1]))
+                return "-fuse-ld=" + linker[1];
+        }
+        return null;
+    }
+
+    public String defaultCompiler() {
+        for (String compiler : compilers) {
+            if (probe(compiler, Kind.COMPILER) != null)
+                return compiler;
+        }
+        return null;
+    }
+
+    public synchronized List<Tool> probeAll() {
+        List<Tool> found = new ArrayList<Tool>();
+        for (String compiler : compilers) {
+            Tool tool = probe(compiler, Kind.COMPILER);
+            if (tool != null) {
+                for (String flag : capabilities)
+                    supports(compiler, flag);
+                found.add(tool);
+            }
+        }
+        for (String[] linker : linkers) {
+            Tool tool = probe(linker[0], Kind.LINKER);
+            if (tool != null)
+                found.add(tool);
+        }
+        for (String name : tools) {
+            Tool tool = probe(name, Kind.TOOL);
+            if (tool != null)
+                found.add(tool);
+        }
+        return found;
+    }
+
+    private void load() {
+        if (file == null || !file.exists())
+            return;
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !header.equals(lines.get(0)))
+                return;
+            Tool tool = null;
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split("\t");
+                if (fields.length == 6 && fields[0].equals("T")) {
+                    tool = new Tool(Kind.valueOf(fields[1]), fields[2], fields[3], Long.parseLong(fields[4]),
+                            fields[5]);
+                    known.put(tool.path, tool);
+                } else if (fields.length == 3 && fields[0].equals("F") && tool != null) {
+                    tool.flags.put(fields[1], fields[2].equals("yes"));
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // Everything is simply probed again.
+            known.clear();
+        }
+    }
+
+    private void save() {
+        if (file == null)
+            return;
+        file.getParentFile().mkdirs();
+        try (BufferedWriter bw = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            bw.write(header);
+            bw.newLine();
+            for (Tool tool : known.values()) {
+                bw.write("T\t" + tool.kind + "\t" + tool.name + "\t" + tool.path + "\t" + tool.modified + "\t"
+                        + tool.version);
+                bw.newLine();
+                for (Map.Entry<String, Boolean> flag : tool.flags.entrySet()) {
+                    bw.write("F\t" + flag.getKey() + "\t" + (flag.getValue() ? "yes" : "no"));
+                    bw.newLine();
+                }
+            }
+        } catch (IOException e) {
+            Log.send("Warning: Could not save toolchain " + file.getPath());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package quadrasoft.mufortran.general;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class BuildConfiguration {
+    /*
+     * A named set of compiler flags. Every configuration of a project builds into
+     * its own obj/<name>/ and bin/<name>/ folders, switching between them keeps the
+     * objects of the others. Stored in the project file as
+     * <configuration name="debug" flags="-Og -fcheck=all ..."/>.
+     */
+    public static final String RELEASE = "release";
+    public static final String DEBUG = "debug";
+    public static final String PROFILE = "profile";
+
+    private static final List<String> debugOptions = Arrays.asList("-Og", "-fimplicit-none", "-Wline-truncation",
+            "-Wampersand", "-Wcharacter-truncation", "-Wsurprising", "-Waliasing", "-Wimplicit-interface",
+            "-Wconversion", "-Wunused-parameter", "-fwhole-file", "-fcheck=all", "-std=f2008", "-pedantic",
+            "-fbacktrace", "-Wno-tabs", "-Wunused", "-Wreal-q-constant", "-Wtarget-lifetime", "-Wc-binding-type",
+            "-Wintrinsics-std", "-Wintrinsic-shadow");
+
+    private final String name;
+    private List<String> flags = new ArrayList<String>();
+
+    public BuildConfiguration(String name, List<String> flags) {
+        this.name = name;
+        this.flags.addAll(flags);
+    }
+
+    public BuildConfiguration(String name, String flags) {
+        this(name, split(flags));
+    }
+
+    public static List<BuildConfiguration> defaults() {
+        // What projects without configurations get, the debug flags were the IDE's debug mode. Release adds
+        // no flag, as a build without debug always did; optimisation is asked for in the project file.
+        List<BuildConfiguration> configurations = new ArrayList<BuildConfiguration>();
+        configurations.add(new BuildConfiguration(RELEASE, new ArrayList<String>()));
+        configurations.add(new BuildConfiguration(DEBUG, debugOptions));
+        configurations.add(new BuildConfiguration(PROFILE, Arrays.asList("-O2", "-pg")));
+        return configurations;
+    }
+
+    private static List<String> split(String flags) {
+        List<String> list = new ArrayList<String>();
+        for (String flag : flags.trim().split("\\s+")) {
+            if (!flag.isEmpty())
+                list.add(flag);
+        }
+        return list;
+    }
+
+    public List<String> getFlags() {
+        return flags;
+    }
+
+    public void setFlags(List<String> flags) {
+        this.flags = flags;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,63 @@
+package quadrasoft.mufortran.general;
+
+import quadrasoft.mufortran.fortran.Diagnostic;
+import quadrasoft.mufortran.fortran.binaryutils.BenchmarkResult;
+import quadrasoft.mufortran.fortran.binaryutils.RunLog;
+import quadrasoft.mufortran.fortran.binaryutils.RunMetrics;
+import quadrasoft.mufortran.fortran.binaryutils.ScalingResult;
+import quadrasoft.mufortran.fortran.binaryutils.SweepRun;
+
+import java.io.File;
+import java.util.List;
+
+public interface BuildOutput {
+    /*
+     * Where a build reports to. The IDE shows it in its panels, the command line
+     * prints it. Builds may run on several threads at once, implementations must
+     * accept calls from any of them.
+     */
+
+    // Status lines, "Error: " and "Warning: " prefixed as for the terminal.
+    void message(String m);
+
+    // A new compile or link starts, previous compiler output can be dropped.
+    void compilerReset();
+
+    // One line of compiler output with the block that belongs to it.
+    void compilerOutput(String header, List<String> block, List<Diagnostic> diagnostics);
+
+    void programStarted(Process process);
+
+    // The whole output of the program also goes to this log, from the start.
+    default void programLogged(RunLog log) {
+    }
+
+    void programOutput(String line, boolean error);
+
+    // A line of one rank of an MPI run, tagged with it by default.
+    default void programOutput(int rank, String line, boolean error) {
+        programOutput("[" + rank + "] " + line, error);
+    }
+
+    void programEnded(int exitCode, long elapsed);
+
+    // What the run cost, after programEnded.
+    default void programMetered(RunMetrics metrics) {
+    }
+
+    // What each rank of an MPI run cost, by rank, after programMetered; outputs show the load imbalance with it.
+    default void programRanked(List<RunMetrics> ranks) {
+    }
+
+    // A benchmark is over, the baseline it was compared with may be null.
+    default void programBenchmarked(BenchmarkResult result, BenchmarkResult baseline) {
+    }
+
+    // Every thread count of a scaling run was measured.
+    default void programScaled(ScalingResult result) {
+    }
+
+    // Every run of a sweep is over, or was cancelled; the folder holds their folders and the summary.
+    default void sweepEnded(File folder, List<SweepRun> runs) {
+    }
+}
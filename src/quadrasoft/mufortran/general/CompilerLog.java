@@ -1,6 +1,7 @@
 package quadrasoft.mufortran.general;
 
 import quadrasoft.mufortran.display.ErrorLineRenderer;
+import quadrasoft.mufortran.fortran.Diagnostic;
 
 import javax.swing.*;
 import java.awt.*;
@@ -13,12 +14,14 @@ import java.util.List;
 public class CompilerLog extends JPanel {
 
     private static final long serialVersionUID = -6182304516272936659L;
-    static DefaultListModel<String> listModel;
+    // Kept without the panel too, builds may report before it exists or without any display.
+    static final DefaultListModel<String> listModel = new DefaultListModel<String>();
     private static List<String> log = new ArrayList<String>();
     private static JList<String> lines;
+    // Diagnostic behind each line of the list, null for plain lines. Used on the EDT only.
+    private static List<Diagnostic> details = new ArrayList<Diagnostic>();
 
     public CompilerLog() {
-        listModel = new DefaultListModel<String>();
         lines = new JList<String>(listModel);
         this.setLayout(new BorderLayout());
         JScrollPane cons_scrollpane = new JScrollPane();
@@ -33,12 +36,24 @@ public class CompilerLog extends JPanel {
         this.setVisible(true);
     }
 
+    public static Diagnostic getDiagnostic(int index) {
+        if (index < 0 || index >= details.size())
+            return null;
+        return details.get(index);
+    }
+
     public static JList<String> getList() {
         return lines;
     }
 
     public static void reset() {
-        listModel.removeAllElements();
+        synchronized (log) {
+            log.clear();
+        }
+        SwingUtilities.invokeLater(() -> {
+            listModel.removeAllElements();
+            details.clear();
+        });
     }
 
     public static void save(String string) {
@@ -53,9 +68,11 @@ public class CompilerLog extends JPanel {
             fileWriter.write(System.getProperty("line.separator"));
             fileWriter.write("=====================================");
             fileWriter.write(System.getProperty("line.separator"));
-            for (String line : log) {
-                fileWriter.write(line);
-                fileWriter.write(System.getProperty("line.separator"));
+            synchronized (log) {
+                for (String line : log) {
+                    fileWriter.write(line);
+                    fileWriter.write(System.getProperty("line.separator"));
+                }
             }
             fileWriter.close();
         } catch (IOException e1) {
@@ -65,8 +82,34 @@ public class CompilerLog extends JPanel {
     }
 
     public static void send(String m) {
-        listModel.addElement(m);
-        log.add(m);
+        send(m, new ArrayList<String>());
+    }
 
+    public static void send(String m, List<String> block) {
+        send(m, block, new ArrayList<Diagnostic>());
+    }
+
+    public static void send(String m, List<String> block, List<Diagnostic> diagnostics) {
+        // Builds report from worker threads, the block is kept together in the list.
+        // The diagnostics were parsed from the block and point into it.
+        final List<String> lines = new ArrayList<String>();
+        lines.add(m);
+        lines.addAll(block);
+        synchronized (log) {
+            log.addAll(lines);
+        }
+        SwingUtilities.invokeLater(() -> {
+            int base = listModel.size() + 1;
+            for (String line : lines) {
+                listModel.addElement(line);
+                details.add(null);
+            }
+            for (Diagnostic diagnostic : diagnostics) {
+                for (int i = diagnostic.getFirstOutputLine(); i <= diagnostic.getLastOutputLine(); i++) {
+                    if (base + i < details.size())
+                        details.set(base + i, diagnostic);
+                }
+            }
+        });
     }
 }
@@ -0,0 +1,49 @@
+package quadrasoft.mufortran.general;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public final class Digests {
+    /*
+     * SHA-256 helpers used to tell whether a file really changed, hex encoded so they
+     * can be written to the plain text state files.
+     */
+    private static final char[] hex = "0123456789abcdef".toCharArray();
+
+    private Digests() {
+    }
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String of(byte[] content) {
+        return toHex(sha256().digest(content));
+    }
+
+    public static String of(String text) {
+        return of(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String of(Path file) throws IOException {
+        return of(Files.readAllBytes(file));
+    }
+
+    public static String toHex(byte[] digest) {
+        char[] out = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            out[2 * i] = hex[(digest[i] >> 4) & 0xF];
+            out[2 * i + 1] = hex[digest[i] & 0xF];
+        }
+        return new String(out);
+    }
+}
@@ -0,0 +1,369 @@
+package quadrasoft.mufortran.general;
+
+import quadrasoft.mufortran.fortran.Diagnostic;
+import quadrasoft.mufortran.fortran.binaryutils.BenchmarkResult;
+import quadrasoft.mufortran.fortran.binaryutils.RunMetrics;
+import quadrasoft.mufortran.fortran.binaryutils.ScalingResult;
+import quadrasoft.mufortran.fortran.binaryutils.SweepRun;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JsonOutput implements BuildOutput {
+    /*
+     * Build output as JSON lines, one object per event, for scripts and batch jobs:
+     *
+     *   {"project":"solver","event":"compiler","header":"[1/3] a.f90 compiled in 40 ms",
+     *    "output":[...],"diagnostics":[{"file":...,"line":12,"column":7,"severity":"ERROR","message":...}]}
+     *
+     * Events are "message", "compiler", "program", "exit", "metrics", "ranks",
+     * "benchmark", "scaling", "sweep", "result" and "done", the last line a build
+     * daemon sends. Output lines of an MPI run carry the "rank" they come from.
+     * Builds of a given configuration also carry "configuration". replay() hands an event read back to another output.
+     */
+    private final PrintStream out;
+    private final String project;
+    private final String configuration;
+
+    public JsonOutput(PrintStream out, String project) {
+        this(out, project, null);
+    }
+
+    public JsonOutput(PrintStream out, String project, String configuration) {
+        this.out = out;
+        this.project = project;
+        this.configuration = configuration;
+    }
+
+    public static String quote(String text) {
+        if (text == null)
+            return "null";
+        StringBuilder sb = new StringBuilder(text.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20)
+                        sb.append(String.format("\\u%04x", (int) c));
+                    else
+                        sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String array(List<String> lines) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < lines.size(); i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(quote(lines.get(i)));
+        }
+        return sb.append(']').toString();
+    }
+
+    private void event(String event, String fields) {
+        // println on a PrintStream is atomic, lines of parallel builds do not mix.
+        String origin = "{\"project\":" + quote(project)
+                + (configuration == null ? "" : ",\"configuration\":" + quote(configuration));
+        out.println(origin + ",\"event\":\"" + event + "\"" + fields + "}");
+    }
+
+    @Override
+    public void message(String m) {
+        String level = m.startsWith("Error:") ? "error" : m.startsWith("Warning:") ? "warning" : "info";
+        event("message", ",\"level\":\"" + level + "\",\"text\":" + quote(m));
+    }
+
+    @Override
+    public void compilerReset() {
+    }
+
+    @Override
+    public void compilerOutput(String header, List<String> block, List<Diagnostic> diagnostics) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < diagnostics.size(); i++) {
+            Diagnostic diagnostic = diagnostics.get(i);
+            if (i > 0)
+                sb.append(',');
+            sb.append("{\"file\":").append(quote(diagnostic.getFile()))
+                    .append(",\"line\":").append(diagnostic.getLine())
+                    .append(",\"column\":").append(diagnostic.getColumn())
+                    .append(",\"severity\":\"").append(diagnostic.getSeverity()).append('"')
+                    .append(",\"message\":").append(quote(diagnostic.getMessage())).append('}');
+        }
+        sb.append(']');
+        event("compiler", ",\"header\":" + quote(header) + ",\"output\":" + array(block) + ",\"diagnostics\":" + sb);
+    }
+
+    @Override
+    public void programStarted(Process process) {
+        try {
+            process.getOutputStream().close();
+        } catch (IOException e) {
+            // The program is already gone.
+        }
+    }
+
+    @Override
+    public void programOutput(String line, boolean error) {
+        event("program", ",\"stream\":\"" + (error ? "stderr" : "stdout") + "\",\"text\":" + quote(line));
+    }
+
+    @Override
+    public void programOutput(int rank, String line, boolean error) {
+        event("program", ",\"rank\":" + rank + ",\"stream\":\"" + (error ? "stderr" : "stdout") + "\",\"text\":"
+                + quote(line));
+    }
+
+    @Override
+    public void programEnded(int exitCode, long elapsed) {
+        event("exit", ",\"code\":" + exitCode + ",\"ms\":" + elapsed);
+    }
+
+    private static String metrics(RunMetrics m) {
+        return ",\"run\":" + quote(m.getRun()) + ",\"binary\":" + m.getBinary() + ",\"code\":"
+                + m.getExitCode() + ",\"wall_ms\":" + m.getWall() + ",\"user_ms\":" + m.getUser()
+                + ",\"system_ms\":" + m.getSystem() + ",\"peak_rss_kb\":" + m.getPeakRss()
+                + ",\"voluntary_switches\":" + m.getVoluntarySwitches() + ",\"involuntary_switches\":"
+                + m.getInvoluntarySwitches() + ",\"read_bytes\":" + m.getReadBytes() + ",\"written_bytes\":"
+                + m.getWrittenBytes();
+    }
+
+    private static RunMetrics metrics(Map<String, Object> event) {
+        return new RunMetrics(String.valueOf(event.get("run")), number(event, "binary"), (int) number(event, "code"),
+                number(event, "wall_ms"), number(event, "user_ms"), number(event, "system_ms"),
+                number(event, "peak_rss_kb"), number(event, "voluntary_switches"),
+                number(event, "involuntary_switches"), number(event, "read_bytes"), number(event, "written_bytes"));
+    }
+
+    @Override
+    public void programMetered(RunMetrics m) {
+        event("metrics", metrics(m));
+    }
+
+    @Override
+    public void programRanked(List<RunMetrics> ranks) {
+        StringBuilder sb = new StringBuilder("[");
+        for (RunMetrics m : ranks) {
+            if (sb.length() > 1)
+                sb.append(',');
+            sb.append('{').append(metrics(m).substring(1)).append('}');
+        }
+        event("ranks", ",\"ranks\":" + sb.append(']'));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static String replay(String line, BuildOutput target) {
+        return replay((Map<String, Object>) JsonReader.parse(line), target);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static String replay(Map<String, Object> event, BuildOutput target) {
+        // Returns the name of the event, the ones without a BuildOutput call are left to the caller.
+        String name = String.valueOf(event.get("event"));
+        switch (name) {
+            case "message":
+                target.message(String.valueOf(event.get("text")));
+                break;
+            case "compiler":
+                List<String> output = new ArrayList<String>();
+                for (Object text : (List<Object>) event.get("output"))
+                    output.add(String.valueOf(text));
+                List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+                for (Object item : (List<Object>) event.get("diagnostics")) {
+                    Map<String, Object> d = (Map<String, Object>) item;
+                    diagnostics.add(new Diagnostic((String) d.get("file"), ((Number) d.get("line")).intValue(),
+                            ((Number) d.get("column")).intValue(),
+                            Diagnostic.Severity.valueOf(String.valueOf(d.get("severity"))),
+                            String.valueOf(d.get("message"))));
+                }
+                target.compilerOutput(String.valueOf(event.get("header")), output, diagnostics);
+                break;
+            case "program":
+                if (event.containsKey("rank"))
+                    target.programOutput((int) number(event, "rank"), String.valueOf(event.get("text")),
+                            "stderr".equals(event.get("stream")));
+                else
+                    target.programOutput(String.valueOf(event.get("text")), "stderr".equals(event.get("stream")));
+                break;
+            case "exit":
+                target.programEnded(((Number) event.get("code")).intValue(), ((Number) event.get("ms")).longValue());
+                break;
+            case "metrics":
+                target.programMetered(metrics(event));
+                break;
+            case "ranks":
+                List<RunMetrics> ranks = new ArrayList<RunMetrics>();
+                for (Object item : (List<Object>) event.get("ranks"))
+                    ranks.add(metrics((Map<String, Object>) item));
+                target.programRanked(ranks);
+                break;
+            case "sweep":
+                target.sweepEnded(new File(String.valueOf(event.get("folder"))),
+                        sweep((List<Object>) event.get("runs")));
+                break;
+            case "benchmark":
+                target.programBenchmarked(benchmark(event.get("result")), benchmark(event.get("baseline")));
+                break;
+            case "scaling":
+                target.programScaled(scaling(event));
+                break;
+            default:
+                break;
+        }
+        return name;
+    }
+
+    private static String benchmark(BenchmarkResult r) {
+        List<String> samples = new ArrayList<String>();
+        for (double sample : r.getSamples())
+            samples.add(String.valueOf(sample));
+        return "{\"date\":" + quote(r.getDate()) + ",\"revision\":" + quote(r.getRevision()) + ",\"commit\":"
+                + quote(r.getCommit()) + ",\"warmups\":" + r.getWarmups() + ",\"median_ms\":" + r.getMedian()
+                + ",\"p95_ms\":" + r.getPercentile95() + ",\"mean_ms\":" + r.getMean() + ",\"stddev_ms\":"
+                + r.getStandardDeviation() + ",\"samples\":[" + String.join(",", samples) + "]}";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BenchmarkResult benchmark(Object item) {
+        if (!(item instanceof Map))
+            return null;
+        Map<String, Object> b = (Map<String, Object>) item;
+        List<Object> values = (List<Object>) b.get("samples");
+        double[] samples = new double[values.size()];
+        for (int i = 0; i < samples.length; i++)
+            samples[i] = ((Number) values.get(i)).doubleValue();
+        return new BenchmarkResult(String.valueOf(b.get("date")), String.valueOf(b.get("revision")),
+                String.valueOf(b.get("commit")), ((Number) b.get("warmups")).intValue(), samples);
+    }
+
+    @Override
+    public void programBenchmarked(BenchmarkResult result, BenchmarkResult baseline) {
+        // The statistics are there for scripts, the samples to compare again.
+        String comparison = "";
+        if (baseline != null) {
+            BenchmarkResult.Comparison c = result.compare(baseline);
+            comparison = ",\"change\":" + c.getChange() + ",\"p\":" + c.getP() + ",\"regression\":" + c.isSlowdown();
+        }
+        event("benchmark", ",\"result\":" + benchmark(result) + ",\"baseline\":"
+                + (baseline == null ? "null" : benchmark(baseline)) + comparison);
+    }
+
+    @Override
+    public void programScaled(ScalingResult result) {
+        StringBuilder sb = new StringBuilder("[");
+        for (ScalingResult.Point point : result.getPoints()) {
+            if (sb.length() > 1)
+                sb.append(',');
+            List<String> samples = new ArrayList<String>();
+            for (double sample : point.getResult().getSamples())
+                samples.add(String.valueOf(sample));
+            sb.append("{\"binding\":").append(quote(point.getBinding()))
+                    .append(",\"threads\":").append(point.getThreads())
+                    .append(",\"median_ms\":").append(point.getResult().getMedian())
+                    .append(",\"speedup\":").append(result.getSpeedup(point))
+                    .append(",\"efficiency\":").append(result.getEfficiency(point))
+                    .append(",\"samples\":[").append(String.join(",", samples)).append("]}");
+        }
+        event("scaling", ",\"date\":" + quote(result.getDate()) + ",\"revision\":" + quote(result.getRevision())
+                + ",\"points\":" + sb.append(']'));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ScalingResult scaling(Map<String, Object> event) {
+        String revision = String.valueOf(event.get("revision"));
+        ScalingResult result = new ScalingResult(String.valueOf(event.get("date")), revision);
+        for (Object item : (List<Object>) event.get("points")) {
+            Map<String, Object> p = (Map<String, Object>) item;
+            List<Object> values = (List<Object>) p.get("samples");
+            double[] samples = new double[values.size()];
+            for (int i = 0; i < samples.length; i++)
+                samples[i] = ((Number) values.get(i)).doubleValue();
+            result.add(new ScalingResult.Point(String.valueOf(p.get("binding")), (int) number(p, "threads"),
+                    new BenchmarkResult(result.getDate(), revision, "-", 1, samples)));
+        }
+        return result;
+    }
+
+    @Override
+    public void sweepEnded(File folder, List<SweepRun> runs) {
+        StringBuilder sb = new StringBuilder("[");
+        for (SweepRun run : runs) {
+            if (sb.length() > 1)
+                sb.append(',');
+            sb.append("{\"run\":").append(run.getIndex())
+                    .append(",\"folder\":").append(quote(run.getFolder().getPath()))
+                    .append(",\"args\":").append(array(run.getArguments())).append(",\"env\":{");
+            boolean first = true;
+            for (Map.Entry<String, String> variable : run.getEnvironment().entrySet()) {
+                sb.append(first ? "" : ",").append(quote(variable.getKey())).append(':')
+                        .append(quote(variable.getValue()));
+                first = false;
+            }
+            sb.append('}');
+            RunMetrics m = run.getMetrics();
+            if (m != null)
+                sb.append(",\"code\":").append(m.getExitCode()).append(",\"wall_ms\":").append(m.getWall())
+                        .append(",\"user_ms\":").append(m.getUser()).append(",\"system_ms\":").append(m.getSystem())
+                        .append(",\"peak_rss_kb\":").append(m.getPeakRss());
+            sb.append('}');
+        }
+        event("sweep", ",\"folder\":" + quote(folder.getPath()) + ",\"runs\":" + sb.append(']'));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<SweepRun> sweep(List<Object> items) {
+        List<SweepRun> runs = new ArrayList<SweepRun>();
+        for (Object item : items) {
+            Map<String, Object> r = (Map<String, Object>) item;
+            List<String> arguments = new ArrayList<String>();
+            for (Object argument : (List<Object>) r.get("args"))
+                arguments.add(String.valueOf(argument));
+            Map<String, String> environment = new LinkedHashMap<String, String>();
+            for (Map.Entry<String, Object> variable : ((Map<String, Object>) r.get("env")).entrySet())
+                environment.put(variable.getKey(), String.valueOf(variable.getValue()));
+            SweepRun run = new SweepRun((int) number(r, "run"), arguments, environment,
+                    new File(String.valueOf(r.get("folder"))));
+            if (r.containsKey("code"))
+                run.setMetrics(new RunMetrics("", 0, (int) number(r, "code"), number(r, "wall_ms"),
+                        number(r, "user_ms"), number(r, "system_ms"), number(r, "peak_rss_kb"), -1, -1, -1, -1));
+            runs.add(run);
+        }
+        return runs;
+    }
+
+    private static long number(Map<String, Object> event, String name) {
+        Object value = event.get(name);
+        return value instanceof Number ? ((Number) value).longValue() : -1;
+    }
+
+    public void done(int code) {
+        event("done", ",\"code\":" + code);
+    }
+
+    public void result(String step, String status, long elapsed) {
+        event("result", ",\"step\":\"" + step + "\",\"status\":\"" + status + "\",\"ms\":" + elapsed);
+    }
+}
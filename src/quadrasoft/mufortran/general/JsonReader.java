@@ -0,0 +1,165 @@
+package quadrasoft.mufortran.general;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JsonReader {
+    /*
+     * Reads back what JsonOutput writes: objects become maps, arrays lists, numbers
+     * longs or doubles. Enough for the build events, not a general purpose parser.
+     */
+    private final String text;
+    private int position = 0;
+
+    private JsonReader(String text) {
+        this.text = text;
+    }
+
+    public static Object parse(String text) {
+        JsonReader reader = new JsonReader(text);
+        Object value = reader.value();
+        reader.blank();
+        if (reader.position != text.length())
+            throw reader.error("end of input expected");
+        return value;
+    }
+
+    private IllegalArgumentException error(String expected) {
+        return new IllegalArgumentException("Invalid JSON at " + position + ", " + expected);
+    }
+
+    private void blank() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+            position++;
+    }
+
+    private void expect(char c) {
+        blank();
+        if (position >= text.length() || text.charAt(position) != c)
+            throw error("'" + c + "' expected");
+        position++;
+    }
+
+    private boolean next(char c) {
+        blank();
+        if (position < text.length() && text.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private Object value() {
+        blank();
+        if (position >= text.length())
+            throw error("value expected");
+        char c = text.charAt(position);
+        if (c == '{')
+            return object();
+        if (c == '[')
+            return array();
+        if (c == '"')
+            return string();
+        if (text.startsWith("true", position)) {
+            position += 4;
+            return Boolean.TRUE;
+        }
+        if (text.startsWith("false", position)) {
+            position += 5;
+            return Boolean.FALSE;
+        }
+        if (text.startsWith("null", position)) {
+            position += 4;
+            return null;
+        }
+        return number();
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        expect('{');
+        if (next('}'))
+            return map;
+        do {
+            blank();
+            String key = string();
+            expect(':');
+            map.put(key, value());
+        } while (next(','));
+        expect('}');
+        return map;
+    }
+
+    private List<Object> array() {
+        List<Object> list = new ArrayList<Object>();
+        expect('[');
+        if (next(']'))
+            return list;
+        do {
+            list.add(value());
+        } while (next(','));
+        expect(']');
+        return list;
+    }
+
+    private String string() {
+        if (position >= text.length() || text.charAt(position) != '"')
+            throw error("string expected");
+        position++;
+        StringBuilder sb = new StringBuilder();
+        while (position < text.length()) {
+            char c = text.charAt(position++);
+            if (c == '"')
+                return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (position >= text.length())
+                break;
+            char escaped = text.charAt(position++);
+            switch (escaped) {
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'u':
+                    if (position + 4 > text.length())
+                        throw error("unicode escape expected");
+                    sb.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                    position += 4;
+                    break;
+                default:
+                    sb.append(escaped);
+            }
+        }
+        throw error("end of string expected");
+    }
+
+    private Number number() {
+        int start = position;
+        while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0)
+            position++;
+        String number = text.substring(start, position);
+        try {
+            if (number.contains(".") || number.contains("e") || number.contains("E"))
+                return Double.parseDouble(number);
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            throw error("number expected");
+        }
+    }
+}
@@ -36,6 +36,8 @@ public class Log extends JPanel implements KeyListener {
     private final static Style fineStyle = textArea.addStyle("fine", null);
     private final static Style commandStyle = textArea.addStyle("command", null);
     private static StyledDocument doc = textArea.getStyledDocument();
+    // When set, messages go there instead of the terminal panel.
+    private static BuildOutput redirect;
 
     public Log() {
 
@@ -79,7 +81,15 @@ public class Log extends JPanel implements KeyListener {
         consoleInput.requestFocus();
     }
 
+    public static void redirect(BuildOutput output) {
+        redirect = output;
+    }
+
     public static void send(String m) {
+        if (redirect != null) {
+            redirect.message(m);
+            return;
+        }
         String dateString = "[" + Calendar.getInstance().get(Calendar.HOUR_OF_DAY) + ":"
                 + Calendar.getInstance().get(Calendar.MINUTE) + ":" + Calendar.getInstance().get(Calendar.SECOND)
                 + "] > ";
@@ -1,5 +1,8 @@
 package quadrasoft.mufortran.general;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public final class OsUtils {
     private static String OS = null;
 
@@ -17,4 +20,42 @@ public final class OsUtils {
     public static boolean isWindows() {
         return getOsName().startsWith("Windows");
     }
+
+    public static List<String> splitArguments(String line) {
+        // Program arguments typed on one line, split as a shell would: quotes group, a backslash escapes.
+        List<String> arguments = new ArrayList<String>();
+        if (line == null)
+            return arguments;
+        StringBuilder current = new StringBuilder();
+        boolean inArgument = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote)
+                    quote = 0;
+                else if (c == '\\' && quote == '"' && i + 1 < line.length())
+                    current.append(line.charAt(++i));
+                else
+                    current.append(c);
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                inArgument = true;
+            } else if (c == '\\' && i + 1 < line.length()) {
+                current.append(line.charAt(++i));
+                inArgument = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inArgument)
+                    arguments.add(current.toString());
+                current.setLength(0);
+                inArgument = false;
+            } else {
+                current.append(c);
+                inArgument = true;
+            }
+        }
+        if (inArgument)
+            arguments.add(current.toString());
+        return arguments;
+    }
 }
\ No newline at end of file
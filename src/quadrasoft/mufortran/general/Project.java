@@ -34,8 +34,14 @@ public class Project {
     private String Author;
     private Date lastEdit;
     private boolean printLog = false;
+    private boolean incremental = true;
+    // MPI projects are built with mpif90 and run through mpirun on this many ranks.
+    private boolean mpi = false;
+    private int ranks = 2;
     private List<String> source = new ArrayList<String>();
     private List<String> externals = new ArrayList<String>();
+    private List<BuildConfiguration> configurations = BuildConfiguration.defaults();
+    private String activeConfiguration = BuildConfiguration.RELEASE;
 
     private boolean selected = false;
 
@@ -70,11 +76,14 @@ public class Project {
         {
             compilationElement.setAttribute("gfortranDumpLog", "false");
         }
+        compilationElement.setAttribute("gfortranIncremental", incremental ? "true" : "false");
         root.appendChild(compilationElement);
 
         final Element executionElement = document.createElement("execution");
         executionElement.setAttribute("inputArguments", argument);
         executionElement.setAttribute("executionPath", executionPath);
+        executionElement.setAttribute("mpi", mpi ? "true" : "false");
+        executionElement.setAttribute("mpiRanks", String.valueOf(ranks));
         root.appendChild(executionElement);
 
         final Element sourcesElement = document.createElement("sources");
@@ -95,6 +104,17 @@ public class Project {
             externalsElement.appendChild(fileElement);
         }
 
+        final Element configurationsElement = document.createElement("configurations");
+        configurationsElement.setAttribute("active", activeConfiguration);
+        root.appendChild(configurationsElement);
+        for (BuildConfiguration configuration : configurations)
+        {
+            final Element configurationElement = document.createElement("configuration");
+            configurationElement.setAttribute("name", configuration.getName());
+            configurationElement.setAttribute("flags", String.join(" ", configuration.getFlags()));
+            configurationsElement.appendChild(configurationElement);
+        }
+
         final Element authorElement = document.createElement("author");
         authorElement.setTextContent(Author);
         root.appendChild(authorElement);
@@ -168,6 +188,8 @@ public class Project {
                         {
                             throw new IOException("Bad value for boolean gfortranDumpLog");
                         }
+                        // Older projects have no such attribute, they build incrementally.
+                        incremental = !node.getAttribute("gfortranIncremental").equalsIgnoreCase("false");
                     }
                     else if (node.getTagName().equals("sources"))
                     {
@@ -197,10 +219,36 @@ public class Project {
                             }
                         }
                     }
+                    else if (node.getTagName().equals("configurations"))
+                    {
+                        // Older projects have none and keep the defaults.
+                        final NodeList configurationNodes = node.getElementsByTagName("configuration");
+                        if (configurationNodes.getLength() > 0)
+                            configurations = new ArrayList<BuildConfiguration>();
+                        for (int j = 0; j < configurationNodes.getLength(); j++)
+                        {
+                            final Element configuration = (Element) configurationNodes.item(j);
+                            configurations.add(new BuildConfiguration(configuration.getAttribute("name"),
+                                    configuration.getAttribute("flags")));
+                        }
+                        if (getConfiguration(node.getAttribute("active")) != null)
+                            activeConfiguration = node.getAttribute("active");
+                        else if (!configurations.isEmpty())
+                            activeConfiguration = configurations.get(0).getName();
+                    }
                     else if (node.getTagName() == "execution")
                     {
                         argument = node.getAttribute("inputArguments");
                         executionPath = node.getAttribute("executionPath");
+                        // Older projects have neither, they are not MPI ones.
+                        mpi = node.getAttribute("mpi").equalsIgnoreCase("true");
+                        try
+                        {
+                            ranks = Math.max(1, Integer.parseInt(node.getAttribute("mpiRanks")));
+                        } catch (NumberFormatException e)
+                        {
+                            ranks = 2;
+                        }
                     }
                     else if (node.getTagName() == "author")
                     {
@@ -369,8 +417,40 @@ public class Project {
         this.name = name;
     }
 
+    public String getActiveConfiguration() {
+        return activeConfiguration;
+    }
+
+    public void setActiveConfiguration(String activeConfiguration) {
+        this.activeConfiguration = activeConfiguration;
+    }
+
+    public String getBinaryPath(String configuration) {
+        return "bin/" + configuration + "/";
+    }
+
+    public BuildConfiguration getConfiguration(String name) {
+        for (BuildConfiguration configuration : configurations) {
+            if (configuration.getName().equals(name))
+                return configuration;
+        }
+        return null;
+    }
+
+    public List<BuildConfiguration> getConfigurations() {
+        return configurations;
+    }
+
+    public void setConfigurations(List<BuildConfiguration> configurations) {
+        this.configurations = configurations;
+    }
+
     public String getObjectPath() {
-        return "obj/";
+        return getObjectPath(activeConfiguration);
+    }
+
+    public String getObjectPath(String configuration) {
+        return "obj/" + configuration + "/";
     }
 
     public String getPath() {
@@ -399,6 +479,30 @@ public class Project {
         this.printLog = printLog;
     }
 
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isMpi() {
+        return mpi;
+    }
+
+    public void setMpi(boolean mpi) {
+        this.mpi = mpi;
+    }
+
+    public int getRanks() {
+        return ranks;
+    }
+
+    public void setRanks(int ranks) {
+        this.ranks = ranks;
+    }
+
     public boolean isSelected() {
         return selected;
     }
@@ -4,6 +4,7 @@ import quadrasoft.mufortran.resources.Strings;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,6 +27,10 @@ public class Session {
     private static List<Project> projectsList = new ArrayList<Project>();
 
     private static Map<String, String> _parameters = new HashMap<>();
+    // Build and run options, saved as they are when set.
+    final private static List<String> buildParameters = Arrays.asList("CompilationCache", "CompilationCacheSize",
+            "FastLinker", "BuildDaemon", "NinjaBackend", "ConsoleScrollback", "BenchmarkRuns", "BenchmarkWarmups",
+            "SweepJobs", "ScalingRuns", "ScalingBindings");
 
     private static boolean autoCheckForUpdates = true;
     private static boolean autoSave = true;
@@ -121,6 +126,10 @@ public class Session {
         Session.autoSave = autoSave;
     }
 
+    final public static boolean isConfigured() {
+        return new File(appDataSorageFolder + configFileName).isFile();
+    }
+
     final public static void load() {
 		/*
 		 * Loading parameters
@@ -171,6 +180,9 @@ public class Session {
                             .equalsIgnoreCase("autoSaveTreshold")) {
                         Session.setAutoSaveTreshold(
                                 Integer.parseInt(line.substring(line.indexOf("\"") + 1, line.lastIndexOf("\""))));
+                    } else if (buildParameter(line.substring(0, line.lastIndexOf("::"))) != null) {
+                        setParameter(buildParameter(line.substring(0, line.lastIndexOf("::"))),
+                                line.substring(line.indexOf("\"") + 1, line.lastIndexOf("\"")));
                     } else if (line.substring(0, line.lastIndexOf("::")).replaceAll("\\s+", "")
                             .equalsIgnoreCase("execExtension")) {
                         setParameter("execExtension",
@@ -200,6 +212,16 @@ public class Session {
         }
     }
 
+    private static String buildParameter(String key) {
+        // The spelling of a build option as saved, null for other keys.
+        key = key.replaceAll("\\s+", "");
+        for (String parameter : buildParameters) {
+            if (parameter.equalsIgnoreCase(key))
+                return parameter;
+        }
+        return null;
+    }
+
     public static String parameter(String key) {
         return _parameters.get(key);
     }
@@ -238,6 +260,12 @@ public class Session {
             fileWriter.write(System.getProperty("line.separator"));
             fileWriter.write("execExtension :: \"" + parameter("execExtension") + "\"");
             fileWriter.write(System.getProperty("line.separator"));
+            for (String key : buildParameters) {
+                if (parameter(key) != null) {
+                    fileWriter.write(key + " :: \"" + parameter(key) + "\"");
+                    fileWriter.write(System.getProperty("line.separator"));
+                }
+            }
             if (Session.autoCheck())
                 fileWriter.write("autocheck :: \"" + "true" + "\"");
             else
@@ -0,0 +1,130 @@
+package quadrasoft.mufortran.general;
+
+import quadrasoft.mufortran.fortran.Diagnostic;
+import quadrasoft.mufortran.fortran.ExecutorConsole;
+import quadrasoft.mufortran.fortran.RunHistoryViewer;
+import quadrasoft.mufortran.fortran.ScalingViewer;
+import quadrasoft.mufortran.fortran.SweepViewer;
+import quadrasoft.mufortran.fortran.binaryutils.BenchmarkResult;
+import quadrasoft.mufortran.fortran.binaryutils.MpiLaunch;
+import quadrasoft.mufortran.fortran.binaryutils.RunLog;
+import quadrasoft.mufortran.fortran.binaryutils.RunMetrics;
+import quadrasoft.mufortran.fortran.binaryutils.ScalingResult;
+import quadrasoft.mufortran.fortran.binaryutils.SweepRun;
+
+import javax.swing.*;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.util.List;
+
+public class SwingOutput implements BuildOutput {
+    /*
+     * Build output of the IDE: messages go to the terminal, compiler output to the
+     * build log and the program runs in its own console window.
+     */
+    private ExecutorConsole console;
+
+    @Override
+    public void message(String m) {
+        Log.send(m);
+    }
+
+    @Override
+    public void compilerReset() {
+        CompilerLog.reset();
+    }
+
+    @Override
+    public void compilerOutput(String header, List<String> block, List<Diagnostic> diagnostics) {
+        CompilerLog.send(header, block, diagnostics);
+    }
+
+    @Override
+    public void programStarted(Process process) {
+        ExecutorConsole.clearRanks();
+        // We wake up the console and bind the commands flow and the process control to it, on the EDT.
+        SwingUtilities.invokeLater(() -> {
+            console = new ExecutorConsole();
+            console.activate();
+            console.bindFlows(new BufferedWriter(new OutputStreamWriter(process.getOutputStream())), process);
+            console.setProcessRunning(true);
+        });
+    }
+
+    @Override
+    public void programLogged(RunLog log) {
+        SwingUtilities.invokeLater(() -> console.setRunLog(log));
+    }
+
+    @Override
+    public void programOutput(String line, boolean error) {
+        // The console batches the lines to the EDT itself.
+        if (error)
+            ExecutorConsole.sendError(line);
+        else
+            ExecutorConsole.sendInfo(line);
+    }
+
+    @Override
+    public void programOutput(int rank, String line, boolean error) {
+        ExecutorConsole.sendRank(rank, line, error);
+    }
+
+    @Override
+    public void programEnded(int exitCode, long elapsed) {
+        // Queued behind programStarted, the console exists by then.
+        SwingUtilities.invokeLater(() -> console.setProcessRunning(false));
+        ExecutorConsole.sendInfo("Process terminated in " + String.valueOf(elapsed) + " ms");
+    }
+
+    @Override
+    public void programRanked(List<RunMetrics> ranks) {
+        // Each pane ends with what its rank cost, the common one with the imbalance.
+        for (int r = 0; r < ranks.size(); r++) {
+            RunMetrics m = ranks.get(r);
+            ExecutorConsole.sendRank(r, "Exit " + m.getExitCode() + ", wall " + m.getWall() + " ms, CPU "
+                    + (m.getUser() < 0 ? "?" : m.getUser() + Math.max(0, m.getSystem())) + " ms", m.getExitCode() != 0);
+        }
+        ExecutorConsole.sendInfo(MpiLaunch.summary(ranks));
+    }
+
+    @Override
+    public void programBenchmarked(BenchmarkResult result, BenchmarkResult baseline) {
+        // A slowdown is worth interrupting for, the rest is in the terminal.
+        if (baseline == null)
+            return;
+        BenchmarkResult.Comparison comparison = result.compare(baseline);
+        if (comparison.isSlowdown()) {
+            String text = String.format("The program got slower: median %.2f ms, was %.2f ms on %s "
+                            + "(%+.1f%%, p = %.3f).", result.getMedian(), baseline.getMedian(),
+                    baseline.getDate().replace('T', ' '), comparison.getChange() * 100, comparison.getP());
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, text, "Benchmark",
+                    JOptionPane.WARNING_MESSAGE));
+        }
+    }
+
+    @Override
+    public void programScaled(ScalingResult result) {
+        SwingUtilities.invokeLater(() -> {
+            ScalingViewer viewer = new ScalingViewer(result);
+            viewer.setLocationRelativeTo(null);
+            viewer.setVisible(true);
+        });
+    }
+
+    @Override
+    public void sweepEnded(File folder, List<SweepRun> runs) {
+        SwingUtilities.invokeLater(() -> {
+            SweepViewer viewer = new SweepViewer(folder, runs);
+            viewer.setLocationRelativeTo(null);
+            viewer.setVisible(true);
+        });
+    }
+
+    @Override
+    public void programMetered(RunMetrics metrics) {
+        ExecutorConsole.sendInfo(metrics.summary());
+        SwingUtilities.invokeLater(RunHistoryViewer::refreshAll);
+    }
+}
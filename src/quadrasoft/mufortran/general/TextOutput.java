@@ -0,0 +1,130 @@
+package quadrasoft.mufortran.general;
+
+import quadrasoft.mufortran.fortran.Diagnostic;
+import quadrasoft.mufortran.fortran.binaryutils.MpiLaunch;
+import quadrasoft.mufortran.fortran.binaryutils.RunMetrics;
+import quadrasoft.mufortran.fortran.binaryutils.ScalingResult;
+import quadrasoft.mufortran.fortran.binaryutils.SweepRun;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+
+public class TextOutput implements BuildOutput {
+    /*
+     * Plain text build output for the command line. Every line is prefixed with the
+     * project name so that builds running side by side can be told apart. Programs
+     * get end of file on their input, nobody is there to type.
+     */
+    private final PrintStream out;
+    private final String prefix;
+
+    public TextOutput(PrintStream out, String project) {
+        this.out = out;
+        this.prefix = project == null ? "" : "[" + project + "] ";
+    }
+
+    @Override
+    public void message(String m) {
+        out.println(prefix + m);
+    }
+
+    @Override
+    public void compilerReset() {
+    }
+
+    @Override
+    public void compilerOutput(String header, List<String> block, List<Diagnostic> diagnostics) {
+        // The block is printed in one go, it is not interleaved with other builds.
+        synchronized (out) {
+            out.println(prefix + header);
+            for (String line : block)
+                out.println(prefix + "    " + line);
+        }
+    }
+
+    @Override
+    public void programStarted(Process process) {
+        try {
+            process.getOutputStream().close();
+        } catch (IOException e) {
+            // The program is already gone.
+        }
+    }
+
+    @Override
+    public void programOutput(String line, boolean error) {
+        // A progress line ending with \r is rewritten in place, unless builds share the terminal.
+        if (line.endsWith("\r") && prefix.isEmpty()) {
+            out.print(line);
+            out.flush();
+        } else {
+            out.println(prefix + line.replace("\r", ""));
+        }
+    }
+
+    @Override
+    public void programEnded(int exitCode, long elapsed) {
+        out.println(prefix + "Process terminated with code " + exitCode + " in " + elapsed + " ms");
+    }
+
+    @Override
+    public void programMetered(RunMetrics metrics) {
+        out.println(prefix + "Resources: " + metrics.summary());
+    }
+
+    @Override
+    public void programRanked(List<RunMetrics> ranks) {
+        synchronized (out) {
+            out.println(prefix + String.format("%-8s %6s %10s %10s %10s %10s", "rank", "exit", "wall ms", "cpu ms",
+                    "read", "written"));
+            for (int r = 0; r < ranks.size(); r++) {
+                RunMetrics m = ranks.get(r);
+                out.println(prefix + String.format("%-8d %6d %10s %10s %10s %10s", r, m.getExitCode(),
+                        m.getWall() < 0 ? "?" : String.valueOf(m.getWall()),
+                        m.getUser() < 0 ? "?" : String.valueOf(m.getUser() + Math.max(0, m.getSystem())),
+                        m.getReadBytes() < 0 ? "?" : RunMetrics.bytes(m.getReadBytes()),
+                        m.getWrittenBytes() < 0 ? "?" : RunMetrics.bytes(m.getWrittenBytes())));
+            }
+            out.println(prefix + MpiLaunch.summary(ranks));
+        }
+    }
+
+    @Override
+    public void programScaled(ScalingResult result) {
+        // The point where scaling breaks down is starred.
+        synchronized (out) {
+            out.println(prefix + String.format("%-10s %8s %12s %8s %11s", "binding", "threads", "median ms",
+                    "speedup", "efficiency"));
+            for (String binding : result.getBindings()) {
+                ScalingResult.Point breakdown = result.getBreakdown(binding);
+                for (ScalingResult.Point point : result.getPoints(binding))
+                    out.println(prefix + String.format(Locale.ROOT, "%-10s %8d %12.2f %8.2f %10.0f%%%s",
+                            ScalingResult.name(binding), point.getThreads(), point.getResult().getMedian(),
+                            result.getSpeedup(point), result.getEfficiency(point) * 100,
+                            point == breakdown ? " *" : ""));
+            }
+        }
+    }
+
+    @Override
+    public void sweepEnded(File folder, List<SweepRun> runs) {
+        synchronized (out) {
+            out.println(prefix + String.format("%-8s %6s %10s %10s %10s  %s", "run", "exit", "wall ms", "cpu ms",
+                    "peak RSS", "parameters"));
+            for (SweepRun run : runs) {
+                RunMetrics m = run.getMetrics();
+                if (m == null) {
+                    out.println(prefix + String.format("%-8s %6s %10s %10s %10s  %s", run.getFolder().getName(), "-",
+                            "-", "-", "-", run.getParameters()));
+                    continue;
+                }
+                out.println(prefix + String.format("%-8s %6d %10d %10s %10s  %s", run.getFolder().getName(),
+                        m.getExitCode(), m.getWall(), m.getUser() < 0 ? "?" : m.getUser() + Math.max(0, m.getSystem()),
+                        m.getPeakRss() < 0 ? "?" : RunMetrics.bytes(m.getPeakRss() * 1024), run.getParameters()));
+            }
+        }
+    }
+}